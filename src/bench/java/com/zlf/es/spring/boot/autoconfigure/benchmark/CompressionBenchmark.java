@@ -0,0 +1,160 @@
+package com.zlf.es.spring.boot.autoconfigure.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 对比gzip压缩的cpu开销和节省的网络传输,用来选择elasticsearch.compression.*的配置,不依赖es和spring容器:
+ * mvn -Pbench compile 后运行:java -cp target/classes:依赖 com.zlf.es.spring.boot.autoconfigure.benchmark.CompressionBenchmark [文档数,默认1000]
+ * 分别对bulk请求体、search请求体、search响应体测试压缩级别1和6的压缩率、压缩/解压速度,
+ * 并计算在100Mbps和1Gbps带宽下压缩后的总耗时(压缩+传输+解压)与不压缩的传输耗时,总耗时更小说明值得压缩
+ */
+public class CompressionBenchmark {
+
+    private static final int WARMUP_ROUNDS = 20;
+
+    private static final int MEASURE_ROUNDS = 50;
+
+    private static final double[] LINKS_MBPS = {100, 1000};
+
+    private static final String[] WORDS = {"elasticsearch", "spring", "boot", "starter", "bulk", "index", "search",
+            "document", "shard", "replica", "cluster", "node", "mapping", "analyzer", "keyword", "text", "order",
+            "product", "user", "address", "beijing", "shanghai", "price", "status", "created", "updated"};
+
+    public static void main(String[] args) throws IOException {
+        int docs = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        Random random = new Random(42);
+        System.out.printf("%-8s %-6s %10s %10s %7s %12s %12s %s%n", "payload", "level", "raw(B)", "gzip(B)", "ratio",
+                "comp(MB/s)", "decomp(MB/s)", "100Mbps/1Gbps 不压缩ms -> 压缩ms");
+        run("bulk", bulkBody(docs, random));
+        run("search", searchBody(random));
+        run("hits", searchResponse(Math.min(docs, 100), random));
+    }
+
+    private static void run(String name, byte[] raw) throws IOException {
+        for (int level : new int[]{Deflater.BEST_SPEED, 6}) {
+            byte[] compressed = gzip(raw, level);
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                gunzip(gzip(raw, level));
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASURE_ROUNDS; i++) {
+                gzip(raw, level);
+            }
+            double compressNanos = (System.nanoTime() - start) / (double) MEASURE_ROUNDS;
+            start = System.nanoTime();
+            for (int i = 0; i < MEASURE_ROUNDS; i++) {
+                gunzip(compressed);
+            }
+            double decompressNanos = (System.nanoTime() - start) / (double) MEASURE_ROUNDS;
+            StringBuilder links = new StringBuilder();
+            for (double mbps : LINKS_MBPS) {
+                double plainMs = transferMillis(raw.length, mbps);
+                double gzipMs = transferMillis(compressed.length, mbps) + (compressNanos + decompressNanos) / 1e6;
+                links.append(String.format("%.2f -> %.2f%s  ", plainMs, gzipMs, gzipMs < plainMs ? "(划算)" : "(不划算)"));
+            }
+            System.out.printf("%-8s %-6d %10d %10d %7.3f %12.1f %12.1f %s%n", name, level, raw.length, compressed.length,
+                    (double) compressed.length / raw.length, mbPerSecond(raw.length, compressNanos),
+                    mbPerSecond(raw.length, decompressNanos), links);
+        }
+    }
+
+    private static double transferMillis(long bytes, double mbps) {
+        return bytes * 8 / (mbps * 1_000_000) * 1000;
+    }
+
+    private static double mbPerSecond(long bytes, double nanos) {
+        return bytes / (1024.0 * 1024.0) / (nanos / 1e9);
+    }
+
+    private static byte[] gzip(byte[] raw, int level) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 32);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 8192) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            gzip.write(raw);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 4);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed), 8192)) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 大约1KB一个文档的_bulk请求体
+     */
+    private static byte[] bulkBody(int docs, Random random) {
+        StringBuilder sb = new StringBuilder(docs * 1100);
+        for (int i = 0; i < docs; i++) {
+            sb.append("{\"index\":{\"_index\":\"benchmark\",\"_id\":\"").append(i).append("\"}}\n");
+            document(sb, i, random);
+            sb.append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] searchBody(Random random) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"from\":0,\"size\":20,\"query\":{\"bool\":{\"must\":[{\"match\":{\"title\":\"")
+                .append(words(random, 3)).append("\"}}],\"filter\":[");
+        for (int i = 0; i < 10; i++) {
+            sb.append(i == 0 ? "" : ",").append("{\"term\":{\"status\":").append(i).append("}}");
+        }
+        sb.append("]}},\"sort\":[{\"price\":{\"order\":\"desc\"}}],\"aggregations\":{\"by_city\":{\"terms\":{\"field\":\"city\",\"size\":10}}}}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] searchResponse(int hits, Random random) {
+        StringBuilder sb = new StringBuilder(hits * 1200);
+        sb.append("{\"took\":5,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},")
+                .append("\"hits\":{\"total\":{\"value\":").append(hits).append(",\"relation\":\"eq\"},\"max_score\":1.0,\"hits\":[");
+        for (int i = 0; i < hits; i++) {
+            sb.append(i == 0 ? "" : ",").append("{\"_index\":\"benchmark\",\"_type\":\"_doc\",\"_id\":\"").append(i)
+                    .append("\",\"_score\":1.0,\"_source\":");
+            document(sb, i, random);
+            sb.append('}');
+        }
+        sb.append("]}}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void document(StringBuilder sb, int id, Random random) {
+        sb.append("{\"id\":").append(id)
+                .append(",\"title\":\"").append(words(random, 8))
+                .append("\",\"content\":\"").append(words(random, 90))
+                .append("\",\"tags\":[\"").append(words(random, 1)).append("\",\"").append(words(random, 1))
+                .append("\"],\"price\":").append(random.nextInt(100000) / 100.0)
+                .append(",\"status\":").append(random.nextInt(5))
+                .append(",\"city\":\"").append(WORDS[random.nextInt(WORDS.length)])
+                .append("\",\"created\":\"2026-10-").append(10 + random.nextInt(9)).append("T12:00:00Z\"}");
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,140 @@
+package com.zlf.es.spring.boot.autoconfigure.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import com.zlf.es.spring.boot.autoconfigure.service.impl.AnalysisSearchResponse;
+import com.zlf.es.spring.boot.autoconfigure.service.utils.JsonUtils;
+import lombok.Data;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.search.SearchHit;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 对比查询结果反序列化(AnalysisSearchResponse.getSourceAsList)的旧实现和新实现,不依赖es和spring容器:
+ * mvn -Pbench compile 后运行:java -cp target/classes:依赖 com.zlf.es.spring.boot.autoconfigure.benchmark.HitDecodeBenchmark [每页命中数,默认1000]
+ * 旧实现:每个命中先getSourceAsString()转换成String再解析,jackson每次查找反序列化器
+ * 新实现:直接解析_source的字节,jackson使用按类型缓存的ObjectReader
+ * 分别输出jackson和fastJson每页的耗时、吞吐量和每页分配的内存(hotspot的线程分配计数)
+ */
+public class HitDecodeBenchmark {
+
+    private static final int WARMUP_ROUNDS = 200;
+
+    private static final int MEASURE_ROUNDS = 500;
+
+    private static final String[] WORDS = {"elasticsearch", "spring", "boot", "starter", "bulk", "index", "search",
+            "document", "shard", "replica", "cluster", "node", "mapping", "analyzer", "keyword", "text", "order",
+            "product", "user", "address", "beijing", "shanghai", "price", "status", "created", "updated"};
+
+    public static void main(String[] args) {
+        int hits = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        SearchHit[] page = page(hits, new Random(42));
+        System.out.printf("%-10s %-8s %12s %14s %16s%n", "parser", "impl", "ms/page", "hits/s", "alloc(KB)/page");
+        for (boolean fastJson : new boolean[]{false, true}) {
+            run(page, fastJson, false);
+            run(page, fastJson, true);
+        }
+    }
+
+    private static void run(SearchHit[] page, boolean fastJson, boolean lean) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            decode(page, fastJson, lean);
+        }
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        int sink = 0;
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            sink += decode(page, fastJson, lean).size();
+        }
+        double nanosPerPage = (System.nanoTime() - start) / (double) MEASURE_ROUNDS;
+        double allocatedPerPage = (allocatedBytes() - allocated) / (double) MEASURE_ROUNDS;
+        if (sink != page.length * MEASURE_ROUNDS) {
+            throw new IllegalStateException("解析结果条数不对");
+        }
+        System.out.printf("%-10s %-8s %12.3f %14.0f %16.1f%n", fastJson ? "fastjson" : "jackson", lean ? "bytes" : "string",
+                nanosPerPage / 1e6, page.length / (nanosPerPage / 1e9), allocatedPerPage / 1024);
+    }
+
+    private static List<Doc> decode(SearchHit[] page, boolean fastJson, boolean lean) {
+        List<Doc> result = new ArrayList<>(page.length);
+        for (SearchHit hit : page) {
+            if (lean) {
+                result.add(AnalysisSearchResponse.decodeSource(hit, Doc.class, fastJson));
+            } else if (fastJson) {
+                result.add(JSON.parseObject(hit.getSourceAsString(), Doc.class));
+            } else {
+                result.add(JsonUtils.getObjectByJson(hit.getSourceAsString(), Doc.class));
+            }
+        }
+        return result;
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * 大约1KB一个文档的一页命中,_source与从响应中解析出来的一样是BytesArray
+     */
+    private static SearchHit[] page(int hits, Random random) {
+        SearchHit[] page = new SearchHit[hits];
+        for (int i = 0; i < hits; i++) {
+            SearchHit hit = new SearchHit(i, String.valueOf(i), null, Collections.emptyMap(), Collections.emptyMap());
+            hit.sourceRef(new BytesArray(document(i, random).getBytes(StandardCharsets.UTF_8)));
+            page[i] = hit;
+        }
+        return page;
+    }
+
+    private static String document(int id, Random random) {
+        return "{\"id\":" + id +
+                ",\"title\":\"" + words(random, 8) +
+                "\",\"content\":\"" + words(random, 90) +
+                "\",\"tags\":[\"" + words(random, 1) + "\",\"" + words(random, 1) +
+                "\"],\"price\":" + random.nextInt(100000) / 100.0 +
+                ",\"status\":" + random.nextInt(5) +
+                ",\"city\":\"" + WORDS[random.nextInt(WORDS.length)] +
+                "\",\"created\":\"2026-10-" + (10 + random.nextInt(9)) + "T12:00:00Z\"}";
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+
+    @Data
+    public static class Doc {
+
+        private Long id;
+
+        private String title;
+
+        private String content;
+
+        private List<String> tags;
+
+        private Double price;
+
+        private Integer status;
+
+        private String city;
+
+        private String created;
+    }
+
+}
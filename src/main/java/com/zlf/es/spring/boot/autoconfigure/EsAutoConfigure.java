@@ -1,23 +1,72 @@
 package com.zlf.es.spring.boot.autoconfigure;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.zlf.es.spring.boot.autoconfigure.client.Bulkhead;
+import com.zlf.es.spring.boot.autoconfigure.client.CircuitBreaker;
+import com.zlf.es.spring.boot.autoconfigure.client.CompressionStats;
+import com.zlf.es.spring.boot.autoconfigure.client.EsCallGuard;
+import com.zlf.es.spring.boot.autoconfigure.client.EsClusterProperties;
+import com.zlf.es.spring.boot.autoconfigure.client.EsClusterRouter;
+import com.zlf.es.spring.boot.autoconfigure.client.EsHttpClientConfigCallback;
+import com.zlf.es.spring.boot.autoconfigure.client.HttpClientSettings;
+import com.zlf.es.spring.boot.autoconfigure.client.LatencyAwareNodeSelector;
+import com.zlf.es.spring.boot.autoconfigure.metrics.EsMetrics;
+import com.zlf.es.spring.boot.autoconfigure.service.bulk.AdaptiveBulkController;
+import com.zlf.es.spring.boot.autoconfigure.service.bulk.BulkRetryPolicy;
+import com.zlf.es.spring.boot.autoconfigure.service.bulk.BulkSpool;
+import com.zlf.es.spring.boot.autoconfigure.service.bulk.BulkSpoolReplayer;
+import com.zlf.es.spring.boot.autoconfigure.service.bulk.DeadLetterHandler;
+import com.zlf.es.spring.boot.autoconfigure.service.bulk.EsBulkIngester;
+import com.zlf.es.spring.boot.autoconfigure.service.bulk.LoggingDeadLetterHandler;
+import com.zlf.es.spring.boot.autoconfigure.service.bulk.NdjsonBulkLoader;
+import com.zlf.es.spring.boot.autoconfigure.service.bulk.UpdateCoalescer;
+import com.zlf.es.spring.boot.autoconfigure.service.scroll.ParallelScanner;
+import com.zlf.es.spring.boot.autoconfigure.service.search.DocNearCache;
+import com.zlf.es.spring.boot.autoconfigure.service.search.HedgedReader;
+import com.zlf.es.spring.boot.autoconfigure.service.search.MultiSearchBatcher;
+import com.zlf.es.spring.boot.autoconfigure.service.search.QueryResultCache;
+import com.zlf.es.spring.boot.autoconfigure.service.search.SingleFlight;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.CredentialsProvider;
-import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.message.BasicHeader;
+import org.elasticsearch.client.HttpAsyncResponseConsumerFactory;
+import org.elasticsearch.client.NodeSelector;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestClientBuilder;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.sniff.ElasticsearchNodesSniffer;
+import org.elasticsearch.client.sniff.SniffOnFailureListener;
+import org.elasticsearch.client.sniff.Sniffer;
+import org.elasticsearch.core.TimeValue;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.cloud.context.config.annotation.RefreshScope;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.lang.Nullable;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author zlf
@@ -40,6 +89,8 @@ public class EsAutoConfigure {
 
     private final String NPE = "null";
 
+    private static final long MB = 1024L * 1024L;
+
     /**
      * 协议
      */
@@ -83,25 +134,597 @@ public class EsAutoConfigure {
     private int connectionRequestTimeout;
 
     /**
-     * 最大连接数
+     * 最大连接数(兼容旧配置elasticsearch.maxConnectNum)
      */
-    @Value("${elasticsearch.maxConnectNum:100}")
+    @Value("${elasticsearch.http.maxConnTotal:${elasticsearch.maxConnectNum:100}}")
     private int maxConnectNum;
 
     /**
-     * 最大路由连接数
+     * 最大路由连接数(兼容旧配置elasticsearch.maxConnectPerRoute)
      */
-    @Value("${elasticsearch.maxConnectPerRoute:100}")
+    @Value("${elasticsearch.http.maxConnPerRoute:${elasticsearch.maxConnectPerRoute:100}}")
     private int maxConnectPerRoute;
 
+    /**
+     * http客户端：io reactor线程数,0表示cpu核数
+     */
+    @Value("${elasticsearch.http.ioThreadCount:0}")
+    private int httpIoThreadCount;
+
+    /**
+     * http客户端：是否开启TCP_NODELAY
+     */
+    @Value("${elasticsearch.http.tcpNoDelay:true}")
+    private boolean httpTcpNoDelay;
+
+    /**
+     * http客户端：是否开启SO_KEEPALIVE
+     */
+    @Value("${elasticsearch.http.soKeepAlive:false}")
+    private boolean httpSoKeepAlive;
+
+    /**
+     * http客户端：空闲连接最长保持时间(毫秒),-1表示一直保持
+     */
+    @Value("${elasticsearch.http.keepAlive:-1}")
+    private long httpKeepAlive;
+
+    /**
+     * http客户端：连接空闲超过该时间(毫秒)时关闭,0表示不关闭
+     */
+    @Value("${elasticsearch.http.maxIdleTime:0}")
+    private long httpMaxIdleTime;
+
+    /**
+     * http客户端：连接最长存活时间(毫秒),-1表示不限制
+     */
+    @Value("${elasticsearch.http.connectionTtl:-1}")
+    private long httpConnectionTtl;
+
+    /**
+     * http客户端：关闭过期和空闲连接的检查间隔(毫秒)
+     */
+    @Value("${elasticsearch.http.evictInterval:5000}")
+    private long httpEvictInterval;
+
+    /**
+     * http客户端：单个响应在堆内缓冲的上限(MB),超过时请求失败
+     */
+    @Value("${elasticsearch.http.responseBufferLimitMb:100}")
+    private long responseBufferLimitMb;
+
+    /**
+     * 批量写入：每批最大文档数
+     */
+    @Value("${elasticsearch.bulk.actions:1000}")
+    private int bulkActions;
+
+    /**
+     * 批量写入：每批最大字节数(MB)
+     */
+    @Value("${elasticsearch.bulk.sizeMb:5}")
+    private int bulkSizeMb;
+
+    /**
+     * 批量写入：攒批最长等待时间(毫秒)
+     */
+    @Value("${elasticsearch.bulk.flushInterval:1000}")
+    private long bulkFlushInterval;
+
+    /**
+     * 批量写入：同时在途的bulk请求数
+     */
+    @Value("${elasticsearch.bulk.concurrentRequests:2}")
+    private int bulkConcurrentRequests;
+
+    /**
+     * 批量写入：待写入队列容量
+     */
+    @Value("${elasticsearch.bulk.queueCapacity:100000}")
+    private int bulkQueueCapacity;
+
+    /**
+     * 批量写入：应用关闭时等待剩余数据写完的最长时间(毫秒)
+     */
+    @Value("${elasticsearch.bulk.awaitClose:60000}")
+    private long bulkAwaitClose;
+
+    /**
+     * 批量写入：是否根据集群反馈自适应调整每批大小和在途bulk数
+     */
+    @Value("${elasticsearch.bulk.adaptive.enabled:false}")
+    private boolean bulkAdaptiveEnabled;
+
+    /**
+     * 批量写入自适应：每批文档数下限,也是每次增加的步长
+     */
+    @Value("${elasticsearch.bulk.adaptive.minActions:100}")
+    private int bulkAdaptiveMinActions;
+
+    /**
+     * 批量写入自适应：每批文档数上限
+     */
+    @Value("${elasticsearch.bulk.adaptive.maxActions:10000}")
+    private int bulkAdaptiveMaxActions;
+
+    /**
+     * 批量写入自适应：每批字节数下限(MB),也是每次增加的步长
+     */
+    @Value("${elasticsearch.bulk.adaptive.minSizeMb:1}")
+    private int bulkAdaptiveMinSizeMb;
+
+    /**
+     * 批量写入自适应：每批字节数上限(MB)
+     */
+    @Value("${elasticsearch.bulk.adaptive.maxSizeMb:50}")
+    private int bulkAdaptiveMaxSizeMb;
+
+    /**
+     * 批量写入自适应：在途bulk数上限
+     */
+    @Value("${elasticsearch.bulk.adaptive.maxConcurrentRequests:8}")
+    private int bulkAdaptiveMaxConcurrentRequests;
+
+    /**
+     * 批量写入自适应：es返回的took目标值(毫秒),超过视为集群有压力
+     */
+    @Value("${elasticsearch.bulk.adaptive.targetTook:1000}")
+    private long bulkAdaptiveTargetTook;
+
+    /**
+     * 批量写入自适应：客户端耗时上限(毫秒),超过视为集群有压力
+     */
+    @Value("${elasticsearch.bulk.adaptive.maxLatency:5000}")
+    private long bulkAdaptiveMaxLatency;
+
+    /**
+     * 批量写入：429/503失败的单条文档最大重试次数
+     */
+    @Value("${elasticsearch.bulk.retry.maxRetries:3}")
+    private int bulkRetryMaxRetries;
+
+    /**
+     * 批量写入：第一次重试的退避时间(毫秒),之后按指数增长
+     */
+    @Value("${elasticsearch.bulk.retry.initialBackoff:100}")
+    private long bulkRetryInitialBackoff;
+
+    /**
+     * 批量写入：重试退避时间上限(毫秒)
+     */
+    @Value("${elasticsearch.bulk.retry.maxBackoff:10000}")
+    private long bulkRetryMaxBackoff;
+
+    /**
+     * 批量写入spool：目录
+     */
+    @Value("${elasticsearch.bulk.spool.dir:${java.io.tmpdir}/es-bulk-spool}")
+    private String bulkSpoolDir;
+
+    /**
+     * 批量写入spool：每个段文件大小(MB),最大1024
+     */
+    @Value("${elasticsearch.bulk.spool.segmentSizeMb:64}")
+    private int bulkSpoolSegmentSizeMb;
+
+    /**
+     * 批量写入spool：最多保留的段文件数,磁盘占用上限 = segmentSizeMb * maxSegments
+     */
+    @Value("${elasticsearch.bulk.spool.maxSegments:16}")
+    private int bulkSpoolMaxSegments;
+
+    /**
+     * 批量写入spool：集群不可用时探测的间隔(毫秒)
+     */
+    @Value("${elasticsearch.bulk.spool.replayInterval:5000}")
+    private long bulkSpoolReplayInterval;
+
+    /**
+     * 批量写入spool：一批被集群拒绝(429/503)后最多重发的次数,超过后仍被拒绝的记录交给死信处理器
+     */
+    @Value("${elasticsearch.bulk.spool.maxReplayAttempts:10}")
+    private int bulkSpoolMaxReplayAttempts;
+
+    /**
+     * 异步接口回调线程池：核心线程数,默认为cpu核数
+     */
+    @Value("${elasticsearch.async.corePoolSize:0}")
+    private int asyncCorePoolSize;
+
+    /**
+     * 异步接口回调线程池：最大线程数,默认为cpu核数的2倍
+     */
+    @Value("${elasticsearch.async.maxPoolSize:0}")
+    private int asyncMaxPoolSize;
+
+    /**
+     * 异步接口回调线程池：队列容量,队列满且线程数达到上限时回调在http客户端的io线程上执行
+     */
+    @Value("${elasticsearch.async.queueCapacity:10000}")
+    private int asyncQueueCapacity;
+
+    /**
+     * 写合并：合并窗口(毫秒)
+     */
+    @Value("${elasticsearch.update.coalesce.window:50}")
+    private long updateCoalesceWindow;
+
+    /**
+     * 写合并：一个窗口内最多合并的文档数,达到后提前发送
+     */
+    @Value("${elasticsearch.update.coalesce.maxPendingKeys:10000}")
+    private int updateCoalesceMaxPendingKeys;
+
+    /**
+     * msearch合并：合并窗口(毫秒)
+     */
+    @Value("${elasticsearch.search.batch.window:5}")
+    private long searchBatchWindow;
+
+    /**
+     * msearch合并：一个_msearch最多包含的查询数,达到后提前发送
+     */
+    @Value("${elasticsearch.search.batch.maxBatchSize:50}")
+    private int searchBatchMaxBatchSize;
+
+    /**
+     * msearch合并：es端并发执行一个_msearch中查询的数量上限,0表示使用es的默认值
+     */
+    @Value("${elasticsearch.search.batch.maxConcurrentSearches:0}")
+    private int searchBatchMaxConcurrentSearches;
+
+    /**
+     * 查询结果缓存：开启缓存的索引,逗号分隔,*表示所有索引
+     */
+    @Value("${elasticsearch.search.cache.indices:}")
+    private String searchCacheIndices;
+
+    /**
+     * 查询结果缓存：写入后的过期时间(毫秒)
+     */
+    @Value("${elasticsearch.search.cache.ttl:5000}")
+    private long searchCacheTtl;
+
+    /**
+     * 查询结果缓存：估算内存占用的上限(MB)
+     */
+    @Value("${elasticsearch.search.cache.maxWeightMb:64}")
+    private long searchCacheMaxWeightMb;
+
+    /**
+     * 文档近端缓存：开启缓存的索引,逗号分隔,*表示所有索引
+     */
+    @Value("${elasticsearch.doc.cache.indices:}")
+    private String docCacheIndices;
+
+    /**
+     * 文档近端缓存：写入后的过期时间(毫秒)
+     */
+    @Value("${elasticsearch.doc.cache.ttl:30000}")
+    private long docCacheTtl;
+
+    /**
+     * 文档近端缓存：最多缓存的文档数,超过时淘汰最近最少使用的
+     */
+    @Value("${elasticsearch.doc.cache.maxSize:10000}")
+    private long docCacheMaxSize;
+
+    /**
+     * 相同请求合并：开启合并的操作,逗号分隔,可选search、count、get
+     */
+    @Value("${elasticsearch.singleFlight.operations:search,count,get}")
+    private String singleFlightOperations;
+
+    /**
+     * NDJSON文件导入：同时在途的bulk请求数
+     */
+    @Value("${elasticsearch.loader.concurrentRequests:4}")
+    private int loaderConcurrentRequests;
+
+    /**
+     * NDJSON文件导入：每个bulk请求的最大字节数(MB)
+     */
+    @Value("${elasticsearch.loader.sizeMb:10}")
+    private int loaderSizeMb;
+
+    /**
+     * NDJSON文件导入：每个bulk请求的最大文档数
+     */
+    @Value("${elasticsearch.loader.actions:5000}")
+    private int loaderActions;
+
+    /**
+     * NDJSON文件导入：打印进度的间隔(毫秒)
+     */
+    @Value("${elasticsearch.loader.progressInterval:10000}")
+    private long loaderProgressInterval;
+
+    /**
+     * 压缩：是否gzip压缩请求体
+     */
+    @Value("${elasticsearch.compression.request.enabled:false}")
+    private boolean compressionRequestEnabled;
+
+    /**
+     * 压缩：请求体不小于该字节数时才压缩
+     */
+    @Value("${elasticsearch.compression.request.thresholdBytes:1024}")
+    private long compressionRequestThresholdBytes;
+
+    /**
+     * 压缩：gzip压缩级别1-9,1最快
+     */
+    @Value("${elasticsearch.compression.level:1}")
+    private int compressionLevel;
+
+    /**
+     * 压缩：是否接受gzip压缩的响应(需要es开启http.compression,7.x默认开启)
+     */
+    @Value("${elasticsearch.compression.response.enabled:false}")
+    private boolean compressionResponseEnabled;
+
+    /**
+     * 滚动查询时scroll上下文的保持时间
+     */
+    @Value("${elasticsearch.search.scroll.keepAlive:1m}")
+    private String scrollKeepAlive;
+
+    /**
+     * 分片并行滚动查询:同时运行的slice数上限,0表示cpu核数
+     */
+    @Value("${elasticsearch.search.scan.maxConcurrency:0}")
+    private int scanMaxConcurrency;
+
+    /**
+     * 分片并行滚动查询:每个slice失败后的最大重试次数
+     */
+    @Value("${elasticsearch.search.scan.maxRetries:2}")
+    private int scanMaxRetries;
+
+    /**
+     * 分片并行滚动查询:slice重试前等待的时间(毫秒),按尝试次数线性增加
+     */
+    @Value("${elasticsearch.search.scan.retryBackoff:1000}")
+    private long scanRetryBackoff;
+
+    /**
+     * 节点嗅探：定时从集群获取节点列表的间隔(毫秒)
+     */
+    @Value("${elasticsearch.sniffer.interval:300000}")
+    private int snifferInterval;
+
+    /**
+     * 节点嗅探：请求失败时是否立即嗅探一次
+     */
+    @Value("${elasticsearch.sniffer.sniffOnFailure:true}")
+    private boolean snifferSniffOnFailure;
+
+    /**
+     * 节点嗅探：失败触发的嗅探之后,下一次嗅探的间隔(毫秒)
+     */
+    @Value("${elasticsearch.sniffer.afterFailureDelay:60000}")
+    private int snifferAfterFailureDelay;
+
+    /**
+     * 节点选择：是否跳过专用master节点(需要开启节点嗅探才能知道节点角色)
+     */
+    @Value("${elasticsearch.nodeSelector.skipDedicatedMasters:false}")
+    private boolean nodeSelectorSkipDedicatedMasters;
+
+    /**
+     * 按耗时选择节点：EWMA中新样本的权重(0,1]
+     */
+    @Value("${elasticsearch.nodeSelector.latencyAware.alpha:0.3}")
+    private double latencyAwareAlpha;
+
+    /**
+     * 按耗时选择节点：EWMA超过最快节点的该倍数时不再分配请求
+     */
+    @Value("${elasticsearch.nodeSelector.latencyAware.slowFactor:2.0}")
+    private double latencyAwareSlowFactor;
+
+    /**
+     * 按耗时选择节点：节点超过该时间(毫秒)没有耗时样本时发一个探测请求
+     */
+    @Value("${elasticsearch.nodeSelector.latencyAware.probeInterval:10000}")
+    private long latencyAwareProbeInterval;
+
+    /**
+     * 多集群：读请求(search/count/get/mget/exists)发往的集群名,default为elasticsearch.address
+     */
+    @Value("${elasticsearch.routing.read:default}")
+    private String routingRead;
+
+    /**
+     * 多集群：写请求、索引管理、批量写入发往的集群名
+     */
+    @Value("${elasticsearch.routing.write:default}")
+    private String routingWrite;
+
+    /**
+     * 多集群：读集群不可用时是否改发写集群
+     */
+    @Value("${elasticsearch.routing.failover:true}")
+    private boolean routingFailover;
+
+    /**
+     * 多集群：读集群不可用后直接走写集群的时间(毫秒)
+     */
+    @Value("${elasticsearch.routing.failoverCooldown:30000}")
+    private long routingFailoverCooldown;
+
+    /**
+     * 多集群：读写集群不同时,写入一个索引后读集群可能落后的时间(毫秒),这段时间内该索引的读取不进入查询结果缓存和文档近端缓存
+     */
+    @Value("${elasticsearch.routing.replicaLag:10000}")
+    private long routingReplicaLag;
+
+    /**
+     * 隔离舱：search/count/msearch同时在途的调用数
+     */
+    @Value("${elasticsearch.guard.search.maxConcurrent:50}")
+    private int guardSearchMaxConcurrent;
+
+    /**
+     * 隔离舱：get/mget/exists同时在途的调用数
+     */
+    @Value("${elasticsearch.guard.get.maxConcurrent:50}")
+    private int guardGetMaxConcurrent;
+
+    /**
+     * 隔离舱：单文档写入、deleteByQuery同时在途的调用数
+     */
+    @Value("${elasticsearch.guard.write.maxConcurrent:20}")
+    private int guardWriteMaxConcurrent;
+
+    /**
+     * 隔离舱：索引管理同时在途的调用数
+     */
+    @Value("${elasticsearch.guard.admin.maxConcurrent:5}")
+    private int guardAdminMaxConcurrent;
+
+    /**
+     * 隔离舱：并发满时每类操作最多排队的线程数
+     */
+    @Value("${elasticsearch.guard.maxWaiting:100}")
+    private int guardMaxWaiting;
+
+    /**
+     * 隔离舱：排队最长等待时间(毫秒),0为不排队
+     */
+    @Value("${elasticsearch.guard.maxWait:1000}")
+    private long guardMaxWait;
+
+    /**
+     * 熔断器：是否开启
+     */
+    @Value("${elasticsearch.guard.breaker.enabled:true}")
+    private boolean guardBreakerEnabled;
+
+    /**
+     * 熔断器：统计最近的调用次数
+     */
+    @Value("${elasticsearch.guard.breaker.windowSize:100}")
+    private int guardBreakerWindowSize;
+
+    /**
+     * 熔断器：统计的调用数不少于该值时才计算失败率
+     */
+    @Value("${elasticsearch.guard.breaker.minimumCalls:20}")
+    private int guardBreakerMinimumCalls;
+
+    /**
+     * 熔断器：失败率阈值(百分比)
+     */
+    @Value("${elasticsearch.guard.breaker.failureRateThreshold:50}")
+    private int guardBreakerFailureRateThreshold;
+
+    /**
+     * 熔断器：慢调用的耗时(毫秒),0为不统计慢调用
+     */
+    @Value("${elasticsearch.guard.breaker.slowCallThreshold:5000}")
+    private long guardBreakerSlowCallThreshold;
+
+    /**
+     * 熔断器：慢调用率阈值(百分比)
+     */
+    @Value("${elasticsearch.guard.breaker.slowCallRateThreshold:80}")
+    private int guardBreakerSlowCallRateThreshold;
+
+    /**
+     * 熔断器：熔断时间(毫秒),之后放行试探调用
+     */
+    @Value("${elasticsearch.guard.breaker.openDuration:30000}")
+    private long guardBreakerOpenDuration;
+
+    /**
+     * 熔断器：半开时放行的试探调用数
+     */
+    @Value("${elasticsearch.guard.breaker.halfOpenCalls:5}")
+    private int guardBreakerHalfOpenCalls;
+
+    /**
+     * 对冲读：开启对冲的操作,可选search,count,get,mget
+     */
+    @Value("${elasticsearch.hedge.operations:search,count,get,mget}")
+    private String hedgeOperations;
+
+    /**
+     * 对冲读：请求超过该时间(毫秒)没有返回时发对冲请求
+     */
+    @Value("${elasticsearch.hedge.delay:50}")
+    private long hedgeDelay;
+
+    /**
+     * 对冲读：按最近耗时的该分位值(如95)对冲,0为只用固定的delay
+     */
+    @Value("${elasticsearch.hedge.percentile:0}")
+    private double hedgePercentile;
+
+    /**
+     * 对冲读：按分位值对冲时的最小等待时间(毫秒)
+     */
+    @Value("${elasticsearch.hedge.minDelay:10}")
+    private long hedgeMinDelay;
+
+    /**
+     * 对冲读：对冲请求占全部请求的最大百分比
+     */
+    @Value("${elasticsearch.hedge.budgetPercent:5}")
+    private int hedgeBudgetPercent;
+
+    /**
+     * 对冲读：对冲请求的preference,为空时每次随机,落到不同的分片副本
+     */
+    @Value("${elasticsearch.hedge.preference:}")
+    private String hedgePreference;
+
+    /**
+     * 所有请求共用的RequestOptions,在COMMON_OPTIONS的基础上限制单个响应在堆内缓冲的大小
+     *
+     * @return
+     */
+    @Bean("esRequestOptions")
+    public RequestOptions esRequestOptions() {
+        if (responseBufferLimitMb <= 0) {
+            return COMMON_OPTIONS;
+        }
+        RequestOptions.Builder options = COMMON_OPTIONS.toBuilder();
+        options.setHttpAsyncResponseConsumerFactory(new HttpAsyncResponseConsumerFactory
+                .HeapBufferedResponseConsumerFactory((int) Math.min(Integer.MAX_VALUE, responseBufferLimitMb * MB)));
+        return options.build();
+    }
+
     @Bean("esClient")
     @ConditionalOnClass(value = {RequestOptions.class, RestHighLevelClient.class})
-    public RestHighLevelClient restHighLevelClient() {
-        // 拆分地址
-        List<HttpHost> hostLists = new ArrayList<>();
+    public RestHighLevelClient restHighLevelClient(CompressionStats compressionStats,
+                                                   ObjectProvider<LatencyAwareNodeSelector> latencyAwareNodeSelector,
+                                                   ObjectProvider<SniffOnFailureListener> sniffOnFailureListener) {
         if (address.equals(NPE)) {
             throw new RuntimeException("es的address列表没有配置,请检查配置");
         }
+        SniffOnFailureListener failureListener = snifferSniffOnFailure ? sniffOnFailureListener.getIfAvailable() : null;
+        return buildClient(address, schema, NPE.equals(username) ? null : username, NPE.equals(password) ? null : password,
+                latencyAwareNodeSelector.getIfAvailable(), failureListener, compressionStats);
+    }
+
+    /**
+     * 构建一个集群的客户端
+     *
+     * @param address         逗号分隔的host:port
+     * @param schema          协议
+     * @param username        为空时不认证
+     * @param password
+     * @param nodeSelector    按耗时选择节点,可以为null
+     * @param failureListener 失败时触发嗅探,可以为null
+     * @param compressionStats
+     * @return
+     */
+    private RestHighLevelClient buildClient(String address, String schema, String username, String password,
+                                            LatencyAwareNodeSelector nodeSelector, SniffOnFailureListener failureListener,
+                                            CompressionStats compressionStats) {
+        // 拆分地址
+        List<HttpHost> hostLists = new ArrayList<>();
         String[] hostList = address.split(",");
         if (hostList.length == 1) {
             String host = hostList[0].split(":")[0];
@@ -118,16 +741,6 @@ public class EsAutoConfigure {
         HttpHost[] httpHost = hostLists.toArray(new HttpHost[]{});
         // 构建连接对象
         RestClientBuilder builder = RestClient.builder(httpHost);
-        if (StringUtils.isNotEmpty(username) && !NPE.equals(username) && StringUtils.isNotEmpty(password) && !NPE.equals(password)) {
-            //设置用户名和密码
-            final CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-            credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(username, password));
-
-            builder.setHttpClientConfigCallback(httpClientBuilder -> {
-                httpClientBuilder.disableAuthCaching();
-                return httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
-            });
-        }
         // 异步连接延时配置
         builder.setRequestConfigCallback(requestConfigBuilder -> {
             requestConfigBuilder.setConnectTimeout(connectTimeout);
@@ -135,13 +748,397 @@ public class EsAutoConfigure {
             requestConfigBuilder.setConnectionRequestTimeout(connectionRequestTimeout);
             return requestConfigBuilder;
         });
-        // 异步连接数配置
-        builder.setHttpClientConfigCallback(httpClientBuilder -> {
-            httpClientBuilder.setMaxConnTotal(maxConnectNum);
-            httpClientBuilder.setMaxConnPerRoute(maxConnectPerRoute);
-            return httpClientBuilder;
-        });
+        // 节点选择
+        if (nodeSelector != null) {
+            builder.setNodeSelector(nodeSelector);
+        } else if (nodeSelectorSkipDedicatedMasters) {
+            builder.setNodeSelector(NodeSelector.SKIP_DEDICATED_MASTERS);
+        }
+        if (failureListener != null) {
+            builder.setFailureListener(failureListener);
+        }
+        if (compressionResponseEnabled) {
+            builder.setDefaultHeaders(new Header[]{new BasicHeader(HttpHeaders.ACCEPT_ENCODING, "gzip")});
+        }
+        // 认证、连接池、io reactor、keep-alive、压缩等http客户端配置只能放在同一个callback里
+        builder.setHttpClientConfigCallback(new EsHttpClientConfigCallback(httpClientSettings(username, password), nodeSelector, compressionStats));
         return new RestHighLevelClient(builder);
     }
 
+    private HttpClientSettings httpClientSettings(String username, String password) {
+        HttpClientSettings settings = new HttpClientSettings();
+        settings.setUsername(username);
+        settings.setPassword(password);
+        settings.setMaxConnTotal(maxConnectNum);
+        settings.setMaxConnPerRoute(maxConnectPerRoute);
+        settings.setIoThreadCount(httpIoThreadCount);
+        settings.setTcpNoDelay(httpTcpNoDelay);
+        settings.setSoKeepAlive(httpSoKeepAlive);
+        settings.setKeepAlive(httpKeepAlive);
+        settings.setMaxIdleTime(httpMaxIdleTime);
+        settings.setConnectionTtl(httpConnectionTtl);
+        settings.setEvictInterval(httpEvictInterval);
+        settings.setCompressRequests(compressionRequestEnabled);
+        settings.setCompressResponses(compressionResponseEnabled);
+        settings.setCompressionThresholdBytes(compressionRequestThresholdBytes);
+        settings.setCompressionLevel(compressionLevel);
+        return settings;
+    }
+
+    /**
+     * 按节点耗时选择节点
+     *
+     * @return
+     */
+    @Bean
+    @ConditionalOnProperty(name = "elasticsearch.nodeSelector.latencyAware.enabled", havingValue = "true")
+    public LatencyAwareNodeSelector latencyAwareNodeSelector() {
+        return new LatencyAwareNodeSelector(latencyAwareAlpha, latencyAwareSlowFactor, latencyAwareProbeInterval,
+                nodeSelectorSkipDedicatedMasters);
+    }
+
+    /**
+     * 请求失败时触发嗅探的监听器,创建esClient时注册,创建sniffer后关联
+     *
+     * @return
+     */
+    @Bean
+    @ConditionalOnProperty(name = "elasticsearch.sniffer.enabled", havingValue = "true")
+    public SniffOnFailureListener sniffOnFailureListener() {
+        return new SniffOnFailureListener();
+    }
+
+    /**
+     * 节点嗅探,定时通过_nodes/http更新esClient的节点列表,应用关闭时先于esClient关闭
+     *
+     * @param esClient
+     * @return
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "elasticsearch.sniffer.enabled", havingValue = "true")
+    public Sniffer esSniffer(@Qualifier("esClient") RestHighLevelClient esClient, SniffOnFailureListener sniffOnFailureListener) {
+        RestClient restClient = esClient.getLowLevelClient();
+        ElasticsearchNodesSniffer.Scheme scheme = "https".equalsIgnoreCase(schema)
+                ? ElasticsearchNodesSniffer.Scheme.HTTPS : ElasticsearchNodesSniffer.Scheme.HTTP;
+        Sniffer sniffer = Sniffer.builder(restClient)
+                .setSniffIntervalMillis(snifferInterval)
+                .setSniffAfterFailureDelayMillis(snifferAfterFailureDelay)
+                .setNodesSniffer(new ElasticsearchNodesSniffer(restClient, ElasticsearchNodesSniffer.DEFAULT_SNIFF_REQUEST_TIMEOUT, scheme))
+                .build();
+        if (snifferSniffOnFailure) {
+            sniffOnFailureListener.setSniffer(sniffer);
+        }
+        return sniffer;
+    }
+
+    /**
+     * es客户端http压缩的统计
+     *
+     * @return
+     */
+    @Bean
+    public CompressionStats compressionStats(EsMetrics esMetrics) {
+        CompressionStats stats = new CompressionStats();
+        esMetrics.gauge("es.http.request.compressed", stats::getCompressedRequests);
+        esMetrics.gauge("es.http.request.bytes.before.compression", stats::getRequestBytesBeforeCompression);
+        esMetrics.gauge("es.http.request.bytes.after.compression", stats::getRequestBytesAfterCompression);
+        esMetrics.gauge("es.http.response.compressed", stats::getCompressedResponses);
+        esMetrics.gauge("es.http.response.compressed.bytes", stats::getCompressedResponseBytes);
+        return stats;
+    }
+
+    /**
+     * 默认不记录指标;引入micrometer时由EsMetricsConfig注册MicrometerEsMetrics,业务方也可以注册自己的EsMetrics
+     *
+     * @return
+     */
+    @Bean
+    @ConditionalOnMissingBean(EsMetrics.class)
+    public EsMetrics esMetrics() {
+        return EsMetrics.NOOP;
+    }
+
+    /**
+     * 多集群读写路由;没有配置elasticsearch.clusters时读写都是esClient
+     *
+     * @param esClient
+     * @param environment
+     * @param compressionStats
+     * @param latencyAwareNodeSelector
+     * @return
+     */
+    @Bean(destroyMethod = "close")
+    public EsClusterRouter esClusterRouter(@Qualifier("esClient") RestHighLevelClient esClient, Environment environment,
+                                           CompressionStats compressionStats,
+                                           ObjectProvider<LatencyAwareNodeSelector> latencyAwareNodeSelector) {
+        Map<String, EsClusterProperties> clusters = Binder.get(environment)
+                .bind("elasticsearch.clusters", Bindable.mapOf(String.class, EsClusterProperties.class))
+                .orElse(Collections.emptyMap());
+        Map<String, RestHighLevelClient> clients = new LinkedHashMap<>();
+        for (Map.Entry<String, EsClusterProperties> entry : clusters.entrySet()) {
+            EsClusterProperties cluster = entry.getValue();
+            if (EsClusterRouter.DEFAULT.equals(entry.getKey())) {
+                throw new IllegalStateException("es集群名default保留给elasticsearch.address,请换一个名称");
+            }
+            if (StringUtils.isBlank(cluster.getAddress())) {
+                throw new IllegalStateException("es集群" + entry.getKey() + "的address没有配置,请检查配置");
+            }
+            clients.put(entry.getKey(), buildClient(cluster.getAddress(), cluster.getSchema(), cluster.getUsername(),
+                    cluster.getPassword(), latencyAwareNodeSelector.getIfAvailable(), null, compressionStats));
+        }
+        return new EsClusterRouter(esClient, clients, routingRead, routingWrite, routingFailover, routingFailoverCooldown,
+                routingReplicaLag);
+    }
+
+    /**
+     * 全局共享的批量写入引擎,应用关闭时自动flush并close
+     * bulkSpool直接作为参数注入(而不是ObjectProvider),保证关闭时先close批量写入引擎,最后一次flush的失败还能写入spool
+     *
+     * @param esClusterRouter
+     * @param bulkSpool       没有开启spool时为null
+     * @return
+     */
+    @Bean(destroyMethod = "close")
+    public EsBulkIngester esBulkIngester(EsClusterRouter esClusterRouter, DeadLetterHandler deadLetterHandler,
+                                         @Nullable BulkSpool bulkSpool, EsMetrics esMetrics) {
+        return new EsBulkIngester(esClusterRouter.writeClient(), esRequestOptions(), adaptiveBulkController(),
+                bulkRetryPolicy(), deadLetterHandler, bulkSpool, esMetrics, bulkFlushInterval, bulkQueueCapacity,
+                bulkAwaitClose);
+    }
+
+    /**
+     * 批量写入每批大小和在途bulk数的控制器
+     *
+     * @return
+     */
+    @Bean
+    public AdaptiveBulkController adaptiveBulkController() {
+        return new AdaptiveBulkController(bulkAdaptiveEnabled, bulkActions,
+                bulkSizeMb * MB, bulkConcurrentRequests, bulkAdaptiveMinActions, bulkAdaptiveMaxActions,
+                bulkAdaptiveMinSizeMb * MB, bulkAdaptiveMaxSizeMb * MB, bulkAdaptiveMaxConcurrentRequests,
+                bulkAdaptiveTargetTook, bulkAdaptiveMaxLatency);
+    }
+
+    /**
+     * 批量写入单条文档的重试策略
+     *
+     * @return
+     */
+    @Bean
+    public BulkRetryPolicy bulkRetryPolicy() {
+        return new BulkRetryPolicy(bulkRetryMaxRetries, bulkRetryInitialBackoff, bulkRetryMaxBackoff);
+    }
+
+    /**
+     * 批量写入的本地磁盘spool
+     *
+     * @return
+     * @throws IOException
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "elasticsearch.bulk.spool.enabled", havingValue = "true")
+    public BulkSpool bulkSpool() throws IOException {
+        int segmentSize = (int) (Math.min(Math.max(bulkSpoolSegmentSizeMb, 1), 1024) * MB);
+        return new BulkSpool(Paths.get(bulkSpoolDir), segmentSize, bulkSpoolMaxSegments);
+    }
+
+    /**
+     * spool重放线程
+     *
+     * @param esClusterRouter
+     * @param bulkSpool
+     * @param deadLetterHandler
+     * @return
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "elasticsearch.bulk.spool.enabled", havingValue = "true")
+    public BulkSpoolReplayer bulkSpoolReplayer(EsClusterRouter esClusterRouter, BulkSpool bulkSpool,
+                                               DeadLetterHandler deadLetterHandler) {
+        return new BulkSpoolReplayer(esClusterRouter.writeClient(), esRequestOptions(), bulkSpool,
+                adaptiveBulkController(), bulkRetryPolicy(), deadLetterHandler, bulkSpoolReplayInterval,
+                bulkSpoolMaxReplayAttempts);
+    }
+
+    /**
+     * 从本地NDJSON文件并行批量导入的加载器
+     *
+     * @param esClusterRouter
+     * @param deadLetterHandler
+     * @param esMetrics
+     * @return
+     */
+    @Bean
+    public NdjsonBulkLoader ndjsonBulkLoader(EsClusterRouter esClusterRouter, DeadLetterHandler deadLetterHandler,
+                                             EsMetrics esMetrics) {
+        return new NdjsonBulkLoader(esClusterRouter.writeClient().getLowLevelClient(), esRequestOptions(),
+                bulkRetryPolicy(), deadLetterHandler, esMetrics, loaderConcurrentRequests, loaderSizeMb * MB,
+                loaderActions, loaderProgressInterval);
+    }
+
+    /**
+     * updateDoc/upsertDoc的写合并器,开启后同一窗口内对同一文档的部分更新合并成一次发送
+     *
+     * @param esClusterRouter
+     * @param objectMapper
+     * @param esMetrics
+     * @return
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "elasticsearch.update.coalesce.enabled", havingValue = "true")
+    public UpdateCoalescer updateCoalescer(EsClusterRouter esClusterRouter, ObjectMapper objectMapper,
+                                           EsMetrics esMetrics) {
+        return new UpdateCoalescer(esClusterRouter.writeClient(), esRequestOptions(), objectMapper, esMetrics,
+                updateCoalesceWindow, updateCoalesceMaxPendingKeys);
+    }
+
+    /**
+     * 并发查询的_msearch合并器,开启后searchList/searchPageList的查询在一个窗口内攒成一个_msearch发送
+     *
+     * @param esClusterRouter
+     * @return
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "elasticsearch.search.batch.enabled", havingValue = "true")
+    public MultiSearchBatcher multiSearchBatcher(EsClusterRouter esClusterRouter) {
+        return new MultiSearchBatcher(esClusterRouter.readClient(), esRequestOptions(), searchBatchWindow,
+                searchBatchMaxBatchSize, searchBatchMaxConcurrentSearches);
+    }
+
+    /**
+     * searchList/count的查询结果缓存,只缓存elasticsearch.search.cache.indices中的索引
+     *
+     * @param esMetrics
+     * @return
+     */
+    @Bean
+    @ConditionalOnProperty(name = "elasticsearch.search.cache.enabled", havingValue = "true")
+    public QueryResultCache queryResultCache(EsMetrics esMetrics) {
+        return new QueryResultCache(splitCsv(searchCacheIndices), searchCacheTtl, searchCacheMaxWeightMb * 1024 * 1024, esMetrics);
+    }
+
+    private static List<String> splitCsv(String value) {
+        List<String> result = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (StringUtils.isNotBlank(item)) {
+                result.add(item.trim());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * getDoc/getMultiDoc的热点文档近端缓存,只缓存elasticsearch.doc.cache.indices中的索引
+     *
+     * @param esMetrics
+     * @return
+     */
+    @Bean
+    @ConditionalOnProperty(name = "elasticsearch.doc.cache.enabled", havingValue = "true")
+    public DocNearCache docNearCache(EsMetrics esMetrics) {
+        return new DocNearCache(splitCsv(docCacheIndices), docCacheTtl, docCacheMaxSize, esMetrics);
+    }
+
+    /**
+     * DocService中相同的并发search/count/get只发一次请求
+     *
+     * @param esMetrics
+     * @return
+     */
+    @Bean
+    @ConditionalOnProperty(name = "elasticsearch.singleFlight.enabled", havingValue = "true")
+    public SingleFlight singleFlight(EsMetrics esMetrics) {
+        SingleFlight singleFlight = new SingleFlight(splitCsv(singleFlightOperations), esMetrics);
+        esMetrics.gauge("es.singleflight.inflight", singleFlight::inflight);
+        return singleFlight;
+    }
+
+    /**
+     * DocService/IndexService同步调用es的隔离舱和熔断器,按search、get、write、admin分别限制并发和熔断
+     *
+     * @param esMetrics
+     * @return
+     */
+    @Bean
+    @ConditionalOnProperty(name = "elasticsearch.guard.enabled", havingValue = "true")
+    public EsCallGuard esCallGuard(EsMetrics esMetrics) {
+        Map<String, Integer> maxConcurrent = new LinkedHashMap<>();
+        maxConcurrent.put(EsCallGuard.SEARCH, guardSearchMaxConcurrent);
+        maxConcurrent.put(EsCallGuard.GET, guardGetMaxConcurrent);
+        maxConcurrent.put(EsCallGuard.WRITE, guardWriteMaxConcurrent);
+        maxConcurrent.put(EsCallGuard.ADMIN, guardAdminMaxConcurrent);
+        Map<String, Bulkhead> bulkheads = new LinkedHashMap<>();
+        Map<String, CircuitBreaker> breakers = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : maxConcurrent.entrySet()) {
+            String operation = entry.getKey();
+            if (entry.getValue() > 0) {
+                bulkheads.put(operation, new Bulkhead(operation, entry.getValue(), guardMaxWaiting, guardMaxWait));
+            }
+            if (guardBreakerEnabled) {
+                breakers.put(operation, new CircuitBreaker(operation, guardBreakerWindowSize, guardBreakerMinimumCalls,
+                        guardBreakerFailureRateThreshold, guardBreakerSlowCallThreshold, guardBreakerSlowCallRateThreshold,
+                        guardBreakerOpenDuration, guardBreakerHalfOpenCalls));
+            }
+        }
+        return new EsCallGuard(bulkheads, breakers, esMetrics);
+    }
+
+    /**
+     * DocService中search/count/get/mget的对冲读,慢请求补发一个副本,先返回的结果生效
+     *
+     * @param esClusterRouter
+     * @param esMetrics
+     * @return
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "elasticsearch.hedge.enabled", havingValue = "true")
+    public HedgedReader hedgedReader(EsClusterRouter esClusterRouter, EsMetrics esMetrics) {
+        return new HedgedReader(esClusterRouter, esRequestOptions(), splitCsv(hedgeOperations), hedgeDelay,
+                hedgePercentile, hedgeMinDelay, hedgeBudgetPercent, hedgePreference, esMetrics);
+    }
+
+    /**
+     * 分片并行滚动查询(DocService.parallelScan)
+     *
+     * @param esClusterRouter
+     * @return
+     */
+    @Bean
+    public ParallelScanner parallelScanner(EsClusterRouter esClusterRouter) {
+        int maxConcurrency = scanMaxConcurrency > 0 ? scanMaxConcurrency : Runtime.getRuntime().availableProcessors();
+        return new ParallelScanner(esClusterRouter.readClient(), esRequestOptions(),
+                TimeValue.parseTimeValue(scrollKeepAlive, "elasticsearch.search.scroll.keepAlive"), maxConcurrency,
+                scanMaxRetries, scanRetryBackoff);
+    }
+
+    /**
+     * AsyncDocService/AsyncIndexService完成future的线程池,业务方注册同名bean后不再生效
+     * 队列满且线程数达到上限时由提交任务的线程(http客户端的io线程)执行回调,future不会因为线程池拒绝而无法完成
+     *
+     * @return
+     */
+    @Bean(name = "esAsyncExecutor", destroyMethod = "shutdown")
+    @ConditionalOnMissingBean(name = "esAsyncExecutor")
+    public ExecutorService esAsyncExecutor() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int corePoolSize = asyncCorePoolSize > 0 ? asyncCorePoolSize : processors;
+        int maxPoolSize = Math.max(corePoolSize, asyncMaxPoolSize > 0 ? asyncMaxPoolSize : processors * 2);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(corePoolSize, maxPoolSize, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, asyncQueueCapacity)),
+                new ThreadFactoryBuilder().setNameFormat("es-async-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 默认的死信处理器,只打印错误日志;业务方注册自己的DeadLetterHandler后不再生效
+     *
+     * @return
+     */
+    @Bean
+    @ConditionalOnMissingBean(DeadLetterHandler.class)
+    public DeadLetterHandler deadLetterHandler() {
+        return new LoggingDeadLetterHandler();
+    }
+
 }
\ No newline at end of file
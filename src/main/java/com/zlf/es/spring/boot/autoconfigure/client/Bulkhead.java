@@ -0,0 +1,97 @@
+package com.zlf.es.spring.boot.autoconfigure.client;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 一类es操作的隔离舱,限制同时在途的调用数
+ * 1.并发数满时调用线程排队等待,最多等待maxWait毫秒,超时拒绝
+ * 2.排队的线程数超过maxWaiting时直接拒绝,es变慢时阻塞在es调用上的业务线程数有上限
+ * 3.maxWait小于等于0时不排队,并发满时直接拒绝
+ */
+public class Bulkhead {
+
+    private final String operation;
+
+    private final int maxConcurrent;
+
+    private final int maxWaiting;
+
+    private final long maxWaitNanos;
+
+    private final Semaphore permits;
+
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * @param operation     操作类型
+     * @param maxConcurrent 最大并发调用数
+     * @param maxWaiting    最多排队的线程数
+     * @param maxWaitMillis 排队最长等待时间
+     */
+    public Bulkhead(String operation, int maxConcurrent, int maxWaiting, long maxWaitMillis) {
+        this.operation = operation;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxWaiting = Math.max(0, maxWaiting);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+        this.permits = new Semaphore(this.maxConcurrent, true);
+    }
+
+    /**
+     * 取得一个调用许可,调用结束后必须release
+     *
+     * @throws EsRejectedException 并发和排队都已满或排队超时
+     * @throws InterruptedIOException 排队时被中断
+     */
+    public void acquire() throws EsRejectedException, InterruptedIOException {
+        if (permits.tryAcquire()) {
+            return;
+        }
+        if (maxWaitNanos <= 0 || waiting.incrementAndGet() > maxWaiting) {
+            if (maxWaitNanos > 0) {
+                waiting.decrementAndGet();
+            }
+            throw new EsRejectedException(operation, EsRejectedException.BULKHEAD_FULL,
+                    "es " + operation + "调用的并发数已达到" + maxConcurrent + ",排队数已达到" + maxWaiting);
+        }
+        try {
+            if (!permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS)) {
+                throw new EsRejectedException(operation, EsRejectedException.BULKHEAD_TIMEOUT,
+                        "es " + operation + "调用排队超过" + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("es " + operation + "调用排队时被中断");
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * 正在执行的调用数
+     *
+     * @return
+     */
+    public int getActive() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    /**
+     * 正在排队的线程数
+     *
+     * @return
+     */
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+}
@@ -0,0 +1,214 @@
+package com.zlf.es.spring.boot.autoconfigure.client;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 一类es操作的熔断器,按最近windowSize次调用的结果计算
+ * 1.调用数不少于minimumCalls时,失败率或慢调用率达到阈值即熔断(OPEN),熔断期间调用直接拒绝
+ * 2.熔断openDuration毫秒后进入半开(HALF_OPEN),放行halfOpenCalls次试探调用:都成功且不慢时恢复(CLOSED),否则再次熔断
+ * 3.失败指连接失败、超时、es返回5xx或429,4xx等请求本身的错误算成功;耗时不小于slowCallThreshold的调用算慢调用
+ * 4.每次状态变化generation加一,放行的调用记住放行时的generation,结果返回时状态已经变化的(如熔断前放行的慢调用在半开时才返回)不再计入
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String operation;
+
+    private final int minimumCalls;
+
+    private final int failureRateThreshold;
+
+    private final long slowCallNanos;
+
+    private final int slowCallRateThreshold;
+
+    private final long openNanos;
+
+    private final int halfOpenCalls;
+
+    /**
+     * 最近windowSize次调用是否失败、是否慢,环形覆盖
+     */
+    private final boolean[] failures;
+
+    private final boolean[] slows;
+
+    private int next;
+
+    private int calls;
+
+    private int failureCount;
+
+    private int slowCount;
+
+    private volatile State state = State.CLOSED;
+
+    private long openUntil;
+
+    private int halfOpenPermits;
+
+    private int halfOpenDone;
+
+    /**
+     * 状态变化的次数
+     */
+    private long generation;
+
+    /**
+     * @param operation             操作类型
+     * @param windowSize            统计最近的调用次数
+     * @param minimumCalls          统计的调用数不少于该值时才计算失败率
+     * @param failureRateThreshold  失败率阈值(百分比)
+     * @param slowCallThreshold     慢调用的耗时(毫秒),小于等于0时不统计慢调用
+     * @param slowCallRateThreshold 慢调用率阈值(百分比)
+     * @param openDurationMillis    熔断时间
+     * @param halfOpenCalls         半开时放行的试探调用数
+     */
+    public CircuitBreaker(String operation, int windowSize, int minimumCalls, int failureRateThreshold, long slowCallThreshold,
+                          int slowCallRateThreshold, long openDurationMillis, int halfOpenCalls) {
+        this.operation = operation;
+        int size = Math.max(1, windowSize);
+        this.failures = new boolean[size];
+        this.slows = new boolean[size];
+        this.minimumCalls = Math.min(size, Math.max(1, minimumCalls));
+        this.failureRateThreshold = Math.max(1, Math.min(100, failureRateThreshold));
+        this.slowCallNanos = slowCallThreshold > 0 ? TimeUnit.MILLISECONDS.toNanos(slowCallThreshold) : Long.MAX_VALUE;
+        this.slowCallRateThreshold = Math.max(1, Math.min(100, slowCallRateThreshold));
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, openDurationMillis));
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+    }
+
+    /**
+     * 是否放行一次调用,放行后必须用返回的generation调用onComplete或release
+     *
+     * @return 放行时的generation,拒绝时为-1
+     */
+    public synchronized long tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openUntil < 0) {
+                return -1;
+            }
+            state = State.HALF_OPEN;
+            generation++;
+            halfOpenPermits = 0;
+            halfOpenDone = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits >= halfOpenCalls) {
+                return -1;
+            }
+            halfOpenPermits++;
+        }
+        return generation;
+    }
+
+    /**
+     * 放行的调用没有发出(如被隔离舱拒绝),归还半开时的试探名额
+     *
+     * @param permit tryAcquire返回的generation
+     */
+    public synchronized void release(long permit) {
+        if (permit == generation && state == State.HALF_OPEN && halfOpenPermits > halfOpenDone) {
+            halfOpenPermits--;
+        }
+    }
+
+    /**
+     * 记录一次放行的调用的结果,放行后状态已经变化时忽略
+     *
+     * @param permit  tryAcquire返回的generation
+     * @param nanos   耗时
+     * @param failure 是否失败
+     */
+    public synchronized void onComplete(long permit, long nanos, boolean failure) {
+        if (permit != generation) {
+            return;
+        }
+        boolean slow = nanos >= slowCallNanos;
+        if (state == State.HALF_OPEN) {
+            halfOpenDone++;
+            if (failure || slow) {
+                open(failure ? "半开试探调用失败" : "半开试探调用过慢");
+            } else if (halfOpenDone >= halfOpenCalls) {
+                close();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            return;
+        }
+        if (calls == failures.length) {
+            failureCount -= failures[next] ? 1 : 0;
+            slowCount -= slows[next] ? 1 : 0;
+        } else {
+            calls++;
+        }
+        failures[next] = failure;
+        slows[next] = slow;
+        failureCount += failure ? 1 : 0;
+        slowCount += slow ? 1 : 0;
+        next = (next + 1) % failures.length;
+        if (calls < minimumCalls) {
+            return;
+        }
+        if (failureCount * 100 >= failureRateThreshold * calls) {
+            open("最近" + calls + "次调用失败" + failureCount + "次");
+        } else if (slowCount * 100 >= slowCallRateThreshold * calls) {
+            open("最近" + calls + "次调用慢调用" + slowCount + "次");
+        }
+    }
+
+    private void open(String cause) {
+        log.warn("es {}调用熔断{}ms：{}", operation, TimeUnit.NANOSECONDS.toMillis(openNanos), cause);
+        state = State.OPEN;
+        generation++;
+        openUntil = System.nanoTime() + openNanos;
+        reset();
+    }
+
+    private void close() {
+        log.info("es {}调用熔断恢复", operation);
+        state = State.CLOSED;
+        generation++;
+        reset();
+    }
+
+    private void reset() {
+        next = 0;
+        calls = 0;
+        failureCount = 0;
+        slowCount = 0;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * 当前统计窗口的失败率(百分比)
+     *
+     * @return
+     */
+    public synchronized double getFailureRate() {
+        return calls == 0 ? 0 : failureCount * 100.0 / calls;
+    }
+
+    /**
+     * 当前统计窗口的慢调用率(百分比)
+     *
+     * @return
+     */
+    public synchronized double getSlowCallRate() {
+        return calls == 0 ? 0 : slowCount * 100.0 / calls;
+    }
+
+}
@@ -0,0 +1,287 @@
+package com.zlf.es.spring.boot.autoconfigure.client;
+
+import com.google.common.io.CountingOutputStream;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.NByteArrayEntity;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 给es客户端加上按大小阈值的gzip请求压缩
+ * RestClientBuilder.setCompressionEnabled会压缩所有请求(包括很小的get/search),这里包装RestClient使用的异步http客户端,
+ * 只压缩请求体不小于阈值的请求(长度未知的也压缩),并统计压缩前后的字节数和收到的gzip响应的字节数;gzip响应由RestClient自动解压
+ * 使用方式:在HttpClientConfigCallback中返回new CompressingHttpAsyncClientBuilder(httpClientBuilder, ...),
+ * RestClientBuilder只会调用返回值的build(),其余配置仍然设置在传入的httpClientBuilder上
+ */
+public class CompressingHttpAsyncClientBuilder extends HttpAsyncClientBuilder {
+
+    private static final String GZIP = "gzip";
+
+    private final HttpAsyncClientBuilder delegate;
+
+    private final boolean compressRequests;
+
+    private final long thresholdBytes;
+
+    private final int level;
+
+    private final CompressionStats stats;
+
+    /**
+     * @param delegate         已经配置好的HttpAsyncClientBuilder
+     * @param compressRequests 是否压缩请求体
+     * @param thresholdBytes   请求体不小于该字节数时才压缩
+     * @param level            gzip压缩级别1-9
+     * @param stats            压缩统计
+     */
+    public CompressingHttpAsyncClientBuilder(HttpAsyncClientBuilder delegate, boolean compressRequests, long thresholdBytes,
+                                             int level, CompressionStats stats) {
+        this.delegate = delegate;
+        this.compressRequests = compressRequests;
+        this.thresholdBytes = Math.max(0, thresholdBytes);
+        this.level = Math.min(Deflater.BEST_COMPRESSION, Math.max(Deflater.BEST_SPEED, level));
+        this.stats = stats;
+    }
+
+    @Override
+    public CloseableHttpAsyncClient build() {
+        return new CompressingHttpAsyncClient(delegate.build());
+    }
+
+    private final class CompressingHttpAsyncClient extends CloseableHttpAsyncClient {
+
+        private final CloseableHttpAsyncClient client;
+
+        private CompressingHttpAsyncClient(CloseableHttpAsyncClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public boolean isRunning() {
+            return client.isRunning();
+        }
+
+        @Override
+        public void start() {
+            client.start();
+        }
+
+        @Override
+        public void close() throws IOException {
+            client.close();
+        }
+
+        @Override
+        public <T> Future<T> execute(HttpAsyncRequestProducer requestProducer, HttpAsyncResponseConsumer<T> responseConsumer,
+                                     HttpContext context, FutureCallback<T> callback) {
+            HttpAsyncRequestProducer producer = compressRequests ? new CompressingRequestProducer(requestProducer) : requestProducer;
+            return client.execute(producer, new CountingResponseConsumer<>(responseConsumer), context, callback);
+        }
+    }
+
+    /**
+     * 生成请求时按阈值把请求体替换成gzip压缩后的内容
+     */
+    private final class CompressingRequestProducer implements HttpAsyncRequestProducer {
+
+        private final HttpAsyncRequestProducer producer;
+
+        private NByteArrayEntity compressed;
+
+        private CompressingRequestProducer(HttpAsyncRequestProducer producer) {
+            this.producer = producer;
+        }
+
+        @Override
+        public HttpHost getTarget() {
+            return producer.getTarget();
+        }
+
+        @Override
+        public HttpRequest generateRequest() throws IOException, HttpException {
+            HttpRequest request = producer.generateRequest();
+            compressed = null;
+            if (!(request instanceof HttpEntityEnclosingRequest) || request.containsHeader(HttpHeaders.CONTENT_ENCODING)) {
+                return request;
+            }
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity == null || entity.getContentEncoding() != null) {
+                return request;
+            }
+            long length = entity.getContentLength();
+            if (length >= 0 && length < thresholdBytes) {
+                stats.onRequestUncompressed(length);
+                return request;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length > 0 ? (int) Math.min(length / 4 + 32, 1 << 20) : 8192);
+            CountingOutputStream counting;
+            try (GZIPOutputStream gzip = new LeveledGZIPOutputStream(out, level)) {
+                counting = new CountingOutputStream(gzip);
+                entity.writeTo(counting);
+            }
+            compressed = new NByteArrayEntity(out.toByteArray(), ContentType.get(entity));
+            compressed.setContentEncoding(GZIP);
+            ((HttpEntityEnclosingRequest) request).setEntity(compressed);
+            request.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+            stats.onRequestCompressed(counting.getCount(), compressed.getContentLength());
+            return request;
+        }
+
+        @Override
+        public void produceContent(ContentEncoder encoder, IOControl ioControl) throws IOException {
+            if (compressed != null) {
+                compressed.produceContent(encoder, ioControl);
+            } else {
+                producer.produceContent(encoder, ioControl);
+            }
+        }
+
+        @Override
+        public void requestCompleted(HttpContext context) {
+            producer.requestCompleted(context);
+        }
+
+        @Override
+        public void failed(Exception ex) {
+            producer.failed(ex);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return producer.isRepeatable();
+        }
+
+        @Override
+        public void resetRequest() throws IOException {
+            if (compressed != null) {
+                compressed.close();
+            }
+            producer.resetRequest();
+        }
+
+        @Override
+        public void close() throws IOException {
+            producer.close();
+        }
+    }
+
+    /**
+     * 统计gzip响应在网络上的字节数
+     */
+    private final class CountingResponseConsumer<T> implements HttpAsyncResponseConsumer<T> {
+
+        private final HttpAsyncResponseConsumer<T> consumer;
+
+        private boolean gzip;
+
+        private CountingResponseConsumer(HttpAsyncResponseConsumer<T> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void responseReceived(HttpResponse response) throws IOException, HttpException {
+            Header encoding = response.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+            gzip = encoding != null && GZIP.equalsIgnoreCase(encoding.getValue());
+            if (gzip) {
+                stats.onCompressedResponse();
+            }
+            consumer.responseReceived(response);
+        }
+
+        @Override
+        public void consumeContent(ContentDecoder decoder, IOControl ioControl) throws IOException {
+            if (!gzip) {
+                consumer.consumeContent(decoder, ioControl);
+                return;
+            }
+            consumer.consumeContent(new ContentDecoder() {
+                @Override
+                public int read(ByteBuffer dst) throws IOException {
+                    int n = decoder.read(dst);
+                    if (n > 0) {
+                        stats.onCompressedResponseBytes(n);
+                    }
+                    return n;
+                }
+
+                @Override
+                public boolean isCompleted() {
+                    return decoder.isCompleted();
+                }
+            }, ioControl);
+        }
+
+        @Override
+        public void responseCompleted(HttpContext context) {
+            consumer.responseCompleted(context);
+        }
+
+        @Override
+        public void failed(Exception ex) {
+            consumer.failed(ex);
+        }
+
+        @Override
+        public Exception getException() {
+            return consumer.getException();
+        }
+
+        @Override
+        public T getResult() {
+            return consumer.getResult();
+        }
+
+        @Override
+        public boolean isDone() {
+            return consumer.isDone();
+        }
+
+        @Override
+        public void close() throws IOException {
+            consumer.close();
+        }
+
+        @Override
+        public boolean cancel() {
+            return consumer.cancel();
+        }
+    }
+
+    /**
+     * 可以指定压缩级别的GZIPOutputStream
+     */
+    static final class LeveledGZIPOutputStream extends GZIPOutputStream {
+
+        LeveledGZIPOutputStream(OutputStream out, int level) throws IOException {
+            super(out, 8192);
+            def.setLevel(level);
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.zlf.es.spring.boot.autoconfigure.client;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * es客户端http压缩的统计:请求体压缩前后的字节数、没有达到阈值未压缩的请求、收到的gzip响应的字节数
+ */
+public class CompressionStats {
+
+    private final LongAdder compressedRequests = new LongAdder();
+
+    private final LongAdder requestBytesBeforeCompression = new LongAdder();
+
+    private final LongAdder requestBytesAfterCompression = new LongAdder();
+
+    private final LongAdder uncompressedRequests = new LongAdder();
+
+    private final LongAdder uncompressedRequestBytes = new LongAdder();
+
+    private final LongAdder compressedResponses = new LongAdder();
+
+    private final LongAdder compressedResponseBytes = new LongAdder();
+
+    void onRequestCompressed(long before, long after) {
+        compressedRequests.increment();
+        requestBytesBeforeCompression.add(before);
+        requestBytesAfterCompression.add(after);
+    }
+
+    void onRequestUncompressed(long bytes) {
+        uncompressedRequests.increment();
+        uncompressedRequestBytes.add(bytes);
+    }
+
+    void onCompressedResponse() {
+        compressedResponses.increment();
+    }
+
+    void onCompressedResponseBytes(long bytes) {
+        compressedResponseBytes.add(bytes);
+    }
+
+    /**
+     * 压缩过的请求数
+     */
+    public long getCompressedRequests() {
+        return compressedRequests.sum();
+    }
+
+    /**
+     * 压缩过的请求体压缩前的总字节数
+     */
+    public long getRequestBytesBeforeCompression() {
+        return requestBytesBeforeCompression.sum();
+    }
+
+    /**
+     * 压缩过的请求体压缩后的总字节数
+     */
+    public long getRequestBytesAfterCompression() {
+        return requestBytesAfterCompression.sum();
+    }
+
+    /**
+     * 请求体小于阈值没有压缩的请求数
+     */
+    public long getUncompressedRequests() {
+        return uncompressedRequests.sum();
+    }
+
+    /**
+     * 没有压缩的请求体总字节数
+     */
+    public long getUncompressedRequestBytes() {
+        return uncompressedRequestBytes.sum();
+    }
+
+    /**
+     * 收到的gzip压缩的响应数
+     */
+    public long getCompressedResponses() {
+        return compressedResponses.sum();
+    }
+
+    /**
+     * 收到的gzip压缩的响应在网络上的总字节数
+     */
+    public long getCompressedResponseBytes() {
+        return compressedResponseBytes.sum();
+    }
+
+    /**
+     * 请求体压缩率(压缩后/压缩前),没有压缩过请求时为1
+     */
+    public double getRequestCompressionRatio() {
+        long before = getRequestBytesBeforeCompression();
+        return before == 0 ? 1.0 : (double) getRequestBytesAfterCompression() / before;
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionStats{compressedRequests=" + getCompressedRequests()
+                + ", requestBytesBeforeCompression=" + getRequestBytesBeforeCompression()
+                + ", requestBytesAfterCompression=" + getRequestBytesAfterCompression()
+                + ", uncompressedRequests=" + getUncompressedRequests()
+                + ", uncompressedRequestBytes=" + getUncompressedRequestBytes()
+                + ", compressedResponses=" + getCompressedResponses()
+                + ", compressedResponseBytes=" + getCompressedResponseBytes() + "}";
+    }
+
+}
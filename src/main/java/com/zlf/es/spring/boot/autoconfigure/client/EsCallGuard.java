@@ -0,0 +1,199 @@
+package com.zlf.es.spring.boot.autoconfigure.client;
+
+import com.zlf.es.spring.boot.autoconfigure.metrics.EsMetrics;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * DocService/IndexService同步调用es时的隔离舱和熔断器,按操作类型(search、get、write、admin)各自独立
+ * 1.先经过熔断器,熔断中直接拒绝;再经过隔离舱,并发和排队都满或排队超时时拒绝
+ * 2.拒绝时抛出EsRejectedException(IOException),请求不发给es,调用方按集群不可用处理
+ * 3.调用结果和耗时计入熔断器;拒绝次数、熔断状态、失败率、并发和排队数通过EsMetrics上报
+ * 4.异步调用(executeAsync)在调用线程上排队取得许可,future完成时归还许可并计入熔断器
+ */
+public class EsCallGuard {
+
+    public static final String SEARCH = "search";
+
+    public static final String GET = "get";
+
+    public static final String WRITE = "write";
+
+    public static final String ADMIN = "admin";
+
+    private final Map<String, Bulkhead> bulkheads;
+
+    private final Map<String, CircuitBreaker> breakers;
+
+    private final EsMetrics metrics;
+
+    /**
+     * 被保护的一次同步调用
+     */
+    @FunctionalInterface
+    public interface GuardedCall<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    /**
+     * @param bulkheads 各操作类型的隔离舱,没有的操作类型不限制并发
+     * @param breakers  各操作类型的熔断器,没有的操作类型不熔断
+     * @param metrics   指标
+     */
+    public EsCallGuard(Map<String, Bulkhead> bulkheads, Map<String, CircuitBreaker> breakers, EsMetrics metrics) {
+        this.bulkheads = Collections.unmodifiableMap(new LinkedHashMap<>(bulkheads));
+        this.breakers = Collections.unmodifiableMap(new LinkedHashMap<>(breakers));
+        this.metrics = metrics;
+        for (Map.Entry<String, Bulkhead> entry : this.bulkheads.entrySet()) {
+            Bulkhead bulkhead = entry.getValue();
+            metrics.gauge("es.bulkhead." + entry.getKey() + ".active", bulkhead::getActive);
+            metrics.gauge("es.bulkhead." + entry.getKey() + ".waiting", bulkhead::getWaiting);
+        }
+        for (Map.Entry<String, CircuitBreaker> entry : this.breakers.entrySet()) {
+            CircuitBreaker breaker = entry.getValue();
+            metrics.gauge("es.breaker." + entry.getKey() + ".state", () -> breaker.getState().ordinal());
+            metrics.gauge("es.breaker." + entry.getKey() + ".failure.rate", breaker::getFailureRate);
+            metrics.gauge("es.breaker." + entry.getKey() + ".slow.rate", breaker::getSlowCallRate);
+        }
+    }
+
+    /**
+     * 经过熔断器和隔离舱执行一次调用
+     *
+     * @param operation 操作类型
+     * @param call
+     * @return
+     * @throws E           call抛出的异常
+     * @throws IOException 被拒绝时为EsRejectedException,排队时被中断为InterruptedIOException
+     */
+    public <T, E extends Exception> T execute(String operation, GuardedCall<T, E> call) throws E, IOException {
+        CircuitBreaker breaker = breakers.get(operation);
+        Bulkhead bulkhead = bulkheads.get(operation);
+        long permit = admit(operation, breaker, bulkhead);
+        long start = System.nanoTime();
+        boolean failure = false;
+        try {
+            return call.call();
+        } catch (Exception e) {
+            failure = isFailure(e);
+            throw e;
+        } finally {
+            if (bulkhead != null) {
+                bulkhead.release();
+            }
+            if (breaker != null) {
+                breaker.onComplete(permit, System.nanoTime() - start, failure);
+            }
+        }
+    }
+
+    /**
+     * 经过熔断器和隔离舱执行一次异步调用,被拒绝或排队被中断时返回异常完成的future
+     *
+     * @param operation 操作类型
+     * @param call      发出请求并返回结果的future
+     * @return
+     */
+    public <T> CompletableFuture<T> executeAsync(String operation, Supplier<CompletableFuture<T>> call) {
+        CircuitBreaker breaker = breakers.get(operation);
+        Bulkhead bulkhead = bulkheads.get(operation);
+        CompletableFuture<T> future;
+        long permit;
+        long start;
+        try {
+            permit = admit(operation, breaker, bulkhead);
+            start = System.nanoTime();
+        } catch (IOException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        return future.whenComplete((result, e) -> {
+            if (bulkhead != null) {
+                bulkhead.release();
+            }
+            if (breaker != null) {
+                breaker.onComplete(permit, System.nanoTime() - start, e != null && isFailure(e));
+            }
+        });
+    }
+
+    /**
+     * 先经过熔断器再经过隔离舱,被拒绝时上报指标并抛出
+     *
+     * @return 熔断器放行时的generation,结果计入熔断器时带上
+     */
+    private long admit(String operation, CircuitBreaker breaker, Bulkhead bulkhead) throws IOException {
+        long permit = breaker != null ? breaker.tryAcquire() : 0;
+        if (permit < 0) {
+            metrics.recordRejected(operation, EsRejectedException.BREAKER_OPEN);
+            throw new EsRejectedException(operation, EsRejectedException.BREAKER_OPEN, "es " + operation + "调用熔断中");
+        }
+        if (bulkhead != null) {
+            try {
+                bulkhead.acquire();
+            } catch (IOException e) {
+                if (breaker != null) {
+                    breaker.release(permit);
+                }
+                if (e instanceof EsRejectedException) {
+                    metrics.recordRejected(operation, ((EsRejectedException) e).getReason());
+                }
+                throw e;
+            }
+        }
+        return permit;
+    }
+
+    /**
+     * 某个操作类型的熔断器,没有开启熔断时为null
+     *
+     * @param operation
+     * @return
+     */
+    public CircuitBreaker breaker(String operation) {
+        return breakers.get(operation);
+    }
+
+    /**
+     * 某个操作类型的隔离舱,没有限制并发时为null
+     *
+     * @param operation
+     * @return
+     */
+    public Bulkhead bulkhead(String operation) {
+        return bulkheads.get(operation);
+    }
+
+    /**
+     * 集群不可用(连接失败、超时、5xx)或es拒绝执行(429)计为失败
+     */
+    static boolean isFailure(Throwable e) {
+        if (EsClusterRouter.isUnavailable(e)) {
+            return true;
+        }
+        while ((e instanceof ExecutionException || e instanceof CompletionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e instanceof ElasticsearchException && ((ElasticsearchException) e).status() == RestStatus.TOO_MANY_REQUESTS;
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.zlf.es.spring.boot.autoconfigure.client;
+
+import lombok.Data;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * elasticsearch.clusters.<name>下一个命名集群的配置,超时、连接池、压缩等沿用elasticsearch.*的全局配置
+ */
+@Data
+public class EsClusterProperties {
+
+    /**
+     * 集群地址，如果有多个用“,”隔开
+     */
+    private String address;
+
+    /**
+     * 协议
+     */
+    private String schema = "http";
+
+    /**
+     * 账户
+     */
+    private String username;
+
+    /**
+     * 密码
+     */
+    private String password;
+
+}
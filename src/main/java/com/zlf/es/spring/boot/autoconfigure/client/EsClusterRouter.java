@@ -0,0 +1,287 @@
+package com.zlf.es.spring.boot.autoconfigure.client;
+
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 多个命名集群的读写路由
+ * 1.默认集群(default)是esClient,其余集群来自elasticsearch.clusters.<name>
+ * 2.写入、索引管理、批量写入走写集群;search/count/get/mget/exists走读集群
+ * 3.读集群不可用(连接失败、超时、5xx)时改发写集群,并在冷却时间内直接走写集群,之后再尝试读集群
+ * 4.scroll、point in time、分片并行滚动、msearch合并的上下文只在一个集群上有效,固定走读集群(readClient),不切换
+ * 5.读集群(如跨集群复制的副本)可能落后于写集群:记录每个索引最后写入的时间,replicaLag内该索引视为落后(isLagging),
+ * 查询结果缓存和文档近端缓存在这段时间内不缓存该索引的读取,避免把读集群上的旧数据缓存到ttl结束
+ * 读写集群相同时不做任何切换
+ */
+@Slf4j
+public class EsClusterRouter implements Closeable {
+
+    public static final String DEFAULT = "default";
+
+    private final Map<String, RestHighLevelClient> clients;
+
+    /**
+     * 由路由创建、需要由路由关闭的客户端(default之外的命名集群)
+     */
+    private final Map<String, RestHighLevelClient> owned;
+
+    private final String readCluster;
+
+    private final String writeCluster;
+
+    private final boolean failover;
+
+    private final long cooldownNanos;
+
+    private final long replicaLagNanos;
+
+    /**
+     * 读写集群不同时每个索引最后写入的时间(System.nanoTime)
+     */
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+
+    /**
+     * 读集群恢复尝试的时间(System.nanoTime),0表示读集群正常
+     */
+    private volatile long readDownUntil;
+
+    /**
+     * 发给es的一次同步调用
+     */
+    @FunctionalInterface
+    public interface EsCall<T, E extends Exception> {
+        T call(RestHighLevelClient client) throws E;
+    }
+
+    /**
+     * 发给es的一次异步调用
+     */
+    @FunctionalInterface
+    public interface EsAsyncCall<T> {
+        void call(RestHighLevelClient client, ActionListener<T> listener);
+    }
+
+    /**
+     * @param defaultClient  默认集群的客户端(esClient),由spring关闭
+     * @param namedClients   其余命名集群的客户端,由路由关闭
+     * @param readCluster    读集群名
+     * @param writeCluster   写集群名
+     * @param failover       读集群不可用时是否改发写集群
+     * @param cooldownMillis 读集群不可用后直接走写集群的时间
+     * @param replicaLagMillis 读写集群不同时,写入后读集群可能还没有这次写入的时间
+     */
+    public EsClusterRouter(RestHighLevelClient defaultClient, Map<String, RestHighLevelClient> namedClients, String readCluster,
+                           String writeCluster, boolean failover, long cooldownMillis, long replicaLagMillis) {
+        Map<String, RestHighLevelClient> all = new LinkedHashMap<>();
+        all.put(DEFAULT, defaultClient);
+        all.putAll(namedClients);
+        this.clients = Collections.unmodifiableMap(all);
+        this.owned = new LinkedHashMap<>(namedClients);
+        this.owned.remove(DEFAULT);
+        this.readCluster = require(readCluster);
+        this.writeCluster = require(writeCluster);
+        this.failover = failover && !this.readCluster.equals(this.writeCluster);
+        this.cooldownNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, cooldownMillis));
+        this.replicaLagNanos = this.readCluster.equals(this.writeCluster) ? 0 : TimeUnit.MILLISECONDS.toNanos(Math.max(0, replicaLagMillis));
+    }
+
+    private String require(String name) {
+        if (!clients.containsKey(name)) {
+            throw new IllegalStateException("es集群" + name + "没有配置,已配置的集群:" + clients.keySet());
+        }
+        return name;
+    }
+
+    /**
+     * 按名称取客户端
+     *
+     * @param name
+     * @return 没有配置时为null
+     */
+    public RestHighLevelClient client(String name) {
+        return clients.get(name);
+    }
+
+    /**
+     * 所有集群名
+     *
+     * @return
+     */
+    public Set<String> names() {
+        return clients.keySet();
+    }
+
+    /**
+     * 写集群的客户端
+     *
+     * @return
+     */
+    public RestHighLevelClient writeClient() {
+        return clients.get(writeCluster);
+    }
+
+    /**
+     * 配置的读集群的客户端,不考虑是否可用,用于scroll等绑定集群的读取
+     *
+     * @return
+     */
+    public RestHighLevelClient readClient() {
+        return clients.get(readCluster);
+    }
+
+    /**
+     * 读集群当前是否处于不可用的冷却时间内
+     *
+     * @return
+     */
+    public boolean isReadDown() {
+        long until = readDownUntil;
+        return until != 0 && System.nanoTime() - until < 0;
+    }
+
+    /**
+     * 记录一次对索引的写入,读写集群相同时什么都不做
+     *
+     * @param indexName
+     */
+    public void markWritten(String indexName) {
+        if (replicaLagNanos > 0 && indexName != null) {
+            lastWrites.put(indexName, System.nanoTime());
+        }
+    }
+
+    /**
+     * 读写集群不同且索引在replicaLag内有写入,读集群上可能还没有这些写入
+     *
+     * @param indexName 与写入时相同的索引名
+     * @return
+     */
+    public boolean isLagging(String indexName) {
+        if (replicaLagNanos <= 0 || indexName == null || lastWrites.isEmpty()) {
+            return false;
+        }
+        Long lastWrite = lastWrites.get(indexName);
+        if (lastWrite == null) {
+            return false;
+        }
+        if (System.nanoTime() - lastWrite < replicaLagNanos) {
+            return true;
+        }
+        lastWrites.remove(indexName, lastWrite);
+        return false;
+    }
+
+    /**
+     * 在读集群上执行,读集群不可用时改发写集群
+     *
+     * @param call
+     * @return
+     * @throws E call抛出的异常,两个集群都失败时为写集群的异常
+     */
+    public <T, E extends Exception> T read(EsCall<T, E> call) throws E {
+        if (!failover) {
+            return call.call(readClient());
+        }
+        if (isReadDown()) {
+            return call.call(writeClient());
+        }
+        try {
+            T result = call.call(readClient());
+            readDownUntil = 0;
+            return result;
+        } catch (Exception e) {
+            if (!isUnavailable(e)) {
+                throw e;
+            }
+            markReadDown(e);
+            return call.call(writeClient());
+        }
+    }
+
+    /**
+     * 在读集群上异步执行,读集群不可用时改发写集群
+     *
+     * @param call
+     * @param listener
+     */
+    public <T> void readAsync(EsAsyncCall<T> call, ActionListener<T> listener) {
+        if (!failover) {
+            call.call(readClient(), listener);
+            return;
+        }
+        if (isReadDown()) {
+            call.call(writeClient(), listener);
+            return;
+        }
+        call.call(readClient(), new ActionListener<T>() {
+            @Override
+            public void onResponse(T response) {
+                readDownUntil = 0;
+                listener.onResponse(response);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                if (!isUnavailable(e)) {
+                    listener.onFailure(e);
+                    return;
+                }
+                markReadDown(e);
+                call.call(writeClient(), listener);
+            }
+        });
+    }
+
+    private void markReadDown(Exception e) {
+        if (!isReadDown()) {
+            log.warn("es读集群{}不可用,{}ms内改发写集群{}：{}", readCluster, TimeUnit.NANOSECONDS.toMillis(cooldownNanos),
+                    writeCluster, e.toString());
+        }
+        readDownUntil = System.nanoTime() + Math.max(1, cooldownNanos);
+    }
+
+    /**
+     * 连接失败、超时、es返回5xx视为集群不可用,4xx等请求本身的错误不切换
+     */
+    static boolean isUnavailable(Throwable e) {
+        while ((e instanceof ExecutionException || e instanceof CompletionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (e instanceof IOException || e instanceof TimeoutException) {
+            return true;
+        }
+        return e instanceof ElasticsearchException && ((ElasticsearchException) e).status().getStatus() >= 500;
+    }
+
+    /**
+     * 关闭命名集群的客户端,默认集群的esClient由spring关闭
+     */
+    @Override
+    public void close() {
+        for (Map.Entry<String, RestHighLevelClient> entry : owned.entrySet()) {
+            try {
+                entry.getValue().close();
+            } catch (IOException e) {
+                log.warn("关闭es集群{}的客户端失败", entry.getKey(), e);
+            }
+        }
+    }
+
+}
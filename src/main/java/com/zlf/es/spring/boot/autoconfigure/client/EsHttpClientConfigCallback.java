@@ -0,0 +1,184 @@
+package com.zlf.es.spring.boot.autoconfigure.client;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.ManagedNHttpClientConnectionFactory;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.nio.reactor.IOReactorStatus;
+import org.elasticsearch.client.RestClientBuilder;
+
+import javax.net.ssl.SSLContext;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * es客户端唯一的HttpClientConfigCallback(RestClientBuilder只保留最后一次设置的callback,所有配置必须在同一个里面)
+ * 1.认证:用户名密码
+ * 2.连接池:自己创建io reactor和连接池,设置io线程数、TCP_NODELAY、SO_KEEPALIVE、最大连接数、连接最长存活时间
+ * 3.keep-alive:空闲连接最长保持时间,响应头给出更短的时间时以响应头为准
+ * 4.后台线程定时关闭过期和空闲超时的连接,连接池关闭后自动停止
+ * 5.可选:记录节点耗时(LatencyAwareNodeSelector)、按阈值gzip压缩请求(CompressingHttpAsyncClientBuilder)
+ */
+@Slf4j
+public class EsHttpClientConfigCallback implements RestClientBuilder.HttpClientConfigCallback {
+
+    /**
+     * 所有es客户端共用的空闲连接清理线程
+     */
+    private static final ScheduledExecutorService EVICTOR = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("es-http-evictor").setDaemon(true).build());
+
+    private final HttpClientSettings settings;
+
+    private final LatencyAwareNodeSelector nodeSelector;
+
+    private final CompressionStats compressionStats;
+
+    /**
+     * @param settings         http客户端配置
+     * @param nodeSelector     按耗时选择节点时不为null
+     * @param compressionStats 压缩统计
+     */
+    public EsHttpClientConfigCallback(HttpClientSettings settings, LatencyAwareNodeSelector nodeSelector,
+                                      CompressionStats compressionStats) {
+        this.settings = settings;
+        this.nodeSelector = nodeSelector;
+        this.compressionStats = compressionStats;
+    }
+
+    @Override
+    public HttpAsyncClientBuilder customizeHttpClient(HttpAsyncClientBuilder httpClientBuilder) {
+        if (StringUtils.isNotEmpty(settings.getUsername()) && StringUtils.isNotEmpty(settings.getPassword())) {
+            CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+            credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(settings.getUsername(), settings.getPassword()));
+            httpClientBuilder.disableAuthCaching();
+            httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+        }
+        DefaultConnectingIOReactor ioReactor = ioReactor();
+        PoolingNHttpClientConnectionManager connectionManager = new PoolingNHttpClientConnectionManager(ioReactor,
+                ManagedNHttpClientConnectionFactory.INSTANCE, sessionStrategies(), DefaultSchemePortResolver.INSTANCE,
+                SystemDefaultDnsResolver.INSTANCE, settings.getConnectionTtl(), TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(Math.max(1, settings.getMaxConnTotal()));
+        connectionManager.setDefaultMaxPerRoute(Math.max(1, settings.getMaxConnPerRoute()));
+        httpClientBuilder.setConnectionManager(connectionManager);
+        httpClientBuilder.setKeepAliveStrategy(keepAliveStrategy(settings.getKeepAlive()));
+        if (settings.getMaxIdleTime() > 0 || settings.getConnectionTtl() > 0 || settings.getKeepAlive() > 0) {
+            new Evictor(ioReactor, connectionManager, settings.getMaxIdleTime()).start(settings.getEvictInterval());
+        }
+        if (nodeSelector != null) {
+            nodeSelector.install(httpClientBuilder);
+        }
+        if (settings.isCompressRequests() || settings.isCompressResponses()) {
+            return new CompressingHttpAsyncClientBuilder(httpClientBuilder, settings.isCompressRequests(),
+                    settings.getCompressionThresholdBytes(), settings.getCompressionLevel(), compressionStats);
+        }
+        return httpClientBuilder;
+    }
+
+    private DefaultConnectingIOReactor ioReactor() {
+        IOReactorConfig.Builder config = IOReactorConfig.custom()
+                .setTcpNoDelay(settings.isTcpNoDelay())
+                .setSoKeepAlive(settings.isSoKeepAlive());
+        if (settings.getIoThreadCount() > 0) {
+            config.setIoThreadCount(settings.getIoThreadCount());
+        }
+        try {
+            return new DefaultConnectingIOReactor(config.build(),
+                    new ThreadFactoryBuilder().setNameFormat("es-http-io-%d").setDaemon(true).build());
+        } catch (IOReactorException e) {
+            throw new IllegalStateException("创建es客户端的io reactor失败", e);
+        }
+    }
+
+    /**
+     * 与RestClientBuilder默认的一样使用SSLContext.getDefault()
+     */
+    private static Registry<SchemeIOSessionStrategy> sessionStrategies() {
+        try {
+            return RegistryBuilder.<SchemeIOSessionStrategy>create()
+                    .register("http", NoopIOSessionStrategy.INSTANCE)
+                    .register("https", new SSLIOSessionStrategy(SSLContext.getDefault(), SSLIOSessionStrategy.getDefaultHostnameVerifier()))
+                    .build();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("获取默认的SSLContext失败", e);
+        }
+    }
+
+    private static ConnectionKeepAliveStrategy keepAliveStrategy(long keepAlive) {
+        return (response, context) -> {
+            long server = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            if (keepAlive <= 0) {
+                return server;
+            }
+            return server <= 0 ? keepAlive : Math.min(server, keepAlive);
+        };
+    }
+
+    /**
+     * 定时关闭一个连接池中过期和空闲超时的连接
+     */
+    private static final class Evictor implements Runnable {
+
+        private final DefaultConnectingIOReactor ioReactor;
+
+        private final PoolingNHttpClientConnectionManager connectionManager;
+
+        private final long maxIdleTime;
+
+        private volatile ScheduledFuture<?> future;
+
+        private Evictor(DefaultConnectingIOReactor ioReactor, PoolingNHttpClientConnectionManager connectionManager, long maxIdleTime) {
+            this.ioReactor = ioReactor;
+            this.connectionManager = connectionManager;
+            this.maxIdleTime = maxIdleTime;
+        }
+
+        private void start(long intervalMillis) {
+            long interval = Math.max(100, intervalMillis);
+            future = EVICTOR.scheduleWithFixedDelay(this, interval, interval, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            if (ioReactor.getStatus().compareTo(IOReactorStatus.SHUTDOWN_REQUEST) >= 0) {
+                if (future != null) {
+                    future.cancel(false);
+                }
+                return;
+            }
+            try {
+                connectionManager.closeExpiredConnections();
+                if (maxIdleTime > 0) {
+                    connectionManager.closeIdleConnections(maxIdleTime, TimeUnit.MILLISECONDS);
+                }
+            } catch (RuntimeException e) {
+                log.warn("关闭es客户端空闲连接失败", e);
+            }
+        }
+    }
+
+}
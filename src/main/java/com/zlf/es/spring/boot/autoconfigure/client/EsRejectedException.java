@@ -0,0 +1,57 @@
+package com.zlf.es.spring.boot.autoconfigure.client;
+
+import java.io.IOException;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * es调用被隔离舱或熔断器拒绝,请求没有发给es
+ * 继承IOException,调用方按集群不可用处理(与连接超时的处理方式相同,只是立即返回)
+ */
+public class EsRejectedException extends IOException {
+
+    /**
+     * 并发和排队都已满
+     */
+    public static final String BULKHEAD_FULL = "bulkhead_full";
+
+    /**
+     * 排队等待超时
+     */
+    public static final String BULKHEAD_TIMEOUT = "bulkhead_timeout";
+
+    /**
+     * 熔断中
+     */
+    public static final String BREAKER_OPEN = "breaker_open";
+
+    private final String operation;
+
+    private final String reason;
+
+    public EsRejectedException(String operation, String reason, String message) {
+        super(message);
+        this.operation = operation;
+        this.reason = reason;
+    }
+
+    /**
+     * 操作类型:search、get、write、admin
+     *
+     * @return
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * 拒绝原因:bulkhead_full、bulkhead_timeout、breaker_open
+     *
+     * @return
+     */
+    public String getReason() {
+        return reason;
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.zlf.es.spring.boot.autoconfigure.client;
+
+import lombok.Data;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * es客户端底层异步http客户端(apache httpasyncclient)的配置,由EsHttpClientConfigCallback一次性应用
+ * 时间单位都是毫秒,小于等于0表示不限制/使用默认值
+ */
+@Data
+public class HttpClientSettings {
+
+    /**
+     * 账户,为空时不认证
+     */
+    private String username;
+
+    /**
+     * 密码
+     */
+    private String password;
+
+    /**
+     * 最大连接数
+     */
+    private int maxConnTotal = 100;
+
+    /**
+     * 每个节点的最大连接数
+     */
+    private int maxConnPerRoute = 100;
+
+    /**
+     * io reactor线程数,0为cpu核数
+     */
+    private int ioThreadCount = 0;
+
+    /**
+     * 是否开启TCP_NODELAY
+     */
+    private boolean tcpNoDelay = true;
+
+    /**
+     * 是否开启SO_KEEPALIVE
+     */
+    private boolean soKeepAlive = false;
+
+    /**
+     * 空闲连接的最长保持时间,响应头Keep-Alive: timeout=n更短时以响应头为准;-1为一直保持(es默认不返回该响应头)
+     */
+    private long keepAlive = -1;
+
+    /**
+     * 连接空闲超过该时间时由后台线程关闭,0为不关闭
+     */
+    private long maxIdleTime = 0;
+
+    /**
+     * 连接的最长存活时间,到期后不再复用,-1为不限制
+     */
+    private long connectionTtl = -1;
+
+    /**
+     * 后台线程关闭过期和空闲连接的间隔
+     */
+    private long evictInterval = 5000;
+
+    /**
+     * 是否gzip压缩请求体
+     */
+    private boolean compressRequests = false;
+
+    /**
+     * 是否接受gzip压缩的响应
+     */
+    private boolean compressResponses = false;
+
+    /**
+     * 请求体不小于该字节数时才压缩
+     */
+    private long compressionThresholdBytes = 1024;
+
+    /**
+     * gzip压缩级别1-9
+     */
+    private int compressionLevel = 1;
+
+}
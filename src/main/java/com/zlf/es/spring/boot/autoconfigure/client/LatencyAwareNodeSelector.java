@@ -0,0 +1,221 @@
+package com.zlf.es.spring.boot.autoconfigure.client;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.NodeSelector;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 按节点响应耗时选择节点的NodeSelector
+ * 1.通过http拦截器记录每个请求从发出到收到响应头的耗时,按节点计算指数加权移动平均(EWMA)
+ * 2.选择时只保留EWMA不超过最快节点slowFactor倍的节点,RestClient在保留的节点之间轮询,慢节点不再分到请求
+ * 3.没有耗时样本或超过probeInterval没有样本的节点,下一个请求只发给它作为探测,节点恢复后重新参与轮询
+ * 4.可选跳过专用master节点(master角色且不存数据、不做ingest);节点角色来自sniffer,没有开启sniffer时不跳过
+ * 过滤后没有节点时不过滤;RestClient自己标记的死节点不会传进来
+ */
+public class LatencyAwareNodeSelector implements NodeSelector {
+
+    /**
+     * HttpContext中保存请求发出时间的属性名
+     */
+    private static final String START_NANOS = LatencyAwareNodeSelector.class.getName() + ".start";
+
+    private final double alpha;
+
+    private final double slowFactor;
+
+    private final long probeIntervalNanos;
+
+    private final boolean skipDedicatedMasters;
+
+    private final Map<HttpHost, Stats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * @param alpha                EWMA中新样本的权重(0,1]
+     * @param slowFactor           EWMA超过最快节点的该倍数时视为慢节点,不小于1
+     * @param probeIntervalMillis  节点超过该时间没有样本时发一个探测请求
+     * @param skipDedicatedMasters 是否跳过专用master节点
+     */
+    public LatencyAwareNodeSelector(double alpha, double slowFactor, long probeIntervalMillis, boolean skipDedicatedMasters) {
+        this.alpha = Math.min(1, Math.max(0.01, alpha));
+        this.slowFactor = Math.max(1, slowFactor);
+        this.probeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, probeIntervalMillis));
+        this.skipDedicatedMasters = skipDedicatedMasters;
+    }
+
+    /**
+     * 在HttpClientConfigCallback中调用,给http客户端加上记录耗时的拦截器
+     *
+     * @param httpClientBuilder
+     * @return
+     */
+    public HttpAsyncClientBuilder install(HttpAsyncClientBuilder httpClientBuilder) {
+        httpClientBuilder.addInterceptorLast((HttpRequestInterceptor) (request, context) ->
+                context.setAttribute(START_NANOS, System.nanoTime()));
+        httpClientBuilder.addInterceptorLast((HttpResponseInterceptor) (response, context) -> {
+            Object start = context.getAttribute(START_NANOS);
+            HttpHost host = HttpClientContext.adapt(context).getTargetHost();
+            if (start instanceof Long && host != null) {
+                record(host, System.nanoTime() - (Long) start);
+            }
+        });
+        return httpClientBuilder;
+    }
+
+    /**
+     * 记录一次请求的耗时
+     *
+     * @param host
+     * @param nanos
+     */
+    public void record(HttpHost host, long nanos) {
+        stats.computeIfAbsent(host, k -> new Stats()).sample(nanos, alpha);
+    }
+
+    @Override
+    public void select(Iterable<Node> nodes) {
+        if (skipDedicatedMasters) {
+            skipDedicatedMasters(nodes);
+        }
+        long now = System.nanoTime();
+        Node probe = null;
+        double fastest = Double.MAX_VALUE;
+        for (Node node : nodes) {
+            Stats s = stats.computeIfAbsent(node.getHost(), k -> new Stats());
+            if (probe == null && s.tryProbe(now, probeIntervalNanos)) {
+                probe = node;
+            }
+            if (s.ewma > 0) {
+                fastest = Math.min(fastest, s.ewma);
+            }
+        }
+        if (probe != null) {
+            retainOnly(nodes, probe);
+            return;
+        }
+        if (fastest == Double.MAX_VALUE) {
+            return;
+        }
+        double limit = fastest * slowFactor;
+        boolean any = false;
+        for (Node node : nodes) {
+            if (stats.get(node.getHost()).ewma <= limit) {
+                any = true;
+                break;
+            }
+        }
+        if (!any) {
+            return;
+        }
+        for (Iterator<Node> it = nodes.iterator(); it.hasNext(); ) {
+            double ewma = stats.get(it.next().getHost()).ewma;
+            if (ewma <= 0 || ewma > limit) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * 各节点当前的EWMA耗时(毫秒),没有样本的节点不包含在内
+     *
+     * @return
+     */
+    public Map<String, Double> latencies() {
+        Map<String, Double> result = new HashMap<>();
+        for (Map.Entry<HttpHost, Stats> entry : stats.entrySet()) {
+            double ewma = entry.getValue().ewma;
+            if (ewma > 0) {
+                result.put(entry.getKey().toHostString(), ewma / 1e6);
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static void skipDedicatedMasters(Iterable<Node> nodes) {
+        boolean hasOther = false;
+        for (Node node : nodes) {
+            if (!isDedicatedMaster(node)) {
+                hasOther = true;
+                break;
+            }
+        }
+        if (!hasOther) {
+            return;
+        }
+        for (Iterator<Node> it = nodes.iterator(); it.hasNext(); ) {
+            if (isDedicatedMaster(it.next())) {
+                it.remove();
+            }
+        }
+    }
+
+    private static boolean isDedicatedMaster(Node node) {
+        Node.Roles roles = node.getRoles();
+        return roles != null && roles.isMasterEligible() && !roles.canContainData() && !roles.isIngest();
+    }
+
+    private static void retainOnly(Iterable<Node> nodes, Node keep) {
+        for (Iterator<Node> it = nodes.iterator(); it.hasNext(); ) {
+            if (it.next() != keep) {
+                it.remove();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LATENCY_AWARE";
+    }
+
+    /**
+     * 一个节点的耗时统计,ewma为0表示还没有样本
+     */
+    private static final class Stats {
+
+        private volatile double ewma;
+
+        private volatile long lastSampleNanos;
+
+        private volatile long lastProbeNanos;
+
+        private volatile boolean sampled;
+
+        private volatile boolean probed;
+
+        private synchronized void sample(long nanos, double alpha) {
+            double value = Math.max(1, nanos);
+            ewma = ewma <= 0 ? value : alpha * value + (1 - alpha) * ewma;
+            lastSampleNanos = System.nanoTime();
+            sampled = true;
+        }
+
+        /**
+         * 该节点是否需要探测,需要时记下探测时间,同一个探测间隔内只探测一次
+         */
+        private synchronized boolean tryProbe(long now, long intervalNanos) {
+            if (probed && now - lastProbeNanos < intervalNanos) {
+                return false;
+            }
+            if (sampled && now - lastSampleNanos < intervalNanos) {
+                return false;
+            }
+            lastProbeNanos = now;
+            probed = true;
+            return true;
+        }
+    }
+
+}
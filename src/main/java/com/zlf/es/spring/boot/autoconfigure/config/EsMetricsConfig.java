@@ -0,0 +1,38 @@
+package com.zlf.es.spring.boot.autoconfigure.config;
+
+import com.zlf.es.spring.boot.autoconfigure.EsAutoConfigure;
+import com.zlf.es.spring.boot.autoconfigure.metrics.EsMetrics;
+import com.zlf.es.spring.boot.autoconfigure.metrics.MicrometerEsMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 引入micrometer并且容器中有MeterRegistry(如引入了spring-boot-starter-actuator)时,批量写入指标注册到MeterRegistry
+ * elasticsearch.metrics.enabled=false时关闭
+ */
+@Configuration
+@ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+@AutoConfigureBefore(EsAutoConfigure.class)
+@AutoConfigureAfter(name = {"org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration",
+        "org.springframework.boot.actuate.autoconfigure.metrics.export.simple.SimpleMetricsExportAutoConfiguration"})
+public class EsMetricsConfig {
+
+    @Bean
+    @ConditionalOnBean(MeterRegistry.class)
+    @ConditionalOnMissingBean(EsMetrics.class)
+    @ConditionalOnProperty(name = "elasticsearch.metrics.enabled", havingValue = "true", matchIfMissing = true)
+    public EsMetrics micrometerEsMetrics(MeterRegistry meterRegistry) {
+        return new MicrometerEsMetrics(meterRegistry);
+    }
+
+}
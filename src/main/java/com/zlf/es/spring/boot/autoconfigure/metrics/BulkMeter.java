@@ -0,0 +1,121 @@
+package com.zlf.es.spring.boot.autoconfigure.metrics;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 一次bulk请求的计量:发送前按索引累加文档数和字节数,结束时按索引分别上报给EsMetrics
+ */
+public final class BulkMeter {
+
+    /**
+     * 整批失败且不知道索引时使用的索引名
+     */
+    public static final String UNKNOWN_INDEX = "_unknown";
+
+    private final EsMetrics metrics;
+
+    private final String source;
+
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * 索引名 -> {文档数,字节数}
+     */
+    private final Map<String, long[]> perIndex = new LinkedHashMap<>();
+
+    public BulkMeter(EsMetrics metrics, String source) {
+        this.metrics = metrics;
+        this.source = source;
+    }
+
+    /**
+     * 累加一个文档
+     *
+     * @param index
+     * @param bytes
+     */
+    public void add(String index, long bytes) {
+        long[] tally = perIndex.computeIfAbsent(index == null ? UNKNOWN_INDEX : index, k -> new long[2]);
+        tally[0]++;
+        tally[1] += bytes;
+    }
+
+    /**
+     * 累加一个写请求,字节数按文档内容估算
+     *
+     * @param request
+     */
+    public void add(DocWriteRequest<?> request) {
+        add(request.index(), estimatedBytes(request));
+    }
+
+    /**
+     * bulk请求结束(收到响应或整个请求失败),按索引上报文档数、字节数和耗时
+     *
+     * @param tookMillis es返回的took,整个请求失败时为-1
+     */
+    public void record(long tookMillis) {
+        long wallNanos = System.nanoTime() - startNanos;
+        for (Map.Entry<String, long[]> entry : perIndex.entrySet()) {
+            metrics.recordBulk(source, entry.getKey(), (int) entry.getValue()[0], entry.getValue()[1], wallNanos, tookMillis);
+        }
+    }
+
+    /**
+     * 整个bulk请求失败,按索引上报失败的文档数
+     *
+     * @param e
+     */
+    public void recordFailure(Exception e) {
+        record(-1);
+        String errorType = errorType(e);
+        for (Map.Entry<String, long[]> entry : perIndex.entrySet()) {
+            metrics.recordFailure(source, entry.getKey(), errorType, (int) entry.getValue()[0]);
+        }
+    }
+
+    /**
+     * 异常对应的错误类型,与es响应中error.type的格式一致
+     *
+     * @param e
+     * @return
+     */
+    public static String errorType(Throwable e) {
+        return e == null ? "unknown" : ElasticsearchException.getExceptionName(e);
+    }
+
+    /**
+     * 写请求的文档字节数,与BulkRequest.estimatedSizeInBytes的算法相同但不含固定开销
+     *
+     * @param request
+     * @return
+     */
+    public static long estimatedBytes(DocWriteRequest<?> request) {
+        if (request instanceof IndexRequest) {
+            IndexRequest indexRequest = (IndexRequest) request;
+            return indexRequest.source() == null ? 0 : indexRequest.source().length();
+        }
+        if (request instanceof UpdateRequest) {
+            UpdateRequest updateRequest = (UpdateRequest) request;
+            long bytes = 0;
+            if (updateRequest.doc() != null && updateRequest.doc().source() != null) {
+                bytes += updateRequest.doc().source().length();
+            }
+            if (updateRequest.upsertRequest() != null && updateRequest.upsertRequest().source() != null) {
+                bytes += updateRequest.upsertRequest().source().length();
+            }
+            return bytes;
+        }
+        return 0;
+    }
+
+}
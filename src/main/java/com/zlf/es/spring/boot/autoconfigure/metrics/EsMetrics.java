@@ -0,0 +1,114 @@
+package com.zlf.es.spring.boot.autoconfigure.metrics;
+
+import java.util.function.Supplier;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 批量写入指标的SPI,所有方法默认什么都不做
+ * 1.引入micrometer并且容器中有MeterRegistry时默认使用MicrometerEsMetrics,否则使用NOOP
+ * 2.业务方注册自己的EsMetrics bean后不再生效,可以对接其他监控系统
+ * source为写入来源:ingester(EsBulkIngester)、coalescer(UpdateCoalescer)、loader(NdjsonBulkLoader)
+ * 3.客户端缓存的命中率,cache为缓存名:query(QueryResultCache)、doc(DocNearCache)
+ * 4.被合并的相同请求(SingleFlight),operation为search、count、get
+ * 5.被隔离舱或熔断器拒绝的调用(EsCallGuard),operation为search、get、write、admin
+ * 6.对冲读请求(HedgedReader),operation为search、count、get、mget
+ */
+public interface EsMetrics {
+
+    /**
+     * 什么都不记录的实现
+     */
+    EsMetrics NOOP = new EsMetrics() {
+    };
+
+    /**
+     * 一个bulk请求中写入某个索引的部分完成(包括其中失败的文档),一个bulk包含多个索引时每个索引各记录一次
+     *
+     * @param source     写入来源
+     * @param index      索引名
+     * @param docs       文档数
+     * @param bytes      请求体字节数(估算)
+     * @param wallNanos  客户端看到的耗时
+     * @param tookMillis es返回的took,整个请求失败时为-1
+     */
+    default void recordBulk(String source, String index, int docs, long bytes, long wallNanos, long tookMillis) {
+    }
+
+    /**
+     * 写入失败的文档(重试用尽或不可重试)
+     *
+     * @param source    写入来源
+     * @param index     索引名,整批失败且不知道索引时为"_unknown"
+     * @param errorType 错误类型,如es_rejected_execution_exception、version_conflict_engine_exception
+     * @param docs      文档数
+     */
+    default void recordFailure(String source, String index, String errorType, int docs) {
+    }
+
+    /**
+     * 被退避重试的文档
+     *
+     * @param source 写入来源
+     * @param index  索引名
+     * @param docs   文档数
+     */
+    default void recordRetry(String source, String index, int docs) {
+    }
+
+    /**
+     * 客户端缓存命中
+     *
+     * @param cache 缓存名
+     * @param index 索引名
+     */
+    default void recordCacheHit(String cache, String index) {
+    }
+
+    /**
+     * 客户端缓存没有命中
+     *
+     * @param cache 缓存名
+     * @param index 索引名
+     */
+    default void recordCacheMiss(String cache, String index) {
+    }
+
+    /**
+     * 一个请求没有发给es,而是共享了相同的在途请求的结果
+     *
+     * @param operation 操作
+     * @param index     索引名
+     */
+    default void recordCollapsed(String operation, String index) {
+    }
+
+    /**
+     * 一个es调用被隔离舱或熔断器拒绝,没有发给es
+     *
+     * @param operation 操作类型
+     * @param reason    拒绝原因:bulkhead_full(并发和排队都已满)、bulkhead_timeout(排队超时)、breaker_open(熔断中)
+     */
+    default void recordRejected(String operation, String reason) {
+    }
+
+    /**
+     * 一次对冲读请求
+     *
+     * @param operation 操作
+     * @param result    sent(发出了对冲请求)、won(对冲请求先返回)、skipped(对冲预算不足,没有发出)
+     */
+    default void recordHedge(String operation, String result) {
+    }
+
+    /**
+     * 注册一个瞬时值,如队列长度、在途bulk数
+     *
+     * @param name  指标名
+     * @param value 取值函数
+     */
+    default void gauge(String name, Supplier<Number> value) {
+    }
+
+}
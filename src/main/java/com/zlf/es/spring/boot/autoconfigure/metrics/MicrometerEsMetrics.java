@@ -0,0 +1,148 @@
+package com.zlf.es.spring.boot.autoconfigure.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 基于micrometer的EsMetrics,指标都带source和index标签:
+ * es.bulk.docs/es.bulk.bytes(计数器,监控系统按速率看即为每秒文档数/字节数)、es.bulk.latency(客户端耗时直方图)、
+ * es.bulk.took(es返回的took直方图)、es.bulk.overhead(客户端耗时减去took,排队/网络/序列化的开销)、
+ * es.bulk.failures(再带error标签)、es.bulk.retries,以及通过gauge注册的队列长度、在途bulk数等;
+ * 客户端缓存的es.cache.requests带cache、index和result(hit/miss)标签;被合并的相同请求es.singleflight.collapsed带operation和index标签;
+ * 被隔离舱或熔断器拒绝的调用es.guard.rejected带operation和reason标签;
+ * 对冲读请求es.hedge.requests带operation和result(sent/won/skipped)标签
+ */
+public class MicrometerEsMetrics implements EsMetrics {
+
+    private final MeterRegistry registry;
+
+    /**
+     * 按source+index缓存的meter,避免每次上报都查找注册表
+     */
+    private final Map<String, Meters> meters = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> failures = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> cacheRequests = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> collapsed = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> rejected = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> hedges = new ConcurrentHashMap<>();
+
+    public MicrometerEsMetrics(MeterRegistry registry) {
+        this.registry = Objects.requireNonNull(registry, "registry");
+    }
+
+    @Override
+    public void recordBulk(String source, String index, int docs, long bytes, long wallNanos, long tookMillis) {
+        Meters m = meters(source, index);
+        m.docs.increment(docs);
+        m.bytes.increment(bytes);
+        m.latency.record(wallNanos, TimeUnit.NANOSECONDS);
+        if (tookMillis >= 0) {
+            m.took.record(tookMillis, TimeUnit.MILLISECONDS);
+            m.overhead.record(Math.max(0, TimeUnit.NANOSECONDS.toMillis(wallNanos) - tookMillis));
+        }
+    }
+
+    @Override
+    public void recordFailure(String source, String index, String errorType, int docs) {
+        failures.computeIfAbsent(source + '\0' + index + '\0' + errorType,
+                k -> Counter.builder("es.bulk.failures").description("写入失败的文档数")
+                        .tags("source", source, "index", index, "error", errorType).register(registry)).increment(docs);
+    }
+
+    @Override
+    public void recordRetry(String source, String index, int docs) {
+        meters(source, index).retries.increment(docs);
+    }
+
+    @Override
+    public void recordCacheHit(String cache, String index) {
+        cacheRequest(cache, index, "hit");
+    }
+
+    @Override
+    public void recordCacheMiss(String cache, String index) {
+        cacheRequest(cache, index, "miss");
+    }
+
+    private void cacheRequest(String cache, String index, String result) {
+        cacheRequests.computeIfAbsent(cache + '\0' + index + '\0' + result,
+                k -> Counter.builder("es.cache.requests").description("客户端缓存的查找次数")
+                        .tags("cache", cache, "index", index, "result", result).register(registry)).increment();
+    }
+
+    @Override
+    public void recordCollapsed(String operation, String index) {
+        collapsed.computeIfAbsent(operation + '\0' + index,
+                k -> Counter.builder("es.singleflight.collapsed").description("共享在途请求结果、没有发给es的请求数")
+                        .tags("operation", operation, "index", index).register(registry)).increment();
+    }
+
+    @Override
+    public void recordRejected(String operation, String reason) {
+        rejected.computeIfAbsent(operation + '\0' + reason,
+                k -> Counter.builder("es.guard.rejected").description("被隔离舱或熔断器拒绝、没有发给es的调用数")
+                        .tags("operation", operation, "reason", reason).register(registry)).increment();
+    }
+
+    @Override
+    public void recordHedge(String operation, String result) {
+        hedges.computeIfAbsent(operation + '\0' + result,
+                k -> Counter.builder("es.hedge.requests").description("对冲读请求数")
+                        .tags("operation", operation, "result", result).register(registry)).increment();
+    }
+
+    @Override
+    public void gauge(String name, Supplier<Number> value) {
+        Gauge.builder(name, value).strongReference(true).register(registry);
+    }
+
+    private Meters meters(String source, String index) {
+        return meters.computeIfAbsent(source + '\0' + index, k -> new Meters(source, index));
+    }
+
+    private final class Meters {
+
+        private final Counter docs;
+
+        private final Counter bytes;
+
+        private final Counter retries;
+
+        private final Timer latency;
+
+        private final Timer took;
+
+        private final DistributionSummary overhead;
+
+        private Meters(String source, String index) {
+            String[] tags = {"source", source, "index", index};
+            docs = Counter.builder("es.bulk.docs").description("bulk写入的文档数").tags(tags).register(registry);
+            bytes = Counter.builder("es.bulk.bytes").description("bulk写入的文档字节数").baseUnit("bytes").tags(tags).register(registry);
+            retries = Counter.builder("es.bulk.retries").description("被退避重试的文档数").tags(tags).register(registry);
+            latency = Timer.builder("es.bulk.latency").description("bulk请求的客户端耗时").tags(tags)
+                    .publishPercentileHistogram().register(registry);
+            took = Timer.builder("es.bulk.took").description("es返回的bulk耗时").tags(tags)
+                    .publishPercentileHistogram().register(registry);
+            overhead = DistributionSummary.builder("es.bulk.overhead").description("客户端耗时减去took(毫秒)").baseUnit("milliseconds")
+                    .tags(tags).publishPercentileHistogram().register(registry);
+        }
+    }
+
+}
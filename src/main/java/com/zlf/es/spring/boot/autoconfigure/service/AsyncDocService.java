@@ -0,0 +1,169 @@
+package com.zlf.es.spring.boot.autoconfigure.service;
+
+import com.zlf.es.spring.boot.autoconfigure.service.vo.BulkResult;
+import com.zlf.es.spring.boot.autoconfigure.service.vo.EsPageResult;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.replication.ReplicatedWriteRequest;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * DocService的异步版本,基于RestHighLevelClient的*Async接口,调用不阻塞当前线程
+ * 返回值的含义与DocService一致;io异常、集群异常等会使future异常完成,而不是像同步版本那样返回FALSE/null
+ * future在esAsyncExecutor线程池中完成,thenApply等同步回调也在该线程池中执行,不会占用http客户端的io线程
+ */
+public interface AsyncDocService {
+
+    /**
+     * 根据文档id判断文档是否存在
+     *
+     * @param indexName
+     * @param id
+     * @return
+     */
+    CompletableFuture<Boolean> existsDoc(String indexName, String id);
+
+    /**
+     * 根据文档id删除文档
+     *
+     * @param indexName
+     * @param id
+     * @return 文档不存在时为FALSE
+     */
+    CompletableFuture<Boolean> deleteDoc(String indexName, String id);
+
+    /**
+     * 根据文档id部分更新文档数据
+     *
+     * @param indexName
+     * @param id
+     * @param upJson
+     * @return 文档被修改时为TRUE,文档不存在或内容没有变化(noop)时为FALSE,与DocService.updateDoc一致
+     */
+    CompletableFuture<Boolean> updateDoc(String indexName, String id, String upJson);
+
+    /**
+     * 根据文档id部分更新文档数据,如果文档不存在则新增一个文档
+     *
+     * @param indexName
+     * @param id
+     * @param upserJson
+     * @return 成功为TRUE;开启spool时,spool未重放完或集群不可用的请求写入本地spool,写入成功也为TRUE,与DocService.upsertDoc一致
+     */
+    CompletableFuture<Boolean> upsertDoc(String indexName, String id, String upserJson);
+
+    /**
+     * 批量新增、修改和删除文档,交给全局共享的批量写入引擎,所有文档有结果后完成
+     *
+     * @param requestList
+     * @return
+     */
+    CompletableFuture<BulkResult> batchDoc(List<ReplicatedWriteRequest> requestList);
+
+    /**
+     * 根据条件获取文档总数
+     *
+     * @param indexName
+     * @param searchSourceBuilder
+     * @return
+     */
+    CompletableFuture<Long> count(String indexName, SearchSourceBuilder searchSourceBuilder);
+
+    /**
+     * 公共查一个List
+     *
+     * @param indexName
+     * @param searchSourceBuilder
+     * @return
+     */
+    CompletableFuture<SearchResponse> searchList(String indexName, SearchSourceBuilder searchSourceBuilder);
+
+    /**
+     * 按条件分页查询,返回一个分页对象,总数取查询响应中的hits.total(track_total_hits),只发一次请求
+     *
+     * @param indexName
+     * @param searchSourceBuilder
+     * @param clazz
+     * @param usFastJson
+     * @return
+     */
+    <T> CompletableFuture<EsPageResult<T>> searchPageList(String indexName, SearchSourceBuilder searchSourceBuilder, Class<T> clazz, Boolean usFastJson);
+
+    /**
+     * 根据indexName和id获取一个文档
+     *
+     * @param indexName
+     * @param id
+     * @return 文档不存在时为null
+     */
+    CompletableFuture<GetResponse> getDoc(String indexName, String id);
+
+    /**
+     * 根据indexName和id获取一个文档
+     *
+     * @param indexName
+     * @param fieldName 设置包含的字段
+     * @param id
+     * @return 文档不存在时为null
+     */
+    CompletableFuture<GetResponse> getDoc(String indexName, String[] fieldName, String id);
+
+    /**
+     * 根据indexName和id获取一个文档
+     *
+     * @param indexName
+     * @param id
+     * @param includeField 设置包含的字段
+     * @param excludeField 设置排除的字段
+     * @return 文档不存在时为null
+     */
+    CompletableFuture<GetResponse> getDoc(String indexName, String id, String[] includeField, String[] excludeField);
+
+    /**
+     * 根据indexName和文档ids获取多个文档
+     *
+     * @param indexName
+     * @param ids
+     * @return
+     */
+    CompletableFuture<MultiGetResponse> getMultiDoc(String indexName, List<String> ids);
+
+    /**
+     * 根据indexName、包含字段和文档ids获取多个文档
+     *
+     * @param indexName
+     * @param fieldName
+     * @param ids
+     * @return
+     */
+    CompletableFuture<MultiGetResponse> getMultiDoc(String indexName, String[] fieldName, List<String> ids);
+
+    /**
+     * 根据indexName、包含字段、排除字段和文档ids获取多个文档
+     *
+     * @param indexName
+     * @param includeField
+     * @param excludeField
+     * @param ids
+     * @return
+     */
+    CompletableFuture<MultiGetResponse> getMultiDoc(String indexName, String[] includeField, String[] excludeField, List<String> ids);
+
+    /**
+     * 根据条件删除指定索引名的doc数据
+     *
+     * @param indexName
+     * @param query
+     * @return
+     */
+    CompletableFuture<Boolean> deleteByQueryDoc(String indexName, QueryBuilder query);
+
+}
@@ -0,0 +1,54 @@
+package com.zlf.es.spring.boot.autoconfigure.service;
+
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * IndexService的异步版本,基于RestHighLevelClient的*Async接口,调用不阻塞当前线程
+ * 出错时future异常完成;future在esAsyncExecutor线程池中完成
+ */
+public interface AsyncIndexService {
+
+    /**
+     * 创建索引
+     *
+     * @param indexName
+     * @param settings
+     * @param mappings
+     * @return
+     */
+    CompletableFuture<Boolean> createIndex(String indexName, String settings, String mappings);
+
+    /**
+     * 删除索引
+     *
+     * @param indexName
+     * @return 索引不存在时为FALSE
+     */
+    CompletableFuture<Boolean> deleteIndex(String indexName);
+
+    /**
+     * 判断索引是否存在
+     *
+     * @param indexName
+     * @return
+     */
+    CompletableFuture<Boolean> existsIndex(String indexName);
+
+    /**
+     * 目标索引不存在时先创建,再把源索引的数据复制到目标索引,reindex结束后完成
+     *
+     * @param sourceIndexName     源索引名称
+     * @param targetIndexName     目标索引
+     * @param sourceSettings      源索引的settings设置
+     * @param sourceMappings      源索引的mappings设置
+     * @param searchSourceBuilder 可以为null,用于提取源索引中的部分字段和文档
+     * @return 复制的文档数
+     */
+    CompletableFuture<Long> reindex(String sourceIndexName, String targetIndexName, String sourceSettings, String sourceMappings, SearchSourceBuilder searchSourceBuilder);
+
+}
@@ -1,6 +1,9 @@
 package com.zlf.es.spring.boot.autoconfigure.service;
 
+import com.zlf.es.spring.boot.autoconfigure.service.scroll.CloseableIterator;
+import com.zlf.es.spring.boot.autoconfigure.service.vo.BulkResult;
 import com.zlf.es.spring.boot.autoconfigure.service.vo.EsPageResult;
+import com.zlf.es.spring.boot.autoconfigure.service.vo.ScanResult;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.get.MultiGetResponse;
 import org.elasticsearch.action.search.SearchResponse;
@@ -9,7 +12,14 @@ import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * @author zlf
@@ -61,11 +71,34 @@ public interface DocService {
      * 批量新增、修改和删除文档
      * 只支持insert和delete的批量
      * 请参看官方api接口文档
+     * 请求交给全局共享的批量写入引擎攒批发送,429/503失败的文档按退避时间单独重试,
+     * 其余失败的文档交给DeadLetterHandler,方法等待所有文档有结果或超时后返回
      *
      * @param requestList
-     * @return
+     * @return 成功数、失败数和失败的文档及原因
+     */
+    BulkResult batchDoc(List<ReplicatedWriteRequest> requestList);
+
+    /**
+     * 批量索引实体对象
+     * 每个实体用容器中的ObjectMapper直接序列化为字节数组作为文档内容,不经过String中转,交给批量写入引擎写入
+     *
+     * @param indexName
+     * @param docs
+     * @param idFn      从实体中取文档id,返回null时由es生成id
+     * @return 成功数、失败数和失败的文档及原因(序列化失败的文档status为400)
+     */
+    <D> BulkResult indexAll(String indexName, Collection<D> docs, Function<D, String> idFn);
+
+    /**
+     * 流式批量索引实体对象,边遍历边序列化边写入,在途的文档数有上限,适合一次性导入大量数据
+     *
+     * @param indexName
+     * @param docs
+     * @param idFn      从实体中取文档id,返回null时由es生成id
+     * @return 成功数、失败数和失败的文档及原因(序列化失败的文档status为400)
      */
-    Boolean batchDoc(List<ReplicatedWriteRequest> requestList);
+    <D> BulkResult indexAll(String indexName, Iterator<D> docs, Function<D, String> idFn);
 
 
     /**
@@ -90,6 +123,8 @@ public interface DocService {
 
     /**
      * 按条件分页查询,返回一个分页对象
+     * 总数取查询响应中的hits.total,按elasticsearch.search.trackTotalHitsUpTo设置track_total_hits(调用方已设置的不覆盖),
+     * 命中数超过上限时EsPageResult.totalExact为false,totalCount为下限
      *
      * @param indexName
      * @param searchSourceBuilder
@@ -99,6 +134,30 @@ public interface DocService {
      */
     EsPageResult searchPageList(String indexName, SearchSourceBuilder searchSourceBuilder, Class<?> clazz,Boolean usFastJson);
 
+    /**
+     * 按条件游标分页查询(point in time + search_after),第N页和第1页的开销相同,不受max_result_window限制
+     * 第一页continuationToken传null,之后传上一页返回的EsPageResult.continuationToken;
+     * 排序条件最后会自动加上_shard_doc保证顺序唯一,searchSourceBuilder的from被忽略,每页条数取size(未设置时为10)
+     * 返回的continuationToken为null表示已经是最后一页,此时point in time已释放
+     *
+     * @param indexName
+     * @param searchSourceBuilder
+     * @param clazz
+     * @param usFastJson
+     * @param continuationToken   上一页返回的游标,第一页为null
+     * @return
+     */
+    EsPageResult searchPageList(String indexName, SearchSourceBuilder searchSourceBuilder, Class<?> clazz, Boolean usFastJson,
+                                String continuationToken);
+
+    /**
+     * 不再翻页时提前释放游标分页占用的point in time(不释放的话过了keepAlive时间自动释放)
+     *
+     * @param continuationToken
+     * @return
+     */
+    Boolean closeContinuation(String continuationToken);
+
 
     /**
      * 根据indexName和id获取一个文档
@@ -161,6 +220,41 @@ public interface DocService {
      */
     MultiGetResponse getMultiDoc(String indexName, String[] includeField, String[] excludeField, List<String> ids);
 
+    /**
+     * 根据indexName和文档ids获取多个文档并反序列化为clazz
+     * ids按elasticsearch.doc.mget.chunkSize分块,最多elasticsearch.doc.mget.parallelism个mget同时在途,
+     * 每块的响应反序列化后即释放,不存在的文档不在结果中;与getMultiDoc(indexName, ids)一样经过近端缓存、隔离舱/熔断器和对冲读
+     *
+     * @param indexName
+     * @param ids
+     * @param clazz
+     * @return 按ids顺序的文档
+     * @throws org.elasticsearch.ElasticsearchException 某一块mget请求失败、其中有文档获取失败或反序列化失败
+     */
+    <D> List<D> getMultiDoc(String indexName, List<String> ids, Class<D> clazz);
+
+    /**
+     * 同getMultiDoc(indexName, ids, clazz),返回文档id到文档的映射
+     *
+     * @param indexName
+     * @param ids
+     * @param clazz
+     * @return 按ids顺序的LinkedHashMap
+     */
+    <D> Map<String, D> getMultiDocMap(String indexName, List<String> ids, Class<D> clazz);
+
+    /**
+     * 流式获取多个文档,边遍历ids边分块发mget,按ids顺序把存在的文档交给consumer,
+     * 内存中最多只有parallelism块的响应,适合一次性读取大量文档
+     *
+     * @param indexName
+     * @param ids
+     * @param clazz
+     * @param consumer  在调用线程上执行,参数为文档id和文档
+     * @throws org.elasticsearch.ElasticsearchException 某一块mget请求失败、其中有文档获取失败或反序列化失败
+     */
+    <D> void getMultiDoc(String indexName, Iterator<String> ids, Class<D> clazz, BiConsumer<String, D> consumer);
+
     /**
      * 根据条件删除指定索引名的doc数据
      *
@@ -171,13 +265,77 @@ public interface DocService {
     Boolean deleteByQueryDoc(String indexName, QueryBuilder query);
 
     /**
-     * 滚动查询
+     * 滚动查询,返回全部命中的数据
+     * 结果全部放在内存中,数据量大时请使用scrollStream/scrollIterator
+     *
+     * @param indexName
+     * @param size                每次滚动返回的条数
+     * @param searchSourceBuilder
+     * @return 查询失败时返回已取到的数据
+     */
+    SearchHit[] scrollQuery(String indexName, Integer size, SearchSourceBuilder searchSourceBuilder);
+
+    /**
+     * 懒加载的滚动查询,处理当前页的同时异步预取下一页,适合全量导出
+     * 遍历完自动清除scroll上下文;提前结束时请用try-with-resources关闭Stream
+     *
+     * @param indexName
+     * @param size                每次滚动返回的条数
+     * @param searchSourceBuilder
+     * @return
+     */
+    Stream<SearchHit> scrollStream(String indexName, Integer size, SearchSourceBuilder searchSourceBuilder);
+
+    /**
+     * 懒加载的滚动查询,每个命中的_source用容器中的ObjectMapper反序列化为clazz(没有_source的命中为null)
+     * 遍历完自动清除scroll上下文;提前结束时必须调用close()
+     *
+     * @param indexName
+     * @param size                每次滚动返回的条数
+     * @param searchSourceBuilder
+     * @param clazz
+     * @return
+     */
+    <D> CloseableIterator<D> scrollIterator(String indexName, Integer size, SearchSourceBuilder searchSourceBuilder, Class<D> clazz);
+
+    /**
+     * 分片并行滚动查询(sliced scroll),用于全量读取大索引,所有slice结束后返回
+     * slice在有界线程池中并行运行,失败的slice单独从头重试(该slice已交出的命中会再交一次),重试用尽的记录在ScanResult中
+     *
+     * @param indexName
+     * @param size                每次滚动返回的条数
+     * @param searchSourceBuilder
+     * @param slices              slice数,为null或小于1时取索引的分片数
+     * @param consumer            线程安全的命中处理器,会被多个线程同时调用
+     * @return 每个slice的进度和失败原因
+     */
+    ScanResult parallelScan(String indexName, Integer size, SearchSourceBuilder searchSourceBuilder, Integer slices,
+                            Consumer<SearchHit> consumer);
+
+    /**
+     * 只重跑上一次parallelScan失败的slice,结果合并到previous中返回
      *
      * @param indexName
      * @param size
+     * @param searchSourceBuilder 与上一次相同的查询条件
+     * @param previous            上一次parallelScan的结果
+     * @param consumer
+     * @return
+     */
+    ScanResult retryFailedSlices(String indexName, Integer size, SearchSourceBuilder searchSourceBuilder, ScanResult previous,
+                                 Consumer<SearchHit> consumer);
+
+    /**
+     * 分片并行滚动查询,各slice的命中合并成一个迭代器,消费慢时slice线程阻塞
+     * 提前结束时必须调用close();有slice重试用尽时,取完其他slice的数据后抛出ElasticsearchException
+     *
+     * @param indexName
+     * @param size                每次滚动返回的条数
      * @param searchSourceBuilder
+     * @param slices              slice数,为null或小于1时取索引的分片数
      * @return
      */
-    SearchHit[] scrollQuery(String indexName, Integer size, SearchSourceBuilder searchSourceBuilder);
+    CloseableIterator<SearchHit> parallelScanIterator(String indexName, Integer size, SearchSourceBuilder searchSourceBuilder,
+                                                      Integer slices);
 
 }
\ No newline at end of file
@@ -0,0 +1,233 @@
+package com.zlf.es.spring.boot.autoconfigure.service.bulk;
+
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.rest.RestStatus;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 批量写入的AIMD(加性增、乘性减)自适应控制器
+ * 1.集群空闲(took和客户端耗时都低于目标值)时,每批文档数/字节数线性增加,连续健康若干批后在途bulk数加1
+ * 2.集群有压力(出现429拒绝、took或客户端耗时超过目标值、请求失败)时,每批文档数/字节数和在途bulk数减半
+ * 同一个在途窗口只减半一次:减半时已经发出的bulk返回的压力信号不再减半,只有减半之后发出的bulk才会触发下一次减半
+ * 3.关闭自适应时始终返回初始值
+ */
+@Slf4j
+public class AdaptiveBulkController {
+
+    /**
+     * 连续多少批健康后增加一个在途bulk
+     */
+    private static final int CONCURRENCY_INCREASE_EVERY = 10;
+
+    private final boolean enabled;
+
+    private final int minActions;
+
+    private final int maxActions;
+
+    private final long minSizeInBytes;
+
+    private final long maxSizeInBytes;
+
+    private final int maxConcurrentRequests;
+
+    private final long targetTookMillis;
+
+    private final long maxLatencyMillis;
+
+    private volatile int bulkActions;
+
+    private volatile long bulkSizeInBytes;
+
+    private volatile int concurrentRequests;
+
+    private int healthyStreak;
+
+    /**
+     * 已发出的bulk序号
+     */
+    private long sentSeq;
+
+    /**
+     * 上次减半时已发出的最大序号,序号不大于它的bulk属于同一个在途窗口
+     */
+    private long decreasedAtSeq;
+
+    /**
+     * @param enabled               是否开启自适应
+     * @param bulkActions           初始每批文档数
+     * @param bulkSizeInBytes       初始每批字节数
+     * @param concurrentRequests    初始在途bulk数
+     * @param minActions            每批文档数下限
+     * @param maxActions            每批文档数上限
+     * @param minSizeInBytes        每批字节数下限
+     * @param maxSizeInBytes        每批字节数上限
+     * @param maxConcurrentRequests 在途bulk数上限
+     * @param targetTookMillis      es返回的took目标值,超过视为集群有压力
+     * @param maxLatencyMillis      客户端耗时上限,超过视为集群有压力
+     */
+    public AdaptiveBulkController(boolean enabled, int bulkActions, long bulkSizeInBytes, int concurrentRequests,
+                                  int minActions, int maxActions, long minSizeInBytes, long maxSizeInBytes,
+                                  int maxConcurrentRequests, long targetTookMillis, long maxLatencyMillis) {
+        this.enabled = enabled;
+        this.minActions = Math.max(1, Math.min(minActions, maxActions));
+        this.maxActions = Math.max(this.minActions, maxActions);
+        this.minSizeInBytes = Math.max(1, Math.min(minSizeInBytes, maxSizeInBytes));
+        this.maxSizeInBytes = Math.max(this.minSizeInBytes, maxSizeInBytes);
+        this.maxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+        this.targetTookMillis = targetTookMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+        if (enabled) {
+            this.bulkActions = clamp(bulkActions, this.minActions, this.maxActions);
+            this.bulkSizeInBytes = clamp(bulkSizeInBytes, this.minSizeInBytes, this.maxSizeInBytes);
+            this.concurrentRequests = clamp(concurrentRequests, 1, this.maxConcurrentRequests);
+        } else {
+            this.bulkActions = Math.max(1, bulkActions);
+            this.bulkSizeInBytes = Math.max(1, bulkSizeInBytes);
+            this.concurrentRequests = Math.max(1, concurrentRequests);
+        }
+    }
+
+    /**
+     * 发出一批bulk前调用,返回的序号在onResponse/onFailure时传回
+     *
+     * @return
+     */
+    public synchronized long onSend() {
+        return ++sentSeq;
+    }
+
+    /**
+     * 一批bulk返回后根据集群反馈调整
+     *
+     * @param seq           onSend返回的序号
+     * @param response      bulk响应
+     * @param batchFull     该批是否因达到文档数/字节数上限而发送(未攒满的批次不加大批量)
+     * @param latencyMillis 客户端耗时
+     */
+    public void onResponse(long seq, BulkResponse response, boolean batchFull, long latencyMillis) {
+        if (!enabled) {
+            return;
+        }
+        int rejected = 0;
+        if (response.hasFailures()) {
+            for (BulkItemResponse item : response.getItems()) {
+                if (item.isFailed() && isRejected(item.getFailure())) {
+                    rejected++;
+                }
+            }
+        }
+        long tookMillis = response.getTook().getMillis();
+        if (rejected > 0 || tookMillis > targetTookMillis || latencyMillis > maxLatencyMillis) {
+            decrease(seq, "rejected=" + rejected + ",took=" + tookMillis + "ms,latency=" + latencyMillis + "ms");
+        } else {
+            increase(batchFull);
+        }
+    }
+
+    /**
+     * 一批bulk整体失败后减半
+     *
+     * @param seq onSend返回的序号
+     * @param e
+     */
+    public void onFailure(long seq, Exception e) {
+        if (!enabled) {
+            return;
+        }
+        decrease(seq, isRejected(e) ? "rejected" : e.getClass().getSimpleName());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 当前每批文档数
+     *
+     * @return
+     */
+    public int getBulkActions() {
+        return bulkActions;
+    }
+
+    /**
+     * 当前每批字节数
+     *
+     * @return
+     */
+    public long getBulkSizeInBytes() {
+        return bulkSizeInBytes;
+    }
+
+    /**
+     * 当前允许的在途bulk数
+     *
+     * @return
+     */
+    public int getConcurrentRequests() {
+        return concurrentRequests;
+    }
+
+    /**
+     * 是否是集群的拒绝(429)
+     *
+     * @param failure
+     * @return
+     */
+    public static boolean isRejected(BulkItemResponse.Failure failure) {
+        return failure.getStatus() == RestStatus.TOO_MANY_REQUESTS
+                || ExceptionsHelper.unwrap(failure.getCause(), EsRejectedExecutionException.class) != null;
+    }
+
+    private static boolean isRejected(Exception e) {
+        if (e instanceof ElasticsearchStatusException) {
+            return ((ElasticsearchStatusException) e).status() == RestStatus.TOO_MANY_REQUESTS;
+        }
+        if (e instanceof ResponseException) {
+            return ((ResponseException) e).getResponse().getStatusLine().getStatusCode() == RestStatus.TOO_MANY_REQUESTS.getStatus();
+        }
+        return ExceptionsHelper.unwrap(e, EsRejectedExecutionException.class) != null;
+    }
+
+    private synchronized void increase(boolean batchFull) {
+        if (batchFull) {
+            bulkActions = clamp(bulkActions + minActions, minActions, maxActions);
+            bulkSizeInBytes = clamp(bulkSizeInBytes + minSizeInBytes, minSizeInBytes, maxSizeInBytes);
+        }
+        if (++healthyStreak >= CONCURRENCY_INCREASE_EVERY) {
+            healthyStreak = 0;
+            concurrentRequests = clamp(concurrentRequests + 1, 1, maxConcurrentRequests);
+        }
+    }
+
+    private synchronized void decrease(long seq, String reason) {
+        healthyStreak = 0;
+        if (seq <= decreasedAtSeq) {
+            return;
+        }
+        decreasedAtSeq = sentSeq;
+        bulkActions = clamp(bulkActions / 2, minActions, maxActions);
+        bulkSizeInBytes = clamp(bulkSizeInBytes / 2, minSizeInBytes, maxSizeInBytes);
+        concurrentRequests = clamp(concurrentRequests / 2, 1, maxConcurrentRequests);
+        log.info("批量写入集群有压力({}),调整为：actions:{},bytes:{},concurrentRequests:{}",
+                reason, bulkActions, bulkSizeInBytes, concurrentRequests);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+}
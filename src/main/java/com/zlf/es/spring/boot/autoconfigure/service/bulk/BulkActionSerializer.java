@@ -0,0 +1,98 @@
+package com.zlf.es.spring.boot.autoconfigure.service.bulk;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.lucene.uid.Versions;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.index.seqno.SequenceNumbers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 把单个写请求序列化为_bulk接口的NDJSON格式(元数据行+文档行),与RestHighLevelClient发送bulk时的格式一致
+ * 序列化结果可以直接拼接后用BulkRequest.add(bytes, XContentType.JSON)解析回写请求
+ */
+public final class BulkActionSerializer {
+
+    private static final byte NEW_LINE = '\n';
+
+    private BulkActionSerializer() {
+
+    }
+
+    /**
+     * 序列化一个写请求
+     *
+     * @param request
+     * @return
+     * @throws IOException
+     */
+    public static byte[] toBulkBytes(DocWriteRequest<?> request) throws IOException {
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            try (XContentBuilder metadata = new XContentBuilder(XContentType.JSON.xContent(), out)) {
+                metadata.startObject();
+                metadata.startObject(request.opType().getLowercase());
+                metadata.field("_index", request.index());
+                if (request.id() != null) {
+                    metadata.field("_id", request.id());
+                }
+                if (request.routing() != null) {
+                    metadata.field("routing", request.routing());
+                }
+                if (request.version() != Versions.MATCH_ANY) {
+                    metadata.field("version", request.version());
+                }
+                if (request.versionType() != VersionType.INTERNAL) {
+                    metadata.field("version_type", request.versionType().name().toLowerCase());
+                }
+                if (request.ifSeqNo() != SequenceNumbers.UNASSIGNED_SEQ_NO) {
+                    metadata.field("if_seq_no", request.ifSeqNo());
+                }
+                if (request.ifPrimaryTerm() != SequenceNumbers.UNASSIGNED_PRIMARY_TERM) {
+                    metadata.field("if_primary_term", request.ifPrimaryTerm());
+                }
+                if (request instanceof IndexRequest && ((IndexRequest) request).getPipeline() != null) {
+                    metadata.field("pipeline", ((IndexRequest) request).getPipeline());
+                }
+                if (request instanceof UpdateRequest && ((UpdateRequest) request).retryOnConflict() > 0) {
+                    metadata.field("retry_on_conflict", ((UpdateRequest) request).retryOnConflict());
+                }
+                if (request.isRequireAlias()) {
+                    metadata.field(DocWriteRequest.REQUIRE_ALIAS, true);
+                }
+                metadata.endObject();
+                metadata.endObject();
+            }
+            out.writeByte(NEW_LINE);
+            if (request instanceof IndexRequest) {
+                IndexRequest indexRequest = (IndexRequest) request;
+                BytesReference source = indexRequest.source();
+                if (indexRequest.getContentType() == null || indexRequest.getContentType() == XContentType.JSON) {
+                    source.writeTo(out);
+                } else {
+                    out.write(XContentHelper.convertToJson(source, false, indexRequest.getContentType())
+                            .getBytes(StandardCharsets.UTF_8));
+                }
+                out.writeByte(NEW_LINE);
+            } else if (request instanceof UpdateRequest) {
+                try (XContentBuilder body = new XContentBuilder(XContentType.JSON.xContent(), out)) {
+                    ((UpdateRequest) request).toXContent(body, ToXContent.EMPTY_PARAMS);
+                }
+                out.writeByte(NEW_LINE);
+            }
+            return BytesReference.toBytes(out.bytes());
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.zlf.es.spring.boot.autoconfigure.service.bulk;
+
+import org.elasticsearch.rest.RestStatus;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 批量写入单条文档的重试策略
+ * 只有429(集群拒绝)和503(集群不可用)可以重试,退避时间按指数增长并加随机抖动,避免所有客户端同时重试
+ */
+public class BulkRetryPolicy {
+
+    private final int maxRetries;
+
+    private final long initialBackoffMillis;
+
+    private final long maxBackoffMillis;
+
+    /**
+     * @param maxRetries           最大重试次数
+     * @param initialBackoffMillis 第一次重试的退避时间
+     * @param maxBackoffMillis     退避时间上限
+     */
+    public BulkRetryPolicy(int maxRetries, long initialBackoffMillis, long maxBackoffMillis) {
+        this.maxRetries = Math.max(0, maxRetries);
+        this.initialBackoffMillis = Math.max(1, initialBackoffMillis);
+        this.maxBackoffMillis = Math.max(this.initialBackoffMillis, maxBackoffMillis);
+    }
+
+    /**
+     * 该状态码是否可以重试
+     *
+     * @param status
+     * @return
+     */
+    public boolean isRetriable(RestStatus status) {
+        return status == RestStatus.TOO_MANY_REQUESTS || status == RestStatus.SERVICE_UNAVAILABLE;
+    }
+
+    /**
+     * 已经尝试attempts次后是否还能重试
+     *
+     * @param status
+     * @param attempts
+     * @return
+     */
+    public boolean shouldRetry(RestStatus status, int attempts) {
+        return isRetriable(status) && attempts <= maxRetries;
+    }
+
+    /**
+     * 第attempts次失败后的退避时间:在[delay/2, delay]之间随机,delay = initial * 2^(attempts-1)
+     *
+     * @param attempts
+     * @return
+     */
+    public long backoffMillis(int attempts) {
+        int shift = Math.min(Math.max(0, attempts - 1), 30);
+        long delay = Math.min(maxBackoffMillis, initialBackoffMillis << shift);
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+
+}
@@ -0,0 +1,418 @@
+package com.zlf.es.spring.boot.autoconfigure.service.bulk;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 批量写入的本地磁盘预写日志(spool)
+ * 1.由若干个固定大小、只追加写的内存映射段文件组成,写满后滚动到下一个段,段数达到上限后拒绝写入,磁盘占用有上界
+ * 2.每条记录格式:[4字节长度][4字节crc32][NDJSON格式的bulk动作],先写内容和crc最后写长度,进程崩溃时半条记录的长度为0
+ * 3.重放进度保存在checkpoint文件中(先写临时文件再原子替换),重启后从checkpoint继续重放,已重放完的段文件会被删除
+ * 4.读取位置和提交位置分开:read()读出下一批,重放成功后commit()提交,需要重发时rewind()回到提交位置重新读取
+ * 5.未提交的记录数单独计数,isEmpty()不加锁,写入线程判断是否需要写入spool时不会等待段文件刷盘
+ */
+@Slf4j
+public class BulkSpool implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".spool";
+
+    private static final String CHECKPOINT = "checkpoint";
+
+    /**
+     * 记录头:长度+crc32
+     */
+    private static final int HEADER_SIZE = 8;
+
+    private final Path dir;
+
+    private final int segmentSize;
+
+    private final int maxSegments;
+
+    /**
+     * 段id -> 段文件
+     */
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+
+    private long writeSegmentId;
+
+    private FileChannel writeChannel;
+
+    private MappedByteBuffer writeBuffer;
+
+    /**
+     * 已提交(重放成功)的位置
+     */
+    private long readSegmentId;
+
+    private int readOffset;
+
+    /**
+     * 下一次read()开始的位置,不小于提交位置
+     */
+    private long nextSegmentId;
+
+    private int nextOffset;
+
+    private ByteBuffer readBuffer;
+
+    private long readBufferSegmentId = -1;
+
+    private boolean closed = false;
+
+    /**
+     * 已追加还没有提交的记录数
+     */
+    private final AtomicLong pendingRecords = new AtomicLong();
+
+    /**
+     * @param dir         spool目录
+     * @param segmentSize 每个段文件的大小(字节)
+     * @param maxSegments 最多保留的段文件数
+     * @throws IOException
+     */
+    public BulkSpool(Path dir, int segmentSize, int maxSegments) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(2, maxSegments);
+        Files.createDirectories(dir);
+        recover();
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @param record 一个NDJSON格式的bulk动作
+     * @return 磁盘占用达到上限或记录超过段大小时返回false
+     * @throws IOException
+     */
+    public synchronized boolean append(byte[] record) throws IOException {
+        ensureOpen();
+        int required = HEADER_SIZE + record.length;
+        if (required > segmentSize) {
+            log.error("spool记录超过段大小,拒绝写入：{}>{}", required, segmentSize);
+            return false;
+        }
+        if (writeBuffer.remaining() < required) {
+            if (segments.size() >= maxSegments) {
+                log.error("spool磁盘占用达到上限：{}个段,每段{}字节,拒绝写入", maxSegments, segmentSize);
+                return false;
+            }
+            writeBuffer.force();
+            openWriteSegment(writeSegmentId + 1, true);
+        }
+        int position = writeBuffer.position();
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        writeBuffer.position(position + HEADER_SIZE);
+        writeBuffer.put(record);
+        writeBuffer.putInt(position + 4, (int) crc.getValue());
+        writeBuffer.putInt(position, record.length);
+        pendingRecords.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 是否已全部重放并提交,不加锁
+     *
+     * @return
+     */
+    public boolean isEmpty() {
+        return pendingRecords.get() == 0;
+    }
+
+    /**
+     * 当前段文件占用的磁盘字节数
+     *
+     * @return
+     */
+    public synchronized long getDiskUsage() {
+        return (long) segments.size() * segmentSize;
+    }
+
+    /**
+     * 从读取位置按顺序读取一批记录并移动读取位置,不移动提交位置;重放成功后按读取的顺序调用commit()
+     *
+     * @param maxBytes 一批最多读取的字节数(至少读取一条)
+     * @return 没有记录时返回null
+     * @throws IOException
+     */
+    public synchronized Batch read(long maxBytes) throws IOException {
+        ensureOpen();
+        long segmentId = nextSegmentId;
+        int offset = nextOffset;
+        long bytes = 0;
+        List<byte[]> records = new ArrayList<>();
+        while (bytes < maxBytes) {
+            ByteBuffer buffer = readBuffer(segmentId);
+            int limit = segmentId == writeSegmentId ? writeBuffer.position() : segmentSize;
+            int length = offset + HEADER_SIZE <= limit ? buffer.getInt(offset) : 0;
+            if (length <= 0) {
+                if (segmentId < writeSegmentId) {
+                    segmentId = segments.higherKey(segmentId);
+                    offset = 0;
+                    continue;
+                }
+                break;
+            }
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(offset + HEADER_SIZE);
+            slice.limit(offset + HEADER_SIZE + length);
+            byte[] record = new byte[length];
+            slice.get(record);
+            records.add(record);
+            bytes += record.length;
+            offset += HEADER_SIZE + length;
+        }
+        if (records.isEmpty()) {
+            return null;
+        }
+        nextSegmentId = segmentId;
+        nextOffset = offset;
+        return new Batch(records, segmentId, offset);
+    }
+
+    /**
+     * 读取位置回到提交位置,之后重新读取没有提交的记录
+     */
+    public synchronized void rewind() {
+        nextSegmentId = readSegmentId;
+        nextOffset = readOffset;
+    }
+
+    /**
+     * 记录重放进度,删除已重放完的段文件
+     *
+     * @param batch 已成功重放的批次
+     * @throws IOException
+     */
+    public synchronized void commit(Batch batch) throws IOException {
+        ensureOpen();
+        readSegmentId = batch.segmentId;
+        readOffset = batch.offset;
+        if (nextSegmentId < readSegmentId || (nextSegmentId == readSegmentId && nextOffset < readOffset)) {
+            nextSegmentId = readSegmentId;
+            nextOffset = readOffset;
+        }
+        writeCheckpoint();
+        pendingRecords.addAndGet(-batch.getCount());
+        while (segments.firstKey() < readSegmentId) {
+            Path path = segments.remove(segments.firstKey());
+            Files.deleteIfExists(path);
+        }
+        if (readBufferSegmentId < readSegmentId && readBufferSegmentId != nextSegmentId) {
+            readBuffer = null;
+            readBufferSegmentId = -1;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        writeBuffer.force();
+        writeChannel.close();
+    }
+
+    private void recover() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                long id = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                segments.put(id, path);
+            }
+        }
+        if (segments.isEmpty()) {
+            openWriteSegment(0, true);
+            readSegmentId = 0;
+            readOffset = 0;
+            rewind();
+            writeCheckpoint();
+            return;
+        }
+        readSegmentId = segments.firstKey();
+        readOffset = 0;
+        Path checkpoint = dir.resolve(CHECKPOINT);
+        if (Files.exists(checkpoint)) {
+            String[] parts = new String(Files.readAllBytes(checkpoint), StandardCharsets.UTF_8).trim().split(" ");
+            long checkpointSegmentId = Long.parseLong(parts[0]);
+            if (checkpointSegmentId >= readSegmentId) {
+                readSegmentId = checkpointSegmentId;
+                readOffset = Integer.parseInt(parts[1]);
+            }
+        }
+        while (!segments.isEmpty() && segments.firstKey() < readSegmentId) {
+            Files.deleteIfExists(segments.remove(segments.firstKey()));
+        }
+        if (segments.isEmpty()) {
+            openWriteSegment(readSegmentId, true);
+            readOffset = 0;
+            rewind();
+            return;
+        }
+        if (!segments.containsKey(readSegmentId)) {
+            readSegmentId = segments.firstKey();
+            readOffset = 0;
+        }
+        openWriteSegment(segments.lastKey(), false);
+        if (readSegmentId == writeSegmentId && readOffset > writeBuffer.position()) {
+            readOffset = writeBuffer.position();
+        }
+        rewind();
+        pendingRecords.set(countPending());
+        log.info("spool恢复完成：dir:{},segments:{},read:{}/{},write:{}/{},pending:{}", dir, segments.size(), readSegmentId,
+                readOffset, writeSegmentId, writeBuffer.position(), pendingRecords.get());
+    }
+
+    /**
+     * 打开一个段作为写入段,已存在的段扫描出最后一条完整记录的位置并清零其后的内容
+     */
+    private void openWriteSegment(long segmentId, boolean create) throws IOException {
+        if (writeChannel != null) {
+            writeChannel.close();
+        }
+        Path path = dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segmentId, SEGMENT_SUFFIX));
+        writeChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        writeBuffer = writeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        writeSegmentId = segmentId;
+        segments.put(segmentId, path);
+        if (create) {
+            writeBuffer.position(0);
+            return;
+        }
+        int position = 0;
+        CRC32 crc = new CRC32();
+        while (position + HEADER_SIZE <= segmentSize) {
+            int length = writeBuffer.getInt(position);
+            if (length <= 0 || position + HEADER_SIZE + length > segmentSize) {
+                break;
+            }
+            ByteBuffer slice = writeBuffer.duplicate();
+            slice.position(position + HEADER_SIZE);
+            slice.limit(position + HEADER_SIZE + length);
+            byte[] record = new byte[length];
+            slice.get(record);
+            crc.reset();
+            crc.update(record, 0, length);
+            if ((int) crc.getValue() != writeBuffer.getInt(position + 4)) {
+                log.warn("spool段{}在位置{}的记录校验失败,丢弃其后的内容", segmentId, position);
+                break;
+            }
+            position += HEADER_SIZE + length;
+        }
+        ByteBuffer tail = writeBuffer.duplicate();
+        tail.position(position);
+        byte[] zeros = new byte[Math.min(64 * 1024, segmentSize)];
+        while (tail.hasRemaining()) {
+            tail.put(zeros, 0, Math.min(zeros.length, tail.remaining()));
+        }
+        writeBuffer.position(position);
+    }
+
+    /**
+     * 恢复时统计提交位置之后的记录数
+     */
+    private long countPending() throws IOException {
+        long count = 0;
+        long segmentId = readSegmentId;
+        int offset = readOffset;
+        while (true) {
+            ByteBuffer buffer = readBuffer(segmentId);
+            int limit = segmentId == writeSegmentId ? writeBuffer.position() : segmentSize;
+            int length = offset + HEADER_SIZE <= limit ? buffer.getInt(offset) : 0;
+            if (length <= 0) {
+                if (segmentId < writeSegmentId) {
+                    segmentId = segments.higherKey(segmentId);
+                    offset = 0;
+                    continue;
+                }
+                return count;
+            }
+            offset += HEADER_SIZE + length;
+            count++;
+        }
+    }
+
+    private ByteBuffer readBuffer(long segmentId) throws IOException {
+        if (segmentId == writeSegmentId) {
+            return writeBuffer;
+        }
+        if (readBufferSegmentId != segmentId) {
+            try (FileChannel channel = FileChannel.open(segments.get(segmentId), StandardOpenOption.READ)) {
+                readBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, segmentSize);
+            }
+            readBufferSegmentId = segmentId;
+        }
+        return readBuffer;
+    }
+
+    private void writeCheckpoint() throws IOException {
+        Path tmp = dir.resolve(CHECKPOINT + ".tmp");
+        byte[] content = (readSegmentId + " " + readOffset).getBytes(StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(content));
+            channel.force(true);
+        }
+        Files.move(tmp, dir.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("spool已关闭：" + dir);
+        }
+    }
+
+    /**
+     * 一批待重放的记录
+     */
+    public static final class Batch {
+
+        /**
+         * 每条记录的NDJSON bulk动作
+         */
+        private final List<byte[]> records;
+
+        private final long segmentId;
+
+        private final int offset;
+
+        Batch(List<byte[]> records, long segmentId, int offset) {
+            this.records = records;
+            this.segmentId = segmentId;
+            this.offset = offset;
+        }
+
+        public int getCount() {
+            return records.size();
+        }
+
+        public byte[] getRecord(int i) {
+            return records.get(i);
+        }
+    }
+
+}
@@ -0,0 +1,222 @@
+package com.zlf.es.spring.boot.autoconfigure.service.bulk;
+
+import com.zlf.es.spring.boot.autoconfigure.service.vo.BulkResult;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * spool重放线程
+ * 1.集群恢复(ping成功)后按写入顺序一批一批重放spool中的记录,每批大小与批量写入引擎一致,
+ * 同一时间只有一个bulk在途,同一文档的新旧版本不会乱序到达es
+ * 2.有429/503失败时整批不提交,按退避时间暂停后回到提交位置重发同一批(index/delete/部分更新是幂等的),
+ * 同一批重发maxReplayAttempts次后仍被拒绝时,与其余失败一起交给DeadLetterHandler并提交
+ * 3.整个bulk请求失败(集群不可用)时回到提交位置,重新ping成功后再重放,不计重发次数
+ */
+@Slf4j
+public class BulkSpoolReplayer implements Closeable {
+
+    private final RestHighLevelClient esClient;
+
+    private final RequestOptions options;
+
+    private final BulkSpool spool;
+
+    private final AdaptiveBulkController controller;
+
+    private final BulkRetryPolicy retryPolicy;
+
+    private final DeadLetterHandler deadLetterHandler;
+
+    private final long intervalMillis;
+
+    private final int maxReplayAttempts;
+
+    private final Thread replayer;
+
+    private final Object sleepLock = new Object();
+
+    /**
+     * 提交位置上的批次已被集群拒绝的次数,提交后清零
+     */
+    private int attempts;
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param esClient          es客户端
+     * @param options           请求的RequestOptions
+     * @param spool             本地spool
+     * @param controller        每批大小取批量写入引擎当前的字节数
+     * @param retryPolicy       判断哪些失败可以重试及重发的退避时间
+     * @param deadLetterHandler 死信处理器
+     * @param intervalMillis    集群不可用时探测的间隔
+     * @param maxReplayAttempts 一批被429/503拒绝后最多重发的次数
+     */
+    public BulkSpoolReplayer(RestHighLevelClient esClient, RequestOptions options, BulkSpool spool,
+                             AdaptiveBulkController controller, BulkRetryPolicy retryPolicy,
+                             DeadLetterHandler deadLetterHandler, long intervalMillis, int maxReplayAttempts) {
+        this.esClient = Objects.requireNonNull(esClient, "esClient");
+        this.options = Objects.requireNonNull(options, "options");
+        this.spool = Objects.requireNonNull(spool, "spool");
+        this.controller = Objects.requireNonNull(controller, "controller");
+        this.retryPolicy = Objects.requireNonNull(retryPolicy, "retryPolicy");
+        this.deadLetterHandler = Objects.requireNonNull(deadLetterHandler, "deadLetterHandler");
+        this.intervalMillis = Math.max(1, intervalMillis);
+        this.maxReplayAttempts = Math.max(1, maxReplayAttempts);
+        this.replayer = new Thread(this::replayLoop, "es-bulk-spool-replayer");
+        this.replayer.setDaemon(true);
+        this.replayer.start();
+    }
+
+    /**
+     * 停止重放,最多等待intervalMillis让在途的bulk返回
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (sleepLock) {
+            sleepLock.notifyAll();
+        }
+        try {
+            replayer.join(intervalMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void replayLoop() {
+        boolean healthy = false;
+        while (!closed) {
+            try {
+                if (spool.isEmpty()) {
+                    healthy = false;
+                    sleep(intervalMillis);
+                    continue;
+                }
+                if (!healthy && !esClient.ping(options)) {
+                    sleep(intervalMillis);
+                    continue;
+                }
+                healthy = true;
+                long backoff = replayBatch();
+                if (backoff > 0) {
+                    sleep(backoff);
+                }
+            } catch (Exception e) {
+                log.warn("spool重放失败,{}ms后从提交位置重放：{}", intervalMillis, e.toString());
+                spool.rewind();
+                healthy = false;
+                sleep(intervalMillis);
+            }
+        }
+    }
+
+    /**
+     * 重放提交位置上的一批
+     *
+     * @return 被集群拒绝需要重发时返回退避时间(毫秒),已提交返回0
+     * @throws Exception 整个bulk请求失败
+     */
+    private long replayBatch() throws Exception {
+        BulkSpool.Batch batch = spool.read(controller.getBulkSizeInBytes());
+        if (batch == null) {
+            return 0;
+        }
+        BulkRequest bulkRequest = new BulkRequest();
+        long bytes = 0;
+        for (int i = 0; i < batch.getCount(); i++) {
+            byte[] record = batch.getRecord(i);
+            bytes += record.length;
+            try {
+                bulkRequest.add(new BytesArray(record), null, XContentType.JSON);
+            } catch (Exception e) {
+                log.error("spool记录无法解析,已丢弃：{},{}", new String(record, StandardCharsets.UTF_8), e.toString());
+            }
+        }
+        if (bulkRequest.numberOfActions() == 0) {
+            commit(batch, bulkRequest, null);
+            return 0;
+        }
+        long seq = controller.onSend();
+        long start = System.nanoTime();
+        BulkResponse response;
+        try {
+            response = esClient.bulk(bulkRequest, options);
+        } catch (Exception e) {
+            controller.onFailure(seq, e);
+            throw e;
+        }
+        controller.onResponse(seq, response, bytes >= controller.getBulkSizeInBytes(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        if (response.hasFailures() && attempts < maxReplayAttempts) {
+            for (BulkItemResponse item : response.getItems()) {
+                if (item.isFailed() && retryPolicy.isRetriable(item.getFailure().getStatus())) {
+                    attempts++;
+                    long backoff = retryPolicy.backoffMillis(attempts);
+                    log.warn("spool重放被集群拒绝,{}ms后重发该批：status:{},attempts:{}", backoff,
+                            item.getFailure().getStatus(), attempts);
+                    spool.rewind();
+                    return Math.max(1, backoff);
+                }
+            }
+        }
+        commit(batch, bulkRequest, response);
+        return 0;
+    }
+
+    /**
+     * 提交一批,其中的失败交给死信处理器
+     */
+    private void commit(BulkSpool.Batch batch, BulkRequest bulkRequest, BulkResponse response) throws Exception {
+        spool.commit(batch);
+        int failed = 0;
+        if (response != null && response.hasFailures()) {
+            for (BulkItemResponse item : response.getItems()) {
+                if (!item.isFailed()) {
+                    continue;
+                }
+                failed++;
+                DocWriteRequest<?> request = bulkRequest.requests().get(item.getItemId());
+                BulkItemResponse.Failure failure = item.getFailure();
+                try {
+                    deadLetterHandler.handle(request, new BulkResult.FailedItem(item.getIndex(), item.getId(),
+                            item.getOpType().getLowercase(), failure.getStatus().getStatus(), failure.getMessage(), attempts + 1));
+                } catch (Exception e) {
+                    log.error("死信处理失败：{}", e.toString());
+                }
+            }
+        }
+        log.debug("spool重放{}条,重发{}次,死信{}条", batch.getCount(), attempts, failed);
+        attempts = 0;
+    }
+
+    private void sleep(long millis) {
+        synchronized (sleepLock) {
+            if (closed) {
+                return;
+            }
+            try {
+                sleepLock.wait(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                closed = true;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.zlf.es.spring.boot.autoconfigure.service.bulk;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.HttpAsyncContentProducer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 由若干个ByteBuffer切片(例如内存映射文件中的行)拼接成的请求体,发送时直接把切片写入socket,不拷贝成一个大数组
+ * 实现了HttpAsyncContentProducer,异步http客户端会直接用它产生请求内容;开启压缩时走writeTo
+ */
+public class ByteSlicesEntity extends AbstractHttpEntity implements HttpAsyncContentProducer {
+
+    /**
+     * _bulk接口的请求体格式
+     */
+    public static final ContentType NDJSON = ContentType.create("application/x-ndjson");
+
+    private final ByteBuffer[] slices;
+
+    private final long length;
+
+    /**
+     * produceContent的发送进度,close()后重置,重试时可以重新发送
+     */
+    private int current = -1;
+
+    private ByteBuffer buffer;
+
+    public ByteSlicesEntity(List<ByteBuffer> slices, ContentType contentType) {
+        this.slices = slices.toArray(new ByteBuffer[0]);
+        long total = 0;
+        for (ByteBuffer slice : this.slices) {
+            total += slice.remaining();
+        }
+        this.length = total;
+        setContentType(contentType.toString());
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public InputStream getContent() {
+        byte[] content = new byte[(int) Math.min(length, Integer.MAX_VALUE)];
+        int offset = 0;
+        for (ByteBuffer slice : slices) {
+            ByteBuffer duplicate = slice.duplicate();
+            int n = Math.min(duplicate.remaining(), content.length - offset);
+            duplicate.get(content, offset, n);
+            offset += n;
+        }
+        return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        WritableByteChannel channel = Channels.newChannel(out);
+        for (ByteBuffer slice : slices) {
+            ByteBuffer duplicate = slice.duplicate();
+            while (duplicate.hasRemaining()) {
+                channel.write(duplicate);
+            }
+        }
+        out.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    public void produceContent(ContentEncoder encoder, IOControl ioControl) throws IOException {
+        if (current < 0) {
+            current = 0;
+            buffer = slices.length > 0 ? slices[0].duplicate() : null;
+        }
+        while (true) {
+            while (buffer != null && !buffer.hasRemaining()) {
+                current++;
+                buffer = current < slices.length ? slices[current].duplicate() : null;
+            }
+            if (buffer == null) {
+                encoder.complete();
+                return;
+            }
+            if (encoder.write(buffer) == 0) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        current = -1;
+        buffer = null;
+    }
+
+}
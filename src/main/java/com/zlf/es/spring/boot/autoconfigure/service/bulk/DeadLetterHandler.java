@@ -0,0 +1,25 @@
+package com.zlf.es.spring.boot.autoconfigure.service.bulk;
+
+import com.zlf.es.spring.boot.autoconfigure.service.vo.BulkResult;
+import org.elasticsearch.action.DocWriteRequest;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 批量写入死信处理器
+ * 不可重试(如mapping冲突、文档格式错误)或重试次数用尽的写请求会交给它处理,
+ * 默认只打印一行错误日志,业务方可以注册自己的bean落库或投递到mq
+ */
+@FunctionalInterface
+public interface DeadLetterHandler {
+
+    /**
+     * 处理一个写入失败的请求
+     *
+     * @param request    原始写请求
+     * @param failedItem 失败原因
+     */
+    void handle(DocWriteRequest<?> request, BulkResult.FailedItem failedItem);
+
+}
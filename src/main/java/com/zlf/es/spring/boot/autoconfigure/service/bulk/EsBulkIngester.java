@@ -0,0 +1,659 @@
+package com.zlf.es.spring.boot.autoconfigure.service.bulk;
+
+import com.zlf.es.spring.boot.autoconfigure.metrics.BulkMeter;
+import com.zlf.es.spring.boot.autoconfigure.metrics.EsMetrics;
+import com.zlf.es.spring.boot.autoconfigure.service.vo.BulkResult;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.UUIDs;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 全局共享的批量写入引擎(单例)
+ * 1.所有生产者线程通过add()/submit()把写请求放入有界队列,不阻塞调用线程
+ * 2.后台派发线程按文档数/字节数/刷新间隔攒批,通过bulkAsync流水线发送
+ * 3.同时在途的bulk请求数受concurrentRequests限制
+ * 4.每批大小和在途bulk数由AdaptiveBulkController给出,开启自适应时随集群反馈动态调整
+ * 5.只重发429/503失败的单条文档(指数退避+抖动),其余失败交给DeadLetterHandler;bulk返回后的spool写入和死信处理在单独的线程上执行,不占用es客户端的IO线程
+ * 6.配置了BulkSpool时,集群拒绝/不可用且重试用尽的写请求写入本地spool,spool未重放完之前新的写请求也直接写入spool以保证顺序
+ * 7.随spring容器关闭时flush剩余数据并等待在途请求结束
+ * 8.按索引上报写入文档数/字节数、耗时、重试和失败指标,以及队列长度和在途bulk数
+ */
+@Slf4j
+public class EsBulkIngester implements Closeable {
+
+    /**
+     * 刷新标记:派发线程收到后立即发送当前批次
+     */
+    private static final BulkItem FLUSH = new BulkItem(null);
+
+    /**
+     * 关闭标记:派发线程收到后发送当前批次并退出
+     */
+    private static final BulkItem CLOSE = new BulkItem(null);
+
+    /**
+     * 指标中的写入来源
+     */
+    private static final String SOURCE = "ingester";
+
+    private static final String CLOSED_ERROR = "ingester_closed";
+
+    private static final String QUEUE_FULL_ERROR = "queue_full";
+
+    private final RestHighLevelClient esClient;
+
+    private final RequestOptions options;
+
+    private final AdaptiveBulkController controller;
+
+    private final BulkRetryPolicy retryPolicy;
+
+    private final DeadLetterHandler deadLetterHandler;
+
+    /**
+     * 本地spool,未开启时为null
+     */
+    private final BulkSpool spool;
+
+    private final EsMetrics metrics;
+
+    private final long flushIntervalNanos;
+
+    private final long awaitCloseMillis;
+
+    private final BlockingQueue<BulkItem> queue;
+
+    private final ReentrantLock inFlightLock = new ReentrantLock();
+
+    private final Condition inFlightChanged = inFlightLock.newCondition();
+
+    private int inFlight = 0;
+
+    private final Thread dispatcher;
+
+    private final ScheduledExecutorService retryScheduler;
+
+    /**
+     * 执行bulk返回后的失败处理(写入spool、死信处理器)
+     */
+    private final ExecutorService failureExecutor;
+
+    private final AtomicLong executionIdGenerator = new AtomicLong();
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param esClient            es客户端
+     * @param options             请求的RequestOptions
+     * @param controller          每批大小和在途bulk数的控制器
+     * @param retryPolicy         单条文档的重试策略
+     * @param deadLetterHandler   死信处理器
+     * @param spool               本地spool,可以为null
+     * @param metrics             批量写入指标
+     * @param flushIntervalMillis 攒批最长等待时间
+     * @param queueCapacity       待写入队列容量
+     * @param awaitCloseMillis    关闭时等待剩余数据写完的最长时间
+     */
+    public EsBulkIngester(RestHighLevelClient esClient, RequestOptions options, AdaptiveBulkController controller,
+                          BulkRetryPolicy retryPolicy, DeadLetterHandler deadLetterHandler, BulkSpool spool,
+                          EsMetrics metrics, long flushIntervalMillis, int queueCapacity, long awaitCloseMillis) {
+        this.esClient = Objects.requireNonNull(esClient, "esClient");
+        this.options = Objects.requireNonNull(options, "options");
+        this.controller = Objects.requireNonNull(controller, "controller");
+        this.retryPolicy = Objects.requireNonNull(retryPolicy, "retryPolicy");
+        this.deadLetterHandler = Objects.requireNonNull(deadLetterHandler, "deadLetterHandler");
+        this.spool = spool;
+        this.metrics = Objects.requireNonNull(metrics, "metrics");
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushIntervalMillis));
+        this.awaitCloseMillis = awaitCloseMillis;
+        this.queue = new LinkedBlockingQueue<>(Math.max(1, queueCapacity));
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "es-bulk-retry");
+            t.setDaemon(true);
+            return t;
+        });
+        this.failureExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "es-bulk-failure");
+            t.setDaemon(true);
+            return t;
+        });
+        this.dispatcher = new Thread(this::dispatchLoop, "es-bulk-ingester");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+        metrics.gauge("es.bulk.queue.size", queue::size);
+        metrics.gauge("es.bulk.inflight", this::getInFlight);
+        metrics.gauge("es.bulk.concurrent.limit", controller::getConcurrentRequests);
+        metrics.gauge("es.bulk.actions.limit", controller::getBulkActions);
+    }
+
+    /**
+     * 提交一个写请求,不阻塞调用线程,失败的请求交给DeadLetterHandler
+     *
+     * @param request
+     * @return 队列已满或引擎已关闭时返回false
+     */
+    public boolean add(DocWriteRequest<?> request) {
+        return enqueue(new BulkItem(Objects.requireNonNull(request, "request")));
+    }
+
+    /**
+     * 批量提交写请求,不阻塞调用线程,失败的请求交给DeadLetterHandler
+     *
+     * @param requests
+     * @return 全部被接收返回true
+     */
+    public boolean add(Iterable<? extends DocWriteRequest<?>> requests) {
+        boolean accepted = true;
+        for (DocWriteRequest<?> request : requests) {
+            accepted &= add(request);
+        }
+        return accepted;
+    }
+
+    /**
+     * 批量提交写请求,所有请求都有结果(成功、失败或重试用尽)后返回的future完成
+     *
+     * @param requests
+     * @return
+     */
+    public CompletableFuture<BulkResult> submit(Collection<? extends DocWriteRequest<?>> requests) {
+        List<CompletableFuture<BulkResult.FailedItem>> futures = new ArrayList<>(requests.size());
+        for (DocWriteRequest<?> request : requests) {
+            BulkItem item = new BulkItem(Objects.requireNonNull(request, "request"));
+            enqueue(item);
+            futures.add(item.future);
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> toBulkResult(futures));
+    }
+
+    /**
+     * 批量提交写请求并等待结果,超时后仍未得到结果的请求计入pendingCount(它们仍会在后台继续写入)
+     *
+     * @param requests
+     * @param timeoutMillis
+     * @return
+     */
+    public BulkResult submitAndWait(Collection<? extends DocWriteRequest<?>> requests, long timeoutMillis) {
+        List<CompletableFuture<BulkResult.FailedItem>> futures = new ArrayList<>(requests.size());
+        for (DocWriteRequest<?> request : requests) {
+            BulkItem item = new BulkItem(Objects.requireNonNull(request, "request"));
+            enqueue(item);
+            futures.add(item.future);
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("等待批量写入结果被中断!");
+        } catch (TimeoutException e) {
+            log.error("等待批量写入结果超时：{}ms", timeoutMillis);
+        } catch (ExecutionException e) {
+            log.error("等待批量写入结果出错!", e);
+        }
+        return toBulkResult(futures);
+    }
+
+    /**
+     * 提交一个写请求,返回该请求的结果:null表示成功,否则为失败原因
+     *
+     * @param request
+     * @return
+     */
+    public CompletableFuture<BulkResult.FailedItem> submit(DocWriteRequest<?> request) {
+        BulkItem item = new BulkItem(Objects.requireNonNull(request, "request"));
+        enqueue(item);
+        return item.future;
+    }
+
+    /**
+     * spool中是否还有未重放的数据,此时新的写请求应直接写入spool以保证顺序
+     *
+     * @return
+     */
+    public boolean isSpooling() {
+        return spool != null && !spool.isEmpty();
+    }
+
+    /**
+     * 把一个写请求直接写入本地spool,集群恢复后按顺序重放
+     * 没有id的index请求先生成id,重放多次时写入的是同一个文档
+     *
+     * @param request
+     * @return 未开启spool或spool写入失败时返回false
+     */
+    public boolean spool(DocWriteRequest<?> request) {
+        if (spool == null) {
+            return false;
+        }
+        if (request instanceof IndexRequest && request.id() == null) {
+            ((IndexRequest) request).id(UUIDs.base64UUID());
+        }
+        try {
+            return spool.append(BulkActionSerializer.toBulkBytes(request));
+        } catch (IOException e) {
+            log.error("写入spool失败：indexName:{},id:{}", request.index(), request.id(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 把每条文档的结果汇总成BulkResult,还没有结果的计入pendingCount
+     *
+     * @param futures 每条文档的结果:null表示成功
+     * @return
+     */
+    private static BulkResult toBulkResult(List<CompletableFuture<BulkResult.FailedItem>> futures) {
+        BulkResult result = new BulkResult();
+        result.setTotal(futures.size());
+        for (CompletableFuture<BulkResult.FailedItem> future : futures) {
+            if (!future.isDone()) {
+                result.setPendingCount(result.getPendingCount() + 1);
+                continue;
+            }
+            BulkResult.FailedItem failedItem = future.getNow(null);
+            if (failedItem == null) {
+                result.setSuccessCount(result.getSuccessCount() + 1);
+            } else if (failedItem.getStatus() == RestStatus.ACCEPTED.getStatus()) {
+                result.setSpooledCount(result.getSpooledCount() + 1);
+            } else {
+                result.setFailureCount(result.getFailureCount() + 1);
+                result.getFailedItems().add(failedItem);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 立即发送已攒下的批次,不等待发送结果
+     */
+    public void flush() {
+        if (!closed) {
+            queue.offer(FLUSH);
+        }
+    }
+
+    /**
+     * 当前排队等待写入的请求数
+     *
+     * @return
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * 当前在途的bulk请求数
+     *
+     * @return
+     */
+    public int getInFlight() {
+        inFlightLock.lock();
+        try {
+            return inFlight;
+        } finally {
+            inFlightLock.unlock();
+        }
+    }
+
+    /**
+     * 每批大小和在途bulk数的控制器,可读取当前值观察自适应调整情况
+     *
+     * @return
+     */
+    public AdaptiveBulkController getController() {
+        return controller;
+    }
+
+    /**
+     * 停止接收新请求,flush剩余数据并等待在途请求结束
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        retryScheduler.shutdown();
+        long deadline = System.currentTimeMillis() + awaitCloseMillis;
+        try {
+            if (!queue.offer(CLOSE, awaitCloseMillis, TimeUnit.MILLISECONDS)) {
+                log.error("批量写入引擎关闭超时,队列中仍有{}个写请求未发送", queue.size());
+                return;
+            }
+            dispatcher.join(Math.max(1, deadline - System.currentTimeMillis()));
+            if (!awaitNoInFlight(deadline)) {
+                log.error("批量写入引擎关闭超时,仍有{}个bulk请求未完成,{}个写请求未发送", getInFlight(), queue.size());
+            }
+            failureExecutor.shutdown();
+            if (!failureExecutor.awaitTermination(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                log.error("批量写入引擎关闭超时,仍有失败的写请求未写入spool或交给死信处理器");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("批量写入引擎关闭被中断!");
+        }
+    }
+
+    private boolean enqueue(BulkItem item) {
+        if (isSpooling()) {
+            fail(item, RestStatus.SERVICE_UNAVAILABLE, "spool_failed", "spool中还有未重放的数据");
+            return item.future.join().getStatus() == RestStatus.ACCEPTED.getStatus();
+        }
+        if (closed) {
+            fail(item, RestStatus.SERVICE_UNAVAILABLE, CLOSED_ERROR, "批量写入引擎已关闭");
+            return false;
+        }
+        if (!queue.offer(item)) {
+            fail(item, RestStatus.TOO_MANY_REQUESTS, QUEUE_FULL_ERROR, "批量写入队列已满");
+            return false;
+        }
+        return true;
+    }
+
+    private void dispatchLoop() {
+        BulkRequest current = new BulkRequest();
+        List<BulkItem> currentItems = new ArrayList<>();
+        long deadline = 0L;
+        while (true) {
+            BulkItem item;
+            try {
+                if (currentItems.isEmpty()) {
+                    item = queue.take();
+                } else {
+                    item = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("批量写入派发线程被中断,剩余{}个写请求未发送", queue.size());
+                return;
+            }
+            if (item == CLOSE) {
+                execute(current, currentItems, false);
+                return;
+            }
+            if (item != null && item != FLUSH) {
+                if (currentItems.isEmpty()) {
+                    deadline = System.nanoTime() + flushIntervalNanos;
+                }
+                current.add(item.request);
+                currentItems.add(item);
+            }
+            boolean full = current.numberOfActions() >= controller.getBulkActions()
+                    || current.estimatedSizeInBytes() >= controller.getBulkSizeInBytes();
+            if ((full || item == null || item == FLUSH) && !currentItems.isEmpty()) {
+                execute(current, currentItems, full);
+                current = new BulkRequest();
+                currentItems = new ArrayList<>();
+            }
+        }
+    }
+
+    private void execute(BulkRequest bulkRequest, List<BulkItem> items, boolean full) {
+        if (items.isEmpty()) {
+            return;
+        }
+        long executionId = executionIdGenerator.incrementAndGet();
+        try {
+            acquireInFlight();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (BulkItem item : items) {
+                fail(item, RestStatus.SERVICE_UNAVAILABLE, "interrupted", "等待发送被中断");
+            }
+            return;
+        }
+        for (BulkItem item : items) {
+            item.attempts++;
+        }
+        log.debug("Executing bulk [{}] with {} requests", executionId, items.size());
+        BulkMeter meter = new BulkMeter(metrics, SOURCE);
+        for (BulkItem item : items) {
+            meter.add(item.request);
+        }
+        long seq = controller.onSend();
+        long startNanos = System.nanoTime();
+        try {
+            esClient.bulkAsync(bulkRequest, options, new ActionListener<BulkResponse>() {
+                @Override
+                public void onResponse(BulkResponse response) {
+                    try {
+                        controller.onResponse(seq, response, full, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+                        meter.record(response.getTook().getMillis());
+                        afterBulk(executionId, items, response);
+                    } finally {
+                        releaseInFlight();
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    try {
+                        controller.onFailure(seq, e);
+                        meter.record(-1);
+                        afterBulk(executionId, items, e);
+                    } finally {
+                        releaseInFlight();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            releaseInFlight();
+            afterBulk(executionId, items, e);
+        }
+    }
+
+    private void afterBulk(long executionId, List<BulkItem> items, BulkResponse response) {
+        if (!response.hasFailures()) {
+            log.debug("Bulk [{}] completed in {} milliseconds", executionId, response.getTook().getMillis());
+            for (BulkItem item : items) {
+                item.future.complete(null);
+            }
+            return;
+        }
+        int retried = 0;
+        int failed = 0;
+        for (BulkItemResponse itemResponse : response.getItems()) {
+            BulkItem item = items.get(itemResponse.getItemId());
+            if (!itemResponse.isFailed()) {
+                item.future.complete(null);
+                continue;
+            }
+            BulkItemResponse.Failure failure = itemResponse.getFailure();
+            if (retryOrFail(item, failure.getStatus(), BulkMeter.errorType(failure.getCause()), failure.getMessage())) {
+                retried++;
+            } else {
+                failed++;
+            }
+        }
+        log.warn("Bulk [{}] executed with failures: total:{},retried:{},failed:{}", executionId, items.size(), retried, failed);
+    }
+
+    private void afterBulk(long executionId, List<BulkItem> items, Exception e) {
+        RestStatus status = statusOf(e);
+        log.error("Failed to execute bulk [{}] with {} requests, status:{}", executionId, items.size(), status, e);
+        String errorType = BulkMeter.errorType(e);
+        for (BulkItem item : items) {
+            retryOrFail(item, status, errorType, e.toString());
+        }
+    }
+
+    /**
+     * 可重试的按退避时间重新入队,否则交给死信处理器
+     *
+     * @return 是否重试
+     */
+    private boolean retryOrFail(BulkItem item, RestStatus status, String errorType, String reason) {
+        if (closed || !retryPolicy.shouldRetry(status, item.attempts)) {
+            failLater(item, status, errorType, reason);
+            return false;
+        }
+        metrics.recordRetry(SOURCE, item.request.index(), 1);
+        try {
+            retryScheduler.schedule(() -> {
+                if (closed) {
+                    fail(item, status, CLOSED_ERROR, "批量写入引擎已关闭,放弃重试：" + reason);
+                } else if (!queue.offer(item)) {
+                    fail(item, RestStatus.TOO_MANY_REQUESTS, QUEUE_FULL_ERROR, "批量写入队列已满,放弃重试：" + reason);
+                }
+            }, retryPolicy.backoffMillis(item.attempts), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RuntimeException e) {
+            failLater(item, status, errorType, reason);
+            return false;
+        }
+    }
+
+    /**
+     * 在失败处理线程上执行fail(),线程池已关闭时在当前线程执行
+     */
+    private void failLater(BulkItem item, RestStatus status, String errorType, String reason) {
+        try {
+            failureExecutor.execute(() -> fail(item, status, errorType, reason));
+        } catch (RejectedExecutionException e) {
+            fail(item, status, errorType, reason);
+        }
+    }
+
+    /**
+     * 写入失败:集群拒绝/不可用时优先写入spool,否则计入失败指标并交给死信处理器
+     *
+     * @param errorType 失败指标的错误类型
+     */
+    private void fail(BulkItem item, RestStatus status, String errorType, String reason) {
+        DocWriteRequest<?> request = item.request;
+        if (retryPolicy.isRetriable(status) && spool(request)) {
+            item.future.complete(new BulkResult.FailedItem(request.index(), request.id(), request.opType().getLowercase(),
+                    RestStatus.ACCEPTED.getStatus(), "已写入本地spool,集群恢复后重放：" + reason, item.attempts));
+            return;
+        }
+        metrics.recordFailure(SOURCE, request.index(), errorType, 1);
+        BulkResult.FailedItem failedItem = new BulkResult.FailedItem(request.index(), request.id(),
+                request.opType().getLowercase(), status.getStatus(), reason, item.attempts);
+        try {
+            deadLetterHandler.handle(request, failedItem);
+        } catch (RuntimeException e) {
+            log.error("死信处理器处理失败：indexName:{},id:{}", request.index(), request.id(), e);
+        }
+        item.future.complete(failedItem);
+    }
+
+    /**
+     * 整批失败时推断状态码:连接失败等IO异常视为集群不可用(503)
+     *
+     * @param e
+     * @return
+     */
+    private static RestStatus statusOf(Exception e) {
+        if (e instanceof ElasticsearchStatusException) {
+            return ((ElasticsearchStatusException) e).status();
+        }
+        if (e instanceof ResponseException) {
+            RestStatus status = RestStatus.fromCode(((ResponseException) e).getResponse().getStatusLine().getStatusCode());
+            return status == null ? RestStatus.INTERNAL_SERVER_ERROR : status;
+        }
+        if (e instanceof IOException) {
+            return RestStatus.SERVICE_UNAVAILABLE;
+        }
+        return RestStatus.INTERNAL_SERVER_ERROR;
+    }
+
+    /**
+     * 在途bulk数达到控制器给出的上限时等待
+     *
+     * @throws InterruptedException
+     */
+    private void acquireInFlight() throws InterruptedException {
+        inFlightLock.lock();
+        try {
+            while (inFlight >= controller.getConcurrentRequests()) {
+                inFlightChanged.await();
+            }
+            inFlight++;
+        } finally {
+            inFlightLock.unlock();
+        }
+    }
+
+    private void releaseInFlight() {
+        inFlightLock.lock();
+        try {
+            inFlight--;
+            inFlightChanged.signalAll();
+        } finally {
+            inFlightLock.unlock();
+        }
+    }
+
+    private boolean awaitNoInFlight(long deadlineMillis) throws InterruptedException {
+        inFlightLock.lock();
+        try {
+            while (inFlight > 0) {
+                long remaining = deadlineMillis - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                inFlightChanged.await(remaining, TimeUnit.MILLISECONDS);
+            }
+            return true;
+        } finally {
+            inFlightLock.unlock();
+        }
+    }
+
+    /**
+     * 队列中的一个写请求
+     */
+    static final class BulkItem {
+
+        final DocWriteRequest<?> request;
+
+        /**
+         * 写入结果:null表示成功,否则为失败原因
+         */
+        final CompletableFuture<BulkResult.FailedItem> future = new CompletableFuture<>();
+
+        /**
+         * 已发送的次数,只在派发线程和响应回调中按顺序修改
+         */
+        volatile int attempts;
+
+        BulkItem(DocWriteRequest<?> request) {
+            this.request = request;
+        }
+    }
+
+}
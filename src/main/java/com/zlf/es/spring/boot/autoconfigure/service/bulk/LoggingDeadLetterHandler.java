@@ -0,0 +1,22 @@
+package com.zlf.es.spring.boot.autoconfigure.service.bulk;
+
+import com.zlf.es.spring.boot.autoconfigure.service.vo.BulkResult;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.DocWriteRequest;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 默认的死信处理器:只记录索引、id和原因,不打印文档内容
+ */
+@Slf4j
+public class LoggingDeadLetterHandler implements DeadLetterHandler {
+
+    @Override
+    public void handle(DocWriteRequest<?> request, BulkResult.FailedItem failedItem) {
+        log.error("批量写入失败：indexName:{},id:{},opType:{},status:{},attempts:{},reason:{}", failedItem.getIndex(),
+                failedItem.getId(), failedItem.getOpType(), failedItem.getStatus(), failedItem.getAttempts(), failedItem.getReason());
+    }
+
+}
@@ -0,0 +1,592 @@
+package com.zlf.es.spring.boot.autoconfigure.service.bulk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.zlf.es.spring.boot.autoconfigure.metrics.BulkMeter;
+import com.zlf.es.spring.boot.autoconfigure.metrics.EsMetrics;
+import com.zlf.es.spring.boot.autoconfigure.service.vo.BulkResult;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 从本地NDJSON文件并行批量导入es,用于大数据量回灌
+ * 1.文件按内存映射读取,只按换行符切分成行的字节切片,不解码成String,也不解析成写请求
+ * 2.切片直接拼接成_bulk请求体(ByteSlicesEntity)通过低级客户端发送,最多同时有concurrentRequests个bulk在途,
+ * 在途数满时读取线程阻塞,瓶颈在集群而不在客户端
+ * 3.429/503的文档按BulkRetryPolicy退避后只重试失败的那些,其余失败交给DeadLetterHandler,整个请求失败(连接异常等)时整批重试
+ * 4.运行中按固定间隔打印进度和吞吐,并按索引上报批量写入指标
+ * 两种文件格式:loadDocuments每行一个文档,写入指定索引(es生成id);loadBulk每行是_bulk接口格式的动作行/文档行
+ */
+@Slf4j
+public class NdjsonBulkLoader {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final ByteBuffer INDEX_ACTION = ByteBuffer.wrap("{\"index\":{}}\n".getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+
+    private static final ByteBuffer NEW_LINE = ByteBuffer.wrap(new byte[]{'\n'}).asReadOnlyBuffer();
+
+    private static final byte[] DELETE = "\"delete\"".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 只返回判断结果需要的字段,减小响应体
+     */
+    private static final String FILTER_PATH = "took,errors,items.*.status,items.*._index,items.*._id,items.*.error.type,items.*.error.reason";
+
+    /**
+     * 每次映射的文件区域大小
+     */
+    private static final int MAX_REGION = 1 << 30;
+
+    /**
+     * BulkResult中最多记录的失败文档数,避免大批量导入时失败明细占满内存
+     */
+    private static final int MAX_FAILED_ITEMS = 1000;
+
+    private static final long MB = 1024L * 1024L;
+
+    /**
+     * 指标中的写入来源
+     */
+    private static final String SOURCE = "loader";
+
+    private final RestClient restClient;
+
+    private final RequestOptions options;
+
+    private final BulkRetryPolicy retryPolicy;
+
+    private final DeadLetterHandler deadLetterHandler;
+
+    private final EsMetrics metrics;
+
+    private final int concurrentRequests;
+
+    private final long chunkBytes;
+
+    private final int chunkActions;
+
+    private final long progressIntervalMillis;
+
+    /**
+     * @param restClient             低级客户端
+     * @param options                请求的RequestOptions
+     * @param retryPolicy            重试策略
+     * @param deadLetterHandler      死信处理器
+     * @param metrics                批量写入指标
+     * @param concurrentRequests     同时在途的bulk请求数
+     * @param chunkBytes             每个bulk请求的最大字节数
+     * @param chunkActions           每个bulk请求的最大文档数
+     * @param progressIntervalMillis 打印进度的间隔
+     */
+    public NdjsonBulkLoader(RestClient restClient, RequestOptions options, BulkRetryPolicy retryPolicy,
+                            DeadLetterHandler deadLetterHandler, EsMetrics metrics, int concurrentRequests,
+                            long chunkBytes, int chunkActions, long progressIntervalMillis) {
+        this.restClient = Objects.requireNonNull(restClient, "restClient");
+        this.options = Objects.requireNonNull(options, "options");
+        this.retryPolicy = Objects.requireNonNull(retryPolicy, "retryPolicy");
+        this.deadLetterHandler = Objects.requireNonNull(deadLetterHandler, "deadLetterHandler");
+        this.metrics = Objects.requireNonNull(metrics, "metrics");
+        this.concurrentRequests = Math.max(1, concurrentRequests);
+        this.chunkBytes = Math.max(1, chunkBytes);
+        this.chunkActions = Math.max(1, chunkActions);
+        this.progressIntervalMillis = Math.max(1, progressIntervalMillis);
+    }
+
+    /**
+     * 导入每行一个文档的文件
+     *
+     * @param indexName 目标索引
+     * @param files
+     * @return
+     * @throws IOException 读取文件失败
+     */
+    public BulkResult loadDocuments(String indexName, List<Path> files) throws IOException {
+        return load(Objects.requireNonNull(indexName, "indexName"), files);
+    }
+
+    /**
+     * 导入_bulk接口格式的文件(index/create/update后跟一行文档,delete没有文档行)
+     *
+     * @param files
+     * @return
+     * @throws IOException 读取文件失败或文件格式不对
+     */
+    public BulkResult loadBulk(List<Path> files) throws IOException {
+        return load(null, files);
+    }
+
+    private BulkResult load(String indexName, List<Path> files) throws IOException {
+        long totalBytes = 0;
+        for (Path file : files) {
+            totalBytes += Files.size(file);
+        }
+        String endpoint = indexName == null ? "/_bulk" : "/" + indexName + "/_bulk";
+        Semaphore permits = new Semaphore(concurrentRequests);
+        Progress progress = new Progress(totalBytes, permits);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("es-ndjson-loader").setDaemon(true).build());
+        scheduler.scheduleAtFixedRate(progress::log, progressIntervalMillis, progressIntervalMillis, TimeUnit.MILLISECONDS);
+        try {
+            Chunk chunk = new Chunk(0);
+            long scannedBefore = 0;
+            for (Path file : files) {
+                log.info("开始导入文件：{}", file);
+                try (LineScanner scanner = new LineScanner(file)) {
+                    ByteBuffer line;
+                    while ((line = scanner.next()) != null) {
+                        Action action;
+                        if (indexName != null) {
+                            action = new Action(INDEX_ACTION.duplicate(), line);
+                        } else if (isDelete(line)) {
+                            action = new Action(line, null);
+                        } else {
+                            ByteBuffer source = scanner.next();
+                            if (source == null) {
+                                throw new IOException("bulk格式文件的最后一个动作缺少文档行：" + file);
+                            }
+                            action = new Action(line, source);
+                        }
+                        chunk.add(action);
+                        progress.scannedBytes.set(scanner.offset() + scannedBefore);
+                        if (chunk.bytes >= chunkBytes || chunk.actions.size() >= chunkActions) {
+                            permits.acquire();
+                            execute(chunk, endpoint, scheduler, permits, progress);
+                            chunk = new Chunk(0);
+                        }
+                    }
+                }
+                scannedBefore += Files.size(file);
+            }
+            if (!chunk.actions.isEmpty()) {
+                permits.acquire();
+                execute(chunk, endpoint, scheduler, permits, progress);
+            }
+            // 拿到全部许可说明所有bulk都已结束
+            permits.acquire(concurrentRequests);
+            permits.release(concurrentRequests);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("导入被中断!");
+        } finally {
+            scheduler.shutdownNow();
+            progress.log();
+        }
+        return progress.toResult();
+    }
+
+    /**
+     * 发送一批,调用前已占用一个在途许可,这批(包括重试)结束后释放
+     */
+    private void execute(Chunk chunk, String endpoint, ScheduledExecutorService scheduler, Semaphore permits, Progress progress) {
+        Request request = new Request("POST", endpoint);
+        request.addParameter("filter_path", FILTER_PATH);
+        request.setEntity(new ByteSlicesEntity(chunk.slices(), ByteSlicesEntity.NDJSON));
+        request.setOptions(options);
+        int attempts = chunk.attempts + 1;
+        String defaultIndex = defaultIndex(endpoint);
+        BulkMeter meter = new BulkMeter(metrics, SOURCE);
+        restClient.performRequestAsync(request, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                JsonNode body;
+                JsonNode items;
+                try (InputStream content = response.getEntity().getContent()) {
+                    body = MAPPER.readTree(content);
+                    items = body.path("items");
+                } catch (Exception e) {
+                    log.error("解析bulk响应失败,该批{}个文档按失败处理", chunk.actions.size(), e);
+                    failAll(chunk, endpoint, progress, RestStatus.INTERNAL_SERVER_ERROR, BulkMeter.errorType(e), e.toString(), attempts);
+                    progress.doneBytes.addAndGet(chunk.bytes);
+                    permits.release();
+                    return;
+                }
+                List<Action> retries = new ArrayList<>();
+                for (int i = 0; i < chunk.actions.size(); i++) {
+                    Action action = chunk.actions.get(i);
+                    Iterator<JsonNode> results = items.path(i).elements();
+                    JsonNode result = results.hasNext() ? results.next() : MissingNode.getInstance();
+                    meter.add(result.path("_index").asText(defaultIndex), action.bytes());
+                    if (!result.has("error")) {
+                        progress.success.incrementAndGet();
+                        continue;
+                    }
+                    RestStatus status = RestStatus.fromCode(result.path("status").asInt(500));
+                    JsonNode error = result.path("error");
+                    if (status != null && retryPolicy.shouldRetry(status, attempts)) {
+                        metrics.recordRetry(SOURCE, result.path("_index").asText(BulkMeter.UNKNOWN_INDEX), 1);
+                        retries.add(action);
+                    } else {
+                        fail(action, endpoint, progress, error.path("type").asText("unknown"), new BulkResult.FailedItem(result.path("_index").asText(null),
+                                result.path("_id").asText(null), null, status == null ? 500 : status.getStatus(),
+                                error.path("type").asText() + ": " + error.path("reason").asText(), attempts));
+                    }
+                }
+                meter.record(body.path("took").asLong(-1));
+                progress.doneBytes.addAndGet(chunk.bytes - retryBytes(retries));
+                if (retries.isEmpty()) {
+                    permits.release();
+                } else {
+                    Chunk retry = new Chunk(attempts);
+                    retries.forEach(retry::add);
+                    schedule(retry, endpoint, scheduler, permits, progress);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                RestStatus status = RestStatus.SERVICE_UNAVAILABLE;
+                if (e instanceof ResponseException) {
+                    status = RestStatus.fromCode(((ResponseException) e).getResponse().getStatusLine().getStatusCode());
+                }
+                for (Action action : chunk.actions) {
+                    meter.add(defaultIndex, action.bytes());
+                }
+                meter.record(-1);
+                if (status != null && retryPolicy.shouldRetry(status, attempts)) {
+                    log.warn("bulk请求失败,第{}次重试：{}", attempts, e.toString());
+                    metrics.recordRetry(SOURCE, defaultIndex == null ? BulkMeter.UNKNOWN_INDEX : defaultIndex, chunk.actions.size());
+                    Chunk retry = new Chunk(attempts);
+                    chunk.actions.forEach(retry::add);
+                    schedule(retry, endpoint, scheduler, permits, progress);
+                    return;
+                }
+                log.error("bulk请求失败,该批{}个文档按失败处理", chunk.actions.size(), e);
+                failAll(chunk, endpoint, progress, status == null ? RestStatus.INTERNAL_SERVER_ERROR : status,
+                        BulkMeter.errorType(e), e.toString(), attempts);
+                progress.doneBytes.addAndGet(chunk.bytes);
+                permits.release();
+            }
+        });
+    }
+
+    private void schedule(Chunk chunk, String endpoint, ScheduledExecutorService scheduler, Semaphore permits, Progress progress) {
+        scheduler.schedule(() -> execute(chunk, endpoint, scheduler, permits, progress),
+                retryPolicy.backoffMillis(chunk.attempts), TimeUnit.MILLISECONDS);
+    }
+
+    private void failAll(Chunk chunk, String endpoint, Progress progress, RestStatus status, String errorType, String reason,
+                         int attempts) {
+        for (Action action : chunk.actions) {
+            fail(action, endpoint, progress, errorType, new BulkResult.FailedItem(null, null, null, status.getStatus(), reason, attempts));
+        }
+    }
+
+    /**
+     * 失败的文档计入结果和失败指标并交给死信处理器,只有这里才会把字节切片解析成写请求
+     */
+    private void fail(Action action, String endpoint, Progress progress, String errorType, BulkResult.FailedItem failedItem) {
+        progress.fail(failedItem);
+        String defaultIndex = defaultIndex(endpoint);
+        byte[] bytes = action.toBytes();
+        try {
+            BulkRequest bulkRequest = new BulkRequest();
+            bulkRequest.add(bytes, 0, bytes.length, defaultIndex, XContentType.JSON);
+            DocWriteRequest<?> request = bulkRequest.requests().get(0);
+            if (failedItem.getIndex() == null) {
+                failedItem.setIndex(request.index());
+                failedItem.setId(request.id());
+            }
+            failedItem.setOpType(request.opType().getLowercase());
+            deadLetterHandler.handle(request, failedItem);
+        } catch (Exception e) {
+            log.error("导入失败的文档无法解析：{},原因：{}", new String(bytes, StandardCharsets.UTF_8), failedItem.getReason());
+        }
+        metrics.recordFailure(SOURCE, failedItem.getIndex() == null ? BulkMeter.UNKNOWN_INDEX : failedItem.getIndex(), errorType, 1);
+    }
+
+    /**
+     * 请求路径中的默认索引,/_bulk时为null
+     */
+    private static String defaultIndex(String endpoint) {
+        return endpoint.equals("/_bulk") ? null : endpoint.substring(1, endpoint.length() - "/_bulk".length());
+    }
+
+    private static long retryBytes(List<Action> retries) {
+        long bytes = 0;
+        for (Action action : retries) {
+            bytes += action.bytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * 是否是delete动作行(没有文档行)
+     */
+    private static boolean isDelete(ByteBuffer line) {
+        int i = line.position();
+        int limit = line.limit();
+        while (i < limit && Character.isWhitespace(line.get(i))) {
+            i++;
+        }
+        if (i >= limit || line.get(i) != '{') {
+            return false;
+        }
+        i++;
+        while (i < limit && Character.isWhitespace(line.get(i))) {
+            i++;
+        }
+        if (limit - i < DELETE.length) {
+            return false;
+        }
+        for (int j = 0; j < DELETE.length; j++) {
+            if (line.get(i + j) != DELETE[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 一个写动作:动作行+文档行(delete没有文档行),都是文件中的字节切片
+     */
+    private static final class Action {
+
+        private final ByteBuffer[] parts;
+
+        private Action(ByteBuffer action, ByteBuffer source) {
+            List<ByteBuffer> list = new ArrayList<>(4);
+            addLine(list, action);
+            if (source != null) {
+                addLine(list, source);
+            }
+            this.parts = list.toArray(new ByteBuffer[0]);
+        }
+
+        private static void addLine(List<ByteBuffer> list, ByteBuffer line) {
+            list.add(line);
+            if (line.get(line.limit() - 1) != '\n') {
+                list.add(NEW_LINE.duplicate());
+            }
+        }
+
+        private long bytes() {
+            long bytes = 0;
+            for (ByteBuffer part : parts) {
+                bytes += part.remaining();
+            }
+            return bytes;
+        }
+
+        private byte[] toBytes() {
+            byte[] bytes = new byte[(int) bytes()];
+            int offset = 0;
+            for (ByteBuffer part : parts) {
+                ByteBuffer duplicate = part.duplicate();
+                int n = duplicate.remaining();
+                duplicate.get(bytes, offset, n);
+                offset += n;
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * 一个bulk请求包含的动作
+     */
+    private static final class Chunk {
+
+        private final List<Action> actions = new ArrayList<>();
+
+        /**
+         * 已发送的次数
+         */
+        private final int attempts;
+
+        private long bytes;
+
+        private Chunk(int attempts) {
+            this.attempts = attempts;
+        }
+
+        private void add(Action action) {
+            actions.add(action);
+            bytes += action.bytes();
+        }
+
+        private List<ByteBuffer> slices() {
+            List<ByteBuffer> slices = new ArrayList<>(actions.size() * 2);
+            for (Action action : actions) {
+                for (ByteBuffer part : action.parts) {
+                    slices.add(part.duplicate());
+                }
+            }
+            return slices;
+        }
+    }
+
+    /**
+     * 按行读取内存映射文件,返回每行(含换行符)的字节切片,跳过空行;超过2G的文件分段映射
+     */
+    private static final class LineScanner implements Closeable {
+
+        private final Path file;
+
+        private final FileChannel channel;
+
+        private final long size;
+
+        private long regionStart;
+
+        private MappedByteBuffer region;
+
+        private int position;
+
+        private LineScanner(Path file) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.size = channel.size();
+            map(0);
+        }
+
+        private void map(long start) throws IOException {
+            regionStart = start;
+            region = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAX_REGION, size - start));
+            position = 0;
+        }
+
+        private ByteBuffer next() throws IOException {
+            while (regionStart + position < size) {
+                int limit = region.limit();
+                int end = position;
+                while (end < limit && region.get(end) != '\n') {
+                    end++;
+                }
+                if (end == limit && regionStart + limit < size) {
+                    if (position == 0) {
+                        throw new IOException("文件中有超过" + MAX_REGION + "字节的行：" + file);
+                    }
+                    map(regionStart + position);
+                    continue;
+                }
+                int lineEnd = Math.min(end + 1, limit);
+                ByteBuffer line = region.duplicate();
+                line.limit(lineEnd);
+                line.position(position);
+                position = lineEnd;
+                if (!isBlank(line)) {
+                    return line.slice();
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 已读取到的文件位置
+         */
+        private long offset() {
+            return regionStart + position;
+        }
+
+        private static boolean isBlank(ByteBuffer line) {
+            for (int i = line.position(); i < line.limit(); i++) {
+                if (!Character.isWhitespace(line.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * 导入进度和结果
+     */
+    private final class Progress {
+
+        private final long totalBytes;
+
+        private final Semaphore permits;
+
+        private final long startNanos = System.nanoTime();
+
+        /**
+         * 已读取的文件字节数
+         */
+        private final AtomicLong scannedBytes = new AtomicLong();
+
+        /**
+         * 已写入完成的请求体字节数
+         */
+        private final AtomicLong doneBytes = new AtomicLong();
+
+        private final AtomicLong success = new AtomicLong();
+
+        private final AtomicLong failure = new AtomicLong();
+
+        private final List<BulkResult.FailedItem> failedItems = new ArrayList<>();
+
+        private Progress(long totalBytes, Semaphore permits) {
+            this.totalBytes = totalBytes;
+            this.permits = permits;
+        }
+
+        private void fail(BulkResult.FailedItem failedItem) {
+            failure.incrementAndGet();
+            synchronized (failedItems) {
+                if (failedItems.size() < MAX_FAILED_ITEMS) {
+                    failedItems.add(failedItem);
+                }
+            }
+        }
+
+        private void log() {
+            double seconds = Math.max(1e-3, (System.nanoTime() - startNanos) / 1e9);
+            long scanned = scannedBytes.get();
+            long docs = success.get() + failure.get();
+            log.info("导入进度：已读取{}/{}MB({}%),成功{},失败{},{}条/s,{}MB/s,在途bulk{}",
+                    scanned / MB, totalBytes / MB, totalBytes == 0 ? 100 : scanned * 100 / totalBytes, success.get(), failure.get(),
+                    (long) (docs / seconds), String.format("%.1f", doneBytes.get() / seconds / MB), concurrentRequests - permits.availablePermits());
+        }
+
+        private BulkResult toResult() {
+            BulkResult result = new BulkResult();
+            result.setSuccessCount((int) success.get());
+            result.setFailureCount((int) failure.get());
+            result.setTotal(result.getSuccessCount() + result.getFailureCount());
+            synchronized (failedItems) {
+                result.getFailedItems().addAll(failedItems);
+            }
+            return result;
+        }
+    }
+
+}
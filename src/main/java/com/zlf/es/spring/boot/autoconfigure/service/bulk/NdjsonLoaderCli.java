@@ -0,0 +1,81 @@
+package com.zlf.es.spring.boot.autoconfigure.service.bulk;
+
+import com.zlf.es.spring.boot.autoconfigure.metrics.EsMetrics;
+import com.zlf.es.spring.boot.autoconfigure.service.vo.BulkResult;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestClientBuilder;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * NdjsonBulkLoader的命令行入口,不依赖spring容器:
+ * java -cp es-spring-boot-start.jar:依赖 com.zlf.es.spring.boot.autoconfigure.service.bulk.NdjsonLoaderCli
+ * --address=127.0.0.1:9200 [--schema=http] [--username=x --password=x] [--index=目标索引] [--concurrency=4]
+ * [--sizeMb=10] [--actions=5000] [--maxRetries=3] [--progressInterval=10000] 文件1 文件2 ...
+ * 指定--index时每行一个文档,否则文件为_bulk接口格式;有失败的文档时退出码为1
+ */
+public class NdjsonLoaderCli {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                options.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "true" : arg.substring(eq + 1));
+            } else {
+                files.add(Paths.get(arg));
+            }
+        }
+        if (!options.containsKey("address") || files.isEmpty()) {
+            System.err.println("用法: NdjsonLoaderCli --address=host:port[,host:port] [--schema=http] [--username=x --password=x] "
+                    + "[--index=目标索引] [--concurrency=4] [--sizeMb=10] [--actions=5000] [--maxRetries=3] "
+                    + "[--progressInterval=10000] 文件...");
+            System.exit(2);
+        }
+        String schema = options.getOrDefault("schema", "http");
+        List<HttpHost> hosts = new ArrayList<>();
+        for (String address : options.get("address").split(",")) {
+            String[] hostAndPort = address.trim().split(":");
+            hosts.add(new HttpHost(hostAndPort[0], Integer.parseInt(hostAndPort[1]), schema));
+        }
+        RestClientBuilder builder = RestClient.builder(hosts.toArray(new HttpHost[0]));
+        if (options.containsKey("username")) {
+            BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+            credentialsProvider.setCredentials(AuthScope.ANY,
+                    new UsernamePasswordCredentials(options.get("username"), options.get("password")));
+            builder.setHttpClientConfigCallback(httpClientBuilder -> httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider));
+        }
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "4"));
+        long sizeMb = Long.parseLong(options.getOrDefault("sizeMb", "10"));
+        int actions = Integer.parseInt(options.getOrDefault("actions", "5000"));
+        int maxRetries = Integer.parseInt(options.getOrDefault("maxRetries", "3"));
+        long progressInterval = Long.parseLong(options.getOrDefault("progressInterval", "10000"));
+        BulkResult result;
+        try (RestClient restClient = builder.build()) {
+            NdjsonBulkLoader loader = new NdjsonBulkLoader(restClient, RequestOptions.DEFAULT,
+                    new BulkRetryPolicy(maxRetries, 100, 10000), new LoggingDeadLetterHandler(), EsMetrics.NOOP,
+                    concurrency, sizeMb * 1024L * 1024L, actions, progressInterval);
+            long start = System.currentTimeMillis();
+            String index = options.get("index");
+            result = index == null ? loader.loadBulk(files) : loader.loadDocuments(index, files);
+            System.out.printf("导入完成：总数%d,成功%d,失败%d,耗时%dms%n", result.getTotal(), result.getSuccessCount(),
+                    result.getFailureCount(), System.currentTimeMillis() - start);
+        }
+        System.exit(result.getFailureCount() > 0 ? 1 : 0);
+    }
+
+}
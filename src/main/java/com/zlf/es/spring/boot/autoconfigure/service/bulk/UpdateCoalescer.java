@@ -0,0 +1,396 @@
+package com.zlf.es.spring.boot.autoconfigure.service.bulk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.zlf.es.spring.boot.autoconfigure.metrics.BulkMeter;
+import com.zlf.es.spring.boot.autoconfigure.metrics.EsMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 热点文档部分更新的写合并器
+ * 1.一个时间窗口内对同一个(索引,文档id)的多次部分更新在内存中合并成一次:json对象逐层合并,同名字段后写的覆盖先写的(与es合并部分文档的规则一致)
+ * 2.每个窗口结束时把合并后的更新作为一个bulk发送,每次调用仍得到自己的future
+ * 3.按(索引,文档id)合并,窗口内有任何一次upsert时合并后的更新按upsert发送;窗口内待合并的文档数达到上限时提前发送
+ * 4.同一个文档同时最多只有一个bulk在途,上一个窗口的bulk返回前新的更新留在下一个窗口,保证按调用顺序生效
+ * 5.update调用在文档被修改或被同窗口的upsert创建时为TRUE,文档不存在或没有变化(noop)时为FALSE;upsert调用成功即为TRUE
+ */
+@Slf4j
+public class UpdateCoalescer implements Closeable {
+
+    /**
+     * 指标中的写入来源
+     */
+    private static final String SOURCE = "coalescer";
+
+    private final RestHighLevelClient esClient;
+
+    private final RequestOptions options;
+
+    private final ObjectMapper objectMapper;
+
+    private final EsMetrics metrics;
+
+    private final int maxPendingKeys;
+
+    private final ScheduledExecutorService flusher;
+
+    private final Object lock = new Object();
+
+    /**
+     * 当前窗口内待发送的合并结果,按第一次写入的顺序发送
+     */
+    private LinkedHashMap<Key, Pending> pending = new LinkedHashMap<>();
+
+    /**
+     * 已发送bulk还没有返回的文档
+     */
+    private final Set<Key> inFlight = new HashSet<>();
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param esClient       es客户端
+     * @param options        请求的RequestOptions
+     * @param objectMapper   用于解析和合并部分文档
+     * @param metrics        批量写入指标
+     * @param windowMillis   合并窗口
+     * @param maxPendingKeys 窗口内最多合并的文档数,达到后提前发送
+     */
+    public UpdateCoalescer(RestHighLevelClient esClient, RequestOptions options, ObjectMapper objectMapper,
+                           EsMetrics metrics, long windowMillis, int maxPendingKeys) {
+        this.esClient = Objects.requireNonNull(esClient, "esClient");
+        this.options = Objects.requireNonNull(options, "options");
+        this.objectMapper = Objects.requireNonNull(objectMapper, "objectMapper");
+        this.metrics = Objects.requireNonNull(metrics, "metrics");
+        this.maxPendingKeys = Math.max(1, maxPendingKeys);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("es-update-coalescer").setDaemon(true).build());
+        long window = Math.max(1, windowMillis);
+        this.flusher.scheduleWithFixedDelay(this::flush, window, window, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 部分更新一个文档
+     *
+     * @param indexName
+     * @param id
+     * @param upJson    json对象
+     * @return 文档被修改为TRUE,文档不存在或没有变化为FALSE,其余失败异常完成
+     */
+    public CompletableFuture<Boolean> update(String indexName, String id, String upJson) {
+        return submit(new Key(indexName, id), upJson, false);
+    }
+
+    /**
+     * 部分更新一个文档,文档不存在时新增
+     *
+     * @param indexName
+     * @param id
+     * @param upserJson json对象
+     * @return 成功为TRUE,失败异常完成
+     */
+    public CompletableFuture<Boolean> upsert(String indexName, String id, String upserJson) {
+        return submit(new Key(indexName, id), upserJson, true);
+    }
+
+    /**
+     * 立即发送当前窗口内合并好的更新,上一个bulk还没有返回的文档留到下一个窗口
+     */
+    public void flush() {
+        LinkedHashMap<Key, Pending> batch = new LinkedHashMap<>();
+        synchronized (lock) {
+            Iterator<Map.Entry<Key, Pending>> iterator = pending.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Key, Pending> entry = iterator.next();
+                if (inFlight.add(entry.getKey())) {
+                    batch.put(entry.getKey(), entry.getValue());
+                    iterator.remove();
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+        }
+        BulkRequest bulkRequest = new BulkRequest();
+        List<Key> keys = new ArrayList<>(batch.size());
+        List<Pending> items = new ArrayList<>(batch.size());
+        BulkMeter meter = new BulkMeter(metrics, SOURCE);
+        int calls = 0;
+        for (Map.Entry<Key, Pending> entry : batch.entrySet()) {
+            Key key = entry.getKey();
+            Pending item = entry.getValue();
+            calls += item.futures.size();
+            try {
+                UpdateRequest request = new UpdateRequest(key.index, key.id);
+                request.doc(objectMapper.writeValueAsBytes(item.doc), XContentType.JSON);
+                request.docAsUpsert(item.upsert);
+                bulkRequest.add(request);
+                meter.add(request);
+                keys.add(key);
+                items.add(item);
+            } catch (IOException e) {
+                release(Collections.singletonList(key));
+                item.fail(e);
+            }
+        }
+        if (items.isEmpty()) {
+            return;
+        }
+        log.debug("写合并:{}次更新合并为{}个文档", calls, items.size());
+        ActionListener<BulkResponse> listener = new ActionListener<BulkResponse>() {
+            @Override
+            public void onResponse(BulkResponse response) {
+                release(keys);
+                meter.record(response.getTook().getMillis());
+                BulkItemResponse[] responses = response.getItems();
+                for (int i = 0; i < responses.length; i++) {
+                    BulkItemResponse itemResponse = responses[i];
+                    Pending item = items.get(i);
+                    if (!itemResponse.isFailed()) {
+                        item.complete(itemResponse.getResponse().getResult());
+                        continue;
+                    }
+                    metrics.recordFailure(SOURCE, itemResponse.getIndex(), BulkMeter.errorType(itemResponse.getFailure().getCause()), 1);
+                    if (itemResponse.getFailure().getStatus() == RestStatus.NOT_FOUND) {
+                        log.error("更新文档没有找到：indexName：{}，id:{}", itemResponse.getIndex(), itemResponse.getId());
+                        item.complete(DocWriteResponse.Result.NOT_FOUND);
+                    } else {
+                        item.fail(new ElasticsearchStatusException(itemResponse.getFailureMessage(),
+                                itemResponse.getFailure().getStatus()));
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                release(keys);
+                log.error("写合并bulk发送失败：{}个文档", items.size(), e);
+                meter.recordFailure(e);
+                for (Pending item : items) {
+                    item.fail(e);
+                }
+            }
+        };
+        try {
+            esClient.bulkAsync(bulkRequest, options, listener);
+        } catch (RuntimeException e) {
+            listener.onFailure(e);
+        }
+    }
+
+    /**
+     * bulk返回后允许这些文档的下一次发送
+     */
+    private void release(List<Key> keys) {
+        synchronized (lock) {
+            inFlight.removeAll(keys);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * 停止合并,发送剩余的更新;最多等待5秒,仍没有发出的更新异常完成
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        flusher.shutdown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+            while (true) {
+                flush();
+                synchronized (lock) {
+                    long remaining = deadline - System.nanoTime();
+                    if (pending.isEmpty() || remaining <= 0) {
+                        break;
+                    }
+                    lock.wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Pending> unsent;
+        synchronized (lock) {
+            unsent = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        for (Pending item : unsent) {
+            item.fail(new IllegalStateException("写合并器已关闭,更新没有发送"));
+        }
+    }
+
+    private CompletableFuture<Boolean> submit(Key key, String json, boolean upsert) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        ObjectNode doc;
+        try {
+            JsonNode node = objectMapper.readTree(json);
+            if (!(node instanceof ObjectNode)) {
+                throw new IllegalArgumentException("部分更新的文档必须是json对象：" + json);
+            }
+            doc = (ObjectNode) node;
+        } catch (IOException | IllegalArgumentException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        boolean full;
+        synchronized (lock) {
+            if (closed) {
+                future.completeExceptionally(new IllegalStateException("写合并器已关闭"));
+                return future;
+            }
+            Pending item = pending.get(key);
+            if (item == null) {
+                pending.put(key, new Pending(doc, future, upsert));
+            } else {
+                merge(item.doc, doc);
+                item.add(future, upsert);
+            }
+            full = pending.size() >= maxPendingKeys;
+        }
+        if (full) {
+            try {
+                flusher.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                flush();
+            }
+        }
+        return future;
+    }
+
+    /**
+     * 把source逐层合并到target,同名字段都是对象时递归合并,否则source覆盖target
+     *
+     * @param target
+     * @param source
+     */
+    static void merge(ObjectNode target, ObjectNode source) {
+        Iterator<Map.Entry<String, JsonNode>> fields = source.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode existing = target.get(field.getKey());
+            if (existing instanceof ObjectNode && field.getValue() instanceof ObjectNode) {
+                merge((ObjectNode) existing, (ObjectNode) field.getValue());
+            } else {
+                target.set(field.getKey(), field.getValue());
+            }
+        }
+    }
+
+    /**
+     * 合并的维度:索引+文档id
+     */
+    private static final class Key {
+
+        private final String index;
+
+        private final String id;
+
+        private Key(String index, String id) {
+            this.index = Objects.requireNonNull(index, "indexName");
+            this.id = Objects.requireNonNull(id, "id");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return index.equals(key.index) && id.equals(key.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(index, id);
+        }
+    }
+
+    /**
+     * 一个文档合并后的部分更新及等待结果的调用方
+     */
+    private static final class Pending {
+
+        private final ObjectNode doc;
+
+        private final List<CompletableFuture<Boolean>> futures = new ArrayList<>(1);
+
+        /**
+         * 每个调用是否是upsert
+         */
+        private final List<Boolean> upserts = new ArrayList<>(1);
+
+        /**
+         * 有任何一次upsert时按upsert发送
+         */
+        private boolean upsert;
+
+        private Pending(ObjectNode doc, CompletableFuture<Boolean> future, boolean upsert) {
+            this.doc = doc;
+            add(future, upsert);
+        }
+
+        private void add(CompletableFuture<Boolean> future, boolean upsert) {
+            futures.add(future);
+            upserts.add(upsert);
+            this.upsert |= upsert;
+        }
+
+        private void complete(DocWriteResponse.Result result) {
+            boolean applied = result == DocWriteResponse.Result.UPDATED || result == DocWriteResponse.Result.CREATED;
+            for (int i = 0; i < futures.size(); i++) {
+                boolean success = upserts.get(i) ? result != DocWriteResponse.Result.NOT_FOUND : applied;
+                futures.get(i).complete(success);
+            }
+        }
+
+        private void fail(Exception e) {
+            for (CompletableFuture<Boolean> future : futures) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+}
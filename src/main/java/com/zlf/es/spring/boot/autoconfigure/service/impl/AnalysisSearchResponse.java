@@ -3,10 +3,11 @@ package com.zlf.es.spring.boot.autoconfigure.service.impl;
 import cn.hutool.core.collection.CollectionUtil;
 import com.alibaba.fastjson.JSON;
 import com.google.common.math.Stats;
-import com.zlf.es.spring.boot.autoconfigure.config.FastJsonConfig;
 import com.zlf.es.spring.boot.autoconfigure.service.utils.JsonUtils;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.aggregations.Aggregations;
@@ -14,6 +15,7 @@ import org.elasticsearch.search.aggregations.bucket.terms.ParsedTerms;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.elasticsearch.search.fetch.subphase.highlight.HighlightField;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -81,15 +83,9 @@ public class AnalysisSearchResponse<T> {
         if (h.length == 0) {
             return null;
         }
+        boolean fastJson = Boolean.TRUE.equals(usFastJson);
         for (SearchHit hit : h) {
-            T t;
-            if (usFastJson) {
-                FastJsonConfig fs = new FastJsonConfig();
-                t = (T) JSON.parseObject(hit.getSourceAsString(), clazz);
-            } else {
-                t = (T) JsonUtils.getObjectByJson(hit.getSourceAsString(), clazz);
-            }
-            result.add(t);
+            result.add((T) decodeSource(hit, clazz, fastJson));
             //sb.append(hit.getSourceAsString());
         }
         //String s = sb.toString();
@@ -105,6 +101,40 @@ public class AnalysisSearchResponse<T> {
         return result;
     }
 
+    /**
+     * 把命中的_source直接从字节反序列化为clazz,不经过String,没有_source时返回null
+     * 1.jackson使用按类型缓存的ObjectReader
+     * 2.fastJson直接解析utf-8字节
+     *
+     * @param hit
+     * @param clazz
+     * @param usFastJson
+     * @return
+     */
+    public static <D> D decodeSource(SearchHit hit, Class<D> clazz, boolean usFastJson) {
+        return decodeSource(hit.getSourceRef(), clazz, usFastJson);
+    }
+
+    /**
+     * 把文档的_source(如GetResponse.getSourceInternal())直接从字节反序列化为clazz,source为null时返回null
+     *
+     * @param source
+     * @param clazz
+     * @param usFastJson
+     * @return
+     */
+    public static <D> D decodeSource(BytesReference source, Class<D> clazz, boolean usFastJson) {
+        if (source == null) {
+            return null;
+        }
+        // BytesArray不会复制,只有分段的BytesReference才会合并成一个数组
+        BytesRef bytes = source.toBytesRef();
+        if (usFastJson) {
+            return JSON.parseObject(bytes.bytes, bytes.offset, bytes.length, StandardCharsets.UTF_8, clazz);
+        }
+        return JsonUtils.getObjectByJson(bytes.bytes, bytes.offset, bytes.length, clazz);
+    }
+
     /**
      * 解析查询结果4
      * 返回后根据设置的高亮字段取值设置到返回实体的字段中即可
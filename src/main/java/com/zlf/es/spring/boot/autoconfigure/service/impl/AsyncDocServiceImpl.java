@@ -0,0 +1,334 @@
+package com.zlf.es.spring.boot.autoconfigure.service.impl;
+
+import com.zlf.es.spring.boot.autoconfigure.client.EsClusterRouter;
+import com.zlf.es.spring.boot.autoconfigure.service.AsyncDocService;
+import com.zlf.es.spring.boot.autoconfigure.service.bulk.EsBulkIngester;
+import com.zlf.es.spring.boot.autoconfigure.service.bulk.UpdateCoalescer;
+import com.zlf.es.spring.boot.autoconfigure.service.search.DocNearCache;
+import com.zlf.es.spring.boot.autoconfigure.service.search.MultiSearchBatcher;
+import com.zlf.es.spring.boot.autoconfigure.service.search.QueryResultCache;
+import com.zlf.es.spring.boot.autoconfigure.service.vo.BulkResult;
+import com.zlf.es.spring.boot.autoconfigure.service.vo.EsPageResult;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.CollectionUtils;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.replication.ReplicatedWriteRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.core.CountRequest;
+import org.elasticsearch.client.core.CountResponse;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.reindex.BulkByScrollResponse;
+import org.elasticsearch.index.reindex.DeleteByQueryRequest;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ */
+@Service
+@Slf4j
+public class AsyncDocServiceImpl implements AsyncDocService {
+
+    /**
+     * 多集群读写路由,读请求走读集群(不可用时改发写集群),写请求走写集群
+     */
+    @Autowired
+    private EsClusterRouter esClusterRouter;
+
+    /**
+     * 所有请求共用的RequestOptions
+     */
+    @Autowired
+    private RequestOptions esRequestOptions;
+
+    @Qualifier("esAsyncExecutor")
+    @Autowired
+    private Executor esAsyncExecutor;
+
+    @Autowired
+    private EsBulkIngester esBulkIngester;
+
+    /**
+     * 写合并器,未开启时为null
+     */
+    @Autowired(required = false)
+    private UpdateCoalescer updateCoalescer;
+
+    /**
+     * msearch合并器,未开启时为null
+     */
+    @Autowired(required = false)
+    private MultiSearchBatcher multiSearchBatcher;
+
+    /**
+     * 查询结果缓存,未开启时为null;异步接口的查询不走缓存,写入同样使缓存失效
+     */
+    @Autowired(required = false)
+    private QueryResultCache queryResultCache;
+
+    /**
+     * 热点文档近端缓存,未开启时为null;异步接口的读取不走缓存,写入同样使缓存失效
+     */
+    @Autowired(required = false)
+    private DocNearCache docNearCache;
+
+    /**
+     * 分页查询统计总数的上限(track_total_hits),超过时总数只是下限;小于0表示精确统计
+     */
+    @Value("${elasticsearch.search.trackTotalHitsUpTo:10000}")
+    private int trackTotalHitsUpTo;
+
+    @Override
+    public CompletableFuture<Boolean> existsDoc(String indexName, String id) {
+        GetRequest getRequest = new GetRequest(indexName, id);
+        getRequest.fetchSourceContext(new FetchSourceContext(false));
+        getRequest.storedFields("_none_");
+        CompletableActionListener<Boolean, Boolean> listener = listener(Function.identity());
+        esClusterRouter.readAsync((client, l) -> client.existsAsync(getRequest, esRequestOptions, l), listener);
+        return listener.future();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteDoc(String indexName, String id) {
+        DeleteRequest request = new DeleteRequest(indexName, id);
+        CompletableActionListener<DeleteResponse, Boolean> listener = listener(response -> {
+            if (response.getResult() == DocWriteResponse.Result.NOT_FOUND) {
+                log.error("删除文档没有找到：indexName：{}，id:{}", indexName, id);
+            }
+            return response.getResult() == DocWriteResponse.Result.DELETED;
+        });
+        esClusterRouter.writeClient().deleteAsync(request, esRequestOptions, listener);
+        return invalidateCache(indexName, id, listener.future());
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateDoc(String indexName, String id, String upJson) {
+        if (updateCoalescer != null) {
+            return CompletableActionListener.completeOn(invalidateCache(indexName, id, updateCoalescer.update(indexName, id, upJson)), esAsyncExecutor);
+        }
+        UpdateRequest request = new UpdateRequest(indexName, id);
+        request.doc(upJson, XContentType.JSON);
+        return update(request, response -> response.getResult() == DocWriteResponse.Result.UPDATED);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> upsertDoc(String indexName, String id, String upserJson) {
+        UpdateRequest request = new UpdateRequest(indexName, id);
+        request.doc(upserJson, XContentType.JSON);
+        request.docAsUpsert(true);
+        if (esBulkIngester.isSpooling()) {
+            return invalidateCache(indexName, id, CompletableFuture.completedFuture(esBulkIngester.spool(request)));
+        }
+        if (updateCoalescer != null) {
+            return spoolWhenUnavailable(CompletableActionListener.completeOn(
+                    invalidateCache(indexName, id, updateCoalescer.upsert(indexName, id, upserJson)), esAsyncExecutor), request);
+        }
+        return spoolWhenUnavailable(update(request, response -> Boolean.TRUE), request);
+    }
+
+    /**
+     * 与DocService一致:集群不可用时写入本地spool,写入成功即为true,其余异常原样抛出
+     */
+    private CompletableFuture<Boolean> spoolWhenUnavailable(CompletableFuture<Boolean> future, UpdateRequest request) {
+        return future.exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (DocServiceImpl.isSpoolable(cause) && esBulkIngester.spool(request)) {
+                log.warn("更新文档时集群不可用,已写入本地spool：indexName：{}，id:{}", request.index(), request.id());
+                return Boolean.TRUE;
+            }
+            throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(cause);
+        });
+    }
+
+    /**
+     * 与DocService一致:update只有文档被修改(UPDATED)时为true,upsert成功即为true
+     */
+    private CompletableFuture<Boolean> update(UpdateRequest request, Function<UpdateResponse, Boolean> mapper) {
+        CompletableActionListener<UpdateResponse, Boolean> listener = listener(mapper);
+        esClusterRouter.writeClient().updateAsync(request, esRequestOptions, listener);
+        return invalidateCache(request.index(), request.id(), listener.future()).exceptionally(CompletableActionListener.whenNotFound(Boolean.FALSE));
+    }
+
+    @Override
+    public CompletableFuture<BulkResult> batchDoc(List<ReplicatedWriteRequest> requestList) {
+        if (CollectionUtils.isEmpty(requestList)) {
+            return CompletableFuture.completedFuture(new BulkResult());
+        }
+        BulkResult unsupported = new BulkResult();
+        List<DocWriteRequest<?>> requests = DocServiceImpl.docWriteRequests(requestList, unsupported);
+        if (requests.isEmpty()) {
+            return CompletableFuture.completedFuture(unsupported);
+        }
+        CompletableFuture<BulkResult> future = esBulkIngester.submit(requests).thenApply(result -> {
+            result.add(unsupported);
+            return result;
+        });
+        if (queryResultCache != null || docNearCache != null) {
+            future = future.whenComplete((result, e) -> requests.forEach(request -> esClusterRouter.markWritten(request.index())));
+        }
+        if (queryResultCache != null) {
+            future = future.whenComplete((result, e) -> queryResultCache.invalidate(requests.stream().map(DocWriteRequest::index)
+                    .filter(Objects::nonNull).collect(Collectors.toSet())));
+        }
+        if (docNearCache != null) {
+            future = future.whenComplete((result, e) -> requests.forEach(request -> docNearCache.invalidate(request.index(), request.id())));
+        }
+        return CompletableActionListener.completeOn(future, esAsyncExecutor);
+    }
+
+    @Override
+    public CompletableFuture<Long> count(String indexName, SearchSourceBuilder searchSourceBuilder) {
+        CountRequest countRequest = new CountRequest(indexName);
+        if (searchSourceBuilder.query() != null) {
+            countRequest.query(searchSourceBuilder.query());
+        }
+        CompletableActionListener<CountResponse, Long> listener = listener(CountResponse::getCount);
+        esClusterRouter.readAsync((client, l) -> client.countAsync(countRequest, esRequestOptions, l), listener);
+        return listener.future();
+    }
+
+    @Override
+    public CompletableFuture<SearchResponse> searchList(String indexName, SearchSourceBuilder searchSourceBuilder) {
+        SearchRequest searchRequest = new SearchRequest(indexName);
+        searchRequest.source(searchSourceBuilder);
+        if (multiSearchBatcher != null && !esClusterRouter.isReadDown()) {
+            return CompletableActionListener.completeOn(multiSearchBatcher.search(searchRequest), esAsyncExecutor);
+        }
+        CompletableActionListener<SearchResponse, SearchResponse> listener = listener(Function.identity());
+        esClusterRouter.readAsync((client, l) -> client.searchAsync(searchRequest, esRequestOptions, l), listener);
+        return listener.future();
+    }
+
+    @Override
+    public <T> CompletableFuture<EsPageResult<T>> searchPageList(String indexName, SearchSourceBuilder searchSourceBuilder, Class<T> clazz, Boolean usFastJson) {
+        SearchSourceBuilder source = SearchTotals.trackTotalHits(searchSourceBuilder, trackTotalHitsUpTo);
+        return this.searchList(indexName, source).thenApply(searchResponse -> SearchTotals.toPageResult(searchResponse,
+                new AnalysisSearchResponse<T>().getSourceAsList(searchResponse, clazz, usFastJson), source));
+    }
+
+    @Override
+    public CompletableFuture<GetResponse> getDoc(String indexName, String id) {
+        GetRequest request = new GetRequest(indexName, id);
+        return getDocument(request);
+    }
+
+    @Override
+    public CompletableFuture<GetResponse> getDoc(String indexName, String[] fieldName, String id) {
+        GetRequest request = new GetRequest(indexName, id);
+        request.storedFields(fieldName);
+        return getDocument(request);
+    }
+
+    @Override
+    public CompletableFuture<GetResponse> getDoc(String indexName, String id, String[] includeField, String[] excludeField) {
+        GetRequest request = new GetRequest(indexName, id);
+        FetchSourceContext fetchSourceContext = new FetchSourceContext(true, includeField, excludeField);
+        request.fetchSourceContext(fetchSourceContext);
+        return getDocument(request);
+    }
+
+    private CompletableFuture<GetResponse> getDocument(GetRequest request) {
+        CompletableActionListener<GetResponse, GetResponse> listener = listener(response -> response.isExists() ? response : null);
+        esClusterRouter.readAsync((client, l) -> client.getAsync(request, esRequestOptions, l), listener);
+        return listener.future().exceptionally(CompletableActionListener.whenNotFound(null));
+    }
+
+    @Override
+    public CompletableFuture<MultiGetResponse> getMultiDoc(String indexName, List<String> ids) {
+        MultiGetRequest request = new MultiGetRequest();
+        for (String id : ids) {
+            request.add(new MultiGetRequest.Item(indexName, id));
+        }
+        return multiGet(request);
+    }
+
+    @Override
+    public CompletableFuture<MultiGetResponse> getMultiDoc(String indexName, String[] fieldName, List<String> ids) {
+        MultiGetRequest request = new MultiGetRequest();
+        for (String id : ids) {
+            request.add(new MultiGetRequest.Item(indexName, id).storedFields(fieldName));
+        }
+        return multiGet(request);
+    }
+
+    @Override
+    public CompletableFuture<MultiGetResponse> getMultiDoc(String indexName, String[] includeField, String[] excludeField, List<String> ids) {
+        MultiGetRequest request = new MultiGetRequest();
+        FetchSourceContext fetchSourceContext = new FetchSourceContext(true, includeField, excludeField);
+        for (String id : ids) {
+            request.add(new MultiGetRequest.Item(indexName, id).fetchSourceContext(fetchSourceContext));
+        }
+        return multiGet(request);
+    }
+
+    private CompletableFuture<MultiGetResponse> multiGet(MultiGetRequest request) {
+        CompletableActionListener<MultiGetResponse, MultiGetResponse> listener = listener(Function.identity());
+        esClusterRouter.readAsync((client, l) -> client.mgetAsync(request, esRequestOptions, l), listener);
+        return listener.future();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteByQueryDoc(String indexName, QueryBuilder query) {
+        DeleteByQueryRequest request = new DeleteByQueryRequest(indexName).setQuery(query);
+        CompletableActionListener<BulkByScrollResponse, Boolean> listener = listener(response -> {
+            log.info("========deleteByQueryDoc().deleted:{},took:{}==========", response.getDeleted(), response.getTook());
+            return Boolean.TRUE;
+        });
+        esClusterRouter.writeClient().deleteByQueryAsync(request, esRequestOptions, listener);
+        return invalidateCache(indexName, null, listener.future());
+    }
+
+    /**
+     * 写入完成后使索引的查询结果缓存和文档的近端缓存失效
+     *
+     * @param indexName
+     * @param id        为null时整个索引的近端缓存失效
+     * @param future    写入的结果
+     * @return
+     */
+    private <V> CompletableFuture<V> invalidateCache(String indexName, String id, CompletableFuture<V> future) {
+        if (queryResultCache == null && docNearCache == null) {
+            return future;
+        }
+        return future.whenComplete((value, e) -> {
+            esClusterRouter.markWritten(indexName);
+            if (queryResultCache != null) {
+                queryResultCache.invalidate(indexName);
+            }
+            if (docNearCache != null) {
+                docNearCache.invalidate(indexName, id);
+            }
+        });
+    }
+
+    private <R, V> CompletableActionListener<R, V> listener(Function<R, V> mapper) {
+        return new CompletableActionListener<>(esAsyncExecutor, mapper);
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.zlf.es.spring.boot.autoconfigure.service.impl;
+
+import com.zlf.es.spring.boot.autoconfigure.client.EsClusterRouter;
+import com.zlf.es.spring.boot.autoconfigure.service.AsyncIndexService;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.support.master.AcknowledgedResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.CreateIndexResponse;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.reindex.BulkByScrollResponse;
+import org.elasticsearch.index.reindex.ReindexRequest;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ */
+@Service
+@Slf4j
+public class AsyncIndexServiceImpl implements AsyncIndexService {
+
+    /**
+     * 多集群读写路由,索引管理都走写集群
+     */
+    @Autowired
+    private EsClusterRouter esClusterRouter;
+
+    /**
+     * 所有请求共用的RequestOptions
+     */
+    @Autowired
+    private RequestOptions esRequestOptions;
+
+    @Qualifier("esAsyncExecutor")
+    @Autowired
+    private Executor esAsyncExecutor;
+
+    @Override
+    public CompletableFuture<Boolean> createIndex(String indexName, String settings, String mappings) {
+        CreateIndexRequest createIndexRequest = new CreateIndexRequest(indexName);
+        createIndexRequest.settings(settings, XContentType.JSON);
+        createIndexRequest.mapping(mappings, XContentType.JSON);
+        CompletableActionListener<CreateIndexResponse, Boolean> listener = listener(CreateIndexResponse::isAcknowledged);
+        esClusterRouter.writeClient().indices().createAsync(createIndexRequest, esRequestOptions, listener);
+        return listener.future();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteIndex(String indexName) {
+        DeleteIndexRequest request = new DeleteIndexRequest(indexName);
+        CompletableActionListener<AcknowledgedResponse, Boolean> listener = listener(AcknowledgedResponse::isAcknowledged);
+        esClusterRouter.writeClient().indices().deleteAsync(request, esRequestOptions, listener);
+        return listener.future().exceptionally(CompletableActionListener.whenNotFound(Boolean.FALSE));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> existsIndex(String indexName) {
+        GetIndexRequest request = new GetIndexRequest(indexName);
+        CompletableActionListener<Boolean, Boolean> listener = listener(Function.identity());
+        esClusterRouter.writeClient().indices().existsAsync(request, esRequestOptions, listener);
+        return listener.future();
+    }
+
+    @Override
+    public CompletableFuture<Long> reindex(String sourceIndexName, String targetIndexName, String sourceSettings, String sourceMappings, SearchSourceBuilder searchSourceBuilder) {
+        return this.existsIndex(targetIndexName).thenCompose(exists -> {
+            // 如果目标索引不存在，创建新的索引
+            if (exists) {
+                return CompletableFuture.completedFuture(Boolean.TRUE);
+            }
+            return this.createIndex(targetIndexName, sourceSettings, sourceMappings);
+        }).thenCompose(created -> {
+            ReindexRequest request = new ReindexRequest();
+            request.setSourceIndices(sourceIndexName);
+            request.setDestIndex(targetIndexName);
+            // 设置版本冲突时继续
+            request.setConflicts("proceed");
+            // 调用reindex后刷新索引
+            request.setRefresh(true);
+            if (Objects.nonNull(searchSourceBuilder)) {
+                request.getSearchRequest().source(searchSourceBuilder);
+            }
+            CompletableActionListener<BulkByScrollResponse, Long> listener = listener(response -> {
+                log.info("reindex success. {}", response.getTotal());
+                return response.getTotal();
+            });
+            esClusterRouter.writeClient().reindexAsync(request, esRequestOptions, listener);
+            return listener.future();
+        });
+    }
+
+    private <R, V> CompletableActionListener<R, V> listener(Function<R, V> mapper) {
+        return new CompletableActionListener<>(esAsyncExecutor, mapper);
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.zlf.es.spring.boot.autoconfigure.service.impl;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.rest.RestStatus;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 把RestHighLevelClient的*Async回调转换成CompletableFuture
+ * 回调由http客户端的io线程触发,结果转换和future的完成(以及调用方挂在future上的同步回调)切换到指定的线程池执行,
+ * 避免业务代码占用io线程;线程池拒绝时退化为在io线程上执行
+ */
+public class CompletableActionListener<R, T> implements ActionListener<R> {
+
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+
+    private final Executor executor;
+
+    private final Function<R, T> mapper;
+
+    /**
+     * @param executor 回调线程池
+     * @param mapper   把es的响应转换成返回值
+     */
+    public CompletableActionListener(Executor executor, Function<R, T> mapper) {
+        this.executor = executor;
+        this.mapper = mapper;
+    }
+
+    public CompletableFuture<T> future() {
+        return future;
+    }
+
+    @Override
+    public void onResponse(R response) {
+        execute(() -> {
+            try {
+                future.complete(mapper.apply(response));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+    }
+
+    @Override
+    public void onFailure(Exception e) {
+        execute(() -> future.completeExceptionally(e));
+    }
+
+    private void execute(Runnable task) {
+        execute(executor, task);
+    }
+
+    private static void execute(Executor executor, Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    /**
+     * 返回一个在指定线程池中完成的future,结果与source相同;线程池拒绝时退化为在完成source的线程上执行
+     *
+     * @param source
+     * @param executor 回调线程池
+     * @return
+     */
+    public static <T> CompletableFuture<T> completeOn(CompletableFuture<T> source, Executor executor) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        source.whenComplete((value, e) -> execute(executor, () -> {
+            if (e != null) {
+                future.completeExceptionally(e);
+            } else {
+                future.complete(value);
+            }
+        }));
+        return future;
+    }
+
+    /**
+     * es返回404时用给定的值完成future,其余异常原样抛出,配合CompletableFuture.exceptionally使用
+     *
+     * @param value 404时的返回值
+     * @return
+     */
+    public static <T> Function<Throwable, T> whenNotFound(T value) {
+        return e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof ElasticsearchException && ((ElasticsearchException) cause).status() == RestStatus.NOT_FOUND) {
+                return value;
+            }
+            throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(cause);
+        };
+    }
+
+}
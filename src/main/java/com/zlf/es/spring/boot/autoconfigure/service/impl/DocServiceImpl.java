@@ -1,53 +1,94 @@
 package com.zlf.es.spring.boot.autoconfigure.service.impl;
 
 import com.alibaba.fastjson.JSON;
-import com.zlf.es.spring.boot.autoconfigure.EsAutoConfigure;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.zlf.es.spring.boot.autoconfigure.client.EsCallGuard;
+import com.zlf.es.spring.boot.autoconfigure.client.EsClusterRouter;
+import com.zlf.es.spring.boot.autoconfigure.client.EsRejectedException;
 import com.zlf.es.spring.boot.autoconfigure.service.DocService;
+import com.zlf.es.spring.boot.autoconfigure.service.bulk.EsBulkIngester;
+import com.zlf.es.spring.boot.autoconfigure.service.bulk.UpdateCoalescer;
+import com.zlf.es.spring.boot.autoconfigure.service.scroll.CloseableIterator;
+import com.zlf.es.spring.boot.autoconfigure.service.scroll.ParallelScanner;
+import com.zlf.es.spring.boot.autoconfigure.service.search.DocNearCache;
+import com.zlf.es.spring.boot.autoconfigure.service.search.HedgedReader;
+import com.zlf.es.spring.boot.autoconfigure.service.search.MultiSearchBatcher;
+import com.zlf.es.spring.boot.autoconfigure.service.search.QueryResultCache;
+import com.zlf.es.spring.boot.autoconfigure.service.search.SingleFlight;
+import com.zlf.es.spring.boot.autoconfigure.service.scroll.ScrollIterator;
+import com.zlf.es.spring.boot.autoconfigure.service.vo.BulkResult;
 import com.zlf.es.spring.boot.autoconfigure.service.vo.EsPageResult;
+import com.zlf.es.spring.boot.autoconfigure.service.vo.ScanResult;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.DocWriteResponse;
-import org.elasticsearch.action.bulk.BulkProcessor;
-import org.elasticsearch.action.bulk.BulkRequest;
-import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.delete.DeleteResponse;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
 import org.elasticsearch.action.get.MultiGetRequest;
 import org.elasticsearch.action.get.MultiGetResponse;
 import org.elasticsearch.action.index.IndexRequest;
-import org.elasticsearch.action.search.ClearScrollRequest;
-import org.elasticsearch.action.search.ClearScrollResponse;
+import org.elasticsearch.action.search.ClosePointInTimeRequest;
+import org.elasticsearch.action.search.OpenPointInTimeRequest;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.action.search.SearchScrollRequest;
 import org.elasticsearch.action.support.replication.ReplicatedWriteRequest;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.action.update.UpdateResponse;
-import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.core.CountRequest;
 import org.elasticsearch.client.core.CountResponse;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.core.TimeValue;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.reindex.BulkByScrollResponse;
 import org.elasticsearch.index.reindex.DeleteByQueryRequest;
 import org.elasticsearch.rest.RestStatus;
-import org.elasticsearch.search.Scroll;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.PointInTimeBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * @author zlf
@@ -59,9 +100,126 @@ import java.util.concurrent.TimeUnit;
 public class DocServiceImpl<T> implements DocService {
 
 
-    @Qualifier("esClient")
+    /**
+     * 多集群读写路由,读请求走读集群(不可用时改发写集群),写请求走写集群
+     */
+    @Autowired
+    private EsClusterRouter esClusterRouter;
+
+    /**
+     * 所有请求共用的RequestOptions
+     */
     @Autowired
-    private RestHighLevelClient esClient;
+    private RequestOptions esRequestOptions;
+
+    @Autowired
+    private EsBulkIngester esBulkIngester;
+
+    /**
+     * batchDoc等待写入结果的最长时间(毫秒)
+     */
+    @Value("${elasticsearch.bulk.resultTimeout:600000}")
+    private long bulkResultTimeout;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ParallelScanner parallelScanner;
+
+    /**
+     * 写合并器,未开启时为null
+     */
+    @Autowired(required = false)
+    private UpdateCoalescer updateCoalescer;
+
+    /**
+     * 开启写合并时updateDoc/upsertDoc等待结果的最长时间(毫秒)
+     */
+    @Value("${elasticsearch.update.coalesce.resultTimeout:30000}")
+    private long updateCoalesceResultTimeout;
+
+    /**
+     * msearch合并器,未开启时为null
+     */
+    @Autowired(required = false)
+    private MultiSearchBatcher multiSearchBatcher;
+
+    /**
+     * msearch合并时同步接口等待查询结果的最长时间(毫秒)
+     */
+    @Value("${elasticsearch.search.batch.resultTimeout:60000}")
+    private long searchBatchResultTimeout;
+
+    /**
+     * 查询结果缓存,未开启时为null
+     */
+    @Autowired(required = false)
+    private QueryResultCache queryResultCache;
+
+    /**
+     * 分块获取多个文档时每个mget包含的文档数
+     */
+    @Value("${elasticsearch.doc.mget.chunkSize:1000}")
+    private int mgetChunkSize;
+
+    /**
+     * 分块获取多个文档时同时在途的mget数
+     */
+    @Value("${elasticsearch.doc.mget.parallelism:4}")
+    private int mgetParallelism;
+
+    /**
+     * 热点文档近端缓存,未开启时为null
+     */
+    @Autowired(required = false)
+    private DocNearCache docNearCache;
+
+    /**
+     * 相同请求合并,未开启时为null
+     */
+    @Autowired(required = false)
+    private SingleFlight singleFlight;
+
+    /**
+     * 隔离舱和熔断器,未开启时为null
+     */
+    @Autowired(required = false)
+    private EsCallGuard esCallGuard;
+
+    /**
+     * 对冲读,未开启时为null
+     */
+    @Autowired(required = false)
+    private HedgedReader hedgedReader;
+
+    /**
+     * 游标分页时point in time的保持时间,只需要覆盖两次翻页之间的间隔
+     */
+    @Value("${elasticsearch.search.pit.keepAlive:1m}")
+    private String pitKeepAlive;
+
+    /**
+     * 滚动查询时scroll上下文的保持时间,只需要覆盖处理一页的时间
+     */
+    @Value("${elasticsearch.search.scroll.keepAlive:1m}")
+    private String scrollKeepAlive;
+
+    /**
+     * 分页查询统计总数的上限(track_total_hits),超过时总数只是下限;小于0表示精确统计
+     */
+    @Value("${elasticsearch.search.trackTotalHitsUpTo:10000}")
+    private int trackTotalHitsUpTo;
+
+    /**
+     * indexAll按实体类型缓存的ObjectWriter
+     */
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    /**
+     * getMultiDoc按实体类型缓存的ObjectReader
+     */
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
 
     @Override
     public Boolean existsDoc(String indexName, String id) {
@@ -69,7 +227,7 @@ public class DocServiceImpl<T> implements DocService {
         getRequest.fetchSourceContext(new FetchSourceContext(false));
         getRequest.storedFields("_none_");
         try {
-            return esClient.exists(getRequest, EsAutoConfigure.COMMON_OPTIONS);
+            return guarded(EsCallGuard.GET, () -> esClusterRouter.read(client -> client.exists(getRequest, esRequestOptions)));
         } catch (IOException e) {
             e.printStackTrace();
             log.error("判断文档是否存在出错：indexName:{},id:{}", indexName, id);
@@ -79,120 +237,322 @@ public class DocServiceImpl<T> implements DocService {
 
     @Override
     public Boolean deleteDoc(String indexName, String id) {
-        DeleteRequest request = new DeleteRequest(indexName, id);
-        DeleteResponse deleteResponse = null;
         try {
-            deleteResponse = esClient.delete(request, EsAutoConfigure.COMMON_OPTIONS);
-            return deleteResponse.getResult() == DocWriteResponse.Result.DELETED;
-        } catch (IOException e) {
-            e.printStackTrace();
-            log.error("删除文档失败：indexName：{}，id:{}", indexName, id);
-        }
-        if (deleteResponse.getResult() == DocWriteResponse.Result.NOT_FOUND) {
-            log.error("删除文档没有找到：indexName：{}，id:{}", indexName, id);
+            DeleteRequest request = new DeleteRequest(indexName, id);
+            DeleteResponse deleteResponse = null;
+            try {
+                deleteResponse = guarded(EsCallGuard.WRITE, () -> esClusterRouter.writeClient().delete(request, esRequestOptions));
+            } catch (IOException e) {
+                e.printStackTrace();
+                log.error("删除文档失败：indexName：{}，id:{}", indexName, id);
+                return Boolean.FALSE;
+            }
+            if (deleteResponse != null && deleteResponse.getResult() == DocWriteResponse.Result.NOT_FOUND) {
+                log.error("删除文档没有找到：indexName：{}，id:{}", indexName, id);
+            }
+            return deleteResponse != null && deleteResponse.getResult() == DocWriteResponse.Result.DELETED;
+        } finally {
+            invalidateCache(indexName, id);
         }
-        return Boolean.FALSE;
     }
 
     @Override
     public Boolean updateDoc(String indexName, String id, String upJson) {
-        UpdateRequest request = new UpdateRequest(indexName, id);
-        request.doc(upJson, XContentType.JSON);
         try {
-            UpdateResponse updateResponse = esClient.update(request, EsAutoConfigure.COMMON_OPTIONS);
-            return updateResponse.getResult() == DocWriteResponse.Result.UPDATED;
-        } catch (ElasticsearchException | IOException e) {
-            if (e instanceof ElasticsearchException) {
-                if (((ElasticsearchException) e).status() == RestStatus.NOT_FOUND) {
-                    log.error("更新文档没有找到：indexName：{}，id:{}", indexName, id);
+            if (updateCoalescer != null) {
+                return awaitCoalesced(updateCoalescer.update(indexName, id, upJson), null, indexName, id);
+            }
+            UpdateRequest request = new UpdateRequest(indexName, id);
+            request.doc(upJson, XContentType.JSON);
+            try {
+                UpdateResponse updateResponse = guarded(EsCallGuard.WRITE, () -> esClusterRouter.writeClient().update(request, esRequestOptions));
+                return updateResponse.getResult() == DocWriteResponse.Result.UPDATED;
+            } catch (ElasticsearchException | IOException e) {
+                if (e instanceof ElasticsearchException) {
+                    if (((ElasticsearchException) e).status() == RestStatus.NOT_FOUND) {
+                        log.error("更新文档没有找到：indexName：{}，id:{}", indexName, id);
+                    }
                 }
+                log.error("更新文档出错：indexName：{}，id:{}", indexName, id);
             }
-            log.error("更新文档出错：indexName：{}，id:{}", indexName, id);
+            return Boolean.FALSE;
+        } finally {
+            invalidateCache(indexName, id);
         }
-        return Boolean.FALSE;
     }
 
     @Override
     public Boolean upsertDoc(String indexName, String id, String upserJson) {
-        UpdateRequest request = new UpdateRequest(indexName, id);
-        request.docAsUpsert(true);
-        request.upsert(upserJson, XContentType.JSON);
         try {
-            UpdateResponse updateResponse = esClient.update(request, EsAutoConfigure.COMMON_OPTIONS);
-            if (updateResponse.getResult() == DocWriteResponse.Result.CREATED) {
-                log.info("更新文档不存在创建成功：indexName：{}，id:{}", indexName, id);
-            } else if (updateResponse.getResult() == DocWriteResponse.Result.UPDATED) {
-                log.info("更新文档存在,更新成功：indexName：{}，id:{}", indexName, id);
-            }
-            return Boolean.TRUE;
-        } catch (ElasticsearchException | IOException e) {
-            if (e instanceof ElasticsearchException) {
-                if (((ElasticsearchException) e).status() == RestStatus.NOT_FOUND) {
-                    log.error("更新文档没有找到：indexName：{}，id:{}", indexName, id);
+            UpdateRequest request = new UpdateRequest(indexName, id);
+            request.doc(upserJson, XContentType.JSON);
+            request.docAsUpsert(true);
+            if (esBulkIngester.isSpooling()) {
+                return esBulkIngester.spool(request);
+            }
+            if (updateCoalescer != null) {
+                return awaitCoalesced(updateCoalescer.upsert(indexName, id, upserJson), request, indexName, id);
+            }
+            try {
+                UpdateResponse updateResponse = guarded(EsCallGuard.WRITE, () -> esClusterRouter.writeClient().update(request, esRequestOptions));
+                if (updateResponse.getResult() == DocWriteResponse.Result.CREATED) {
+                    log.info("更新文档不存在创建成功：indexName：{}，id:{}", indexName, id);
+                } else if (updateResponse.getResult() == DocWriteResponse.Result.UPDATED) {
+                    log.info("更新文档存在,更新成功：indexName：{}，id:{}", indexName, id);
+                }
+                return Boolean.TRUE;
+            } catch (ElasticsearchException | IOException e) {
+                if (e instanceof ElasticsearchException) {
+                    if (((ElasticsearchException) e).status() == RestStatus.NOT_FOUND) {
+                        log.error("更新文档没有找到：indexName：{}，id:{}", indexName, id);
+                    }
+                }
+                if (isSpoolable(e) && esBulkIngester.spool(request)) {
+                    log.warn("更新文档时集群不可用,已写入本地spool：indexName：{}，id:{}", indexName, id);
+                    return Boolean.TRUE;
                 }
+                log.error("更新文档出错：indexName：{}，id:{}", indexName, id);
             }
-            log.error("更新文档出错：indexName：{}，id:{}", indexName, id);
+            return Boolean.FALSE;
+        } finally {
+            invalidateCache(indexName, id);
+        }
+    }
+
+    /**
+     * 等待写合并的结果
+     *
+     * @param future
+     * @param spoolRequest 集群不可用时写入spool的请求,为null时不写入
+     * @param indexName
+     * @param id
+     * @return
+     */
+    private Boolean awaitCoalesced(CompletableFuture<Boolean> future, UpdateRequest spoolRequest, String indexName, String id) {
+        try {
+            return future.get(updateCoalesceResultTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("等待更新文档结果被中断：indexName：{}，id:{}", indexName, id);
+        } catch (TimeoutException e) {
+            log.error("等待更新文档结果超时：indexName：{}，id:{}", indexName, id);
+        } catch (ExecutionException e) {
+            if (spoolRequest != null && isSpoolable(e.getCause()) && esBulkIngester.spool(spoolRequest)) {
+                log.warn("更新文档时集群不可用,已写入本地spool：indexName：{}，id:{}", indexName, id);
+                return Boolean.TRUE;
+            }
+            log.error("更新文档出错：indexName：{}，id:{}", indexName, id, e.getCause());
         }
         return Boolean.FALSE;
     }
 
+    /**
+     * 集群不可用时写入spool,被熔断器或隔离舱拒绝(EsRejectedException)的快速失败不写入
+     */
+    static boolean isSpoolable(Throwable e) {
+        return e instanceof IOException && !(e instanceof EsRejectedException);
+    }
+
     @Override
-    public Boolean batchDoc(List<ReplicatedWriteRequest> requestList) {
-        BulkProcessor.Listener listener = new BulkProcessor.Listener() {
-            @Override
-            public void beforeBulk(long executionId, BulkRequest request) {
-                int numberOfActions = request.numberOfActions();
-                log.debug("Executing bulk [{}] with {} requests",
-                        executionId, numberOfActions);
-            }
-
-            @Override
-            public void afterBulk(long executionId, BulkRequest request,
-                                  BulkResponse response) {
-                if (response.hasFailures()) {
-                    log.warn("Bulk [{}] executed with failures", executionId);
-                    log.info("批量处理有文档处理异常request:{}", JSON.toJSONString(request));
-                    log.info("批量处理有文档处理异常response:{}", JSON.toJSONString(response));
-                } else {
-                    log.debug("Bulk [{}] completed in {} milliseconds",
-                            executionId, response.getTook().getMillis());
-                }
+    public BulkResult batchDoc(List<ReplicatedWriteRequest> requestList) {
+        if (CollectionUtils.isEmpty(requestList)) {
+            return new BulkResult();
+        }
+        BulkResult result = new BulkResult();
+        List<DocWriteRequest<?>> requests = docWriteRequests(requestList, result);
+        if (!requests.isEmpty()) {
+            try {
+                result.add(esBulkIngester.submitAndWait(requests, bulkResultTimeout));
+            } finally {
+                invalidateCache(requests);
             }
+        }
+        if (!result.isSuccess()) {
+            log.warn("批量操作部分失败：total:{},success:{},failure:{},pending:{}", result.getTotal(),
+                    result.getSuccessCount(), result.getFailureCount(), result.getPendingCount());
+        }
+        return result;
+    }
 
-            @Override
-            public void afterBulk(long executionId, BulkRequest request,
-                                  Throwable failure) {
-                log.error("Failed to execute bulk", failure);
-                log.info("批量处理异常request:{}", JSON.toJSONString(request));
+    /**
+     * 取出可以批量写入的DocWriteRequest,其余类型的请求(如BulkShardRequest)作为400失败记入result
+     *
+     * @param requestList
+     * @param result
+     * @return
+     */
+    static List<DocWriteRequest<?>> docWriteRequests(List<ReplicatedWriteRequest> requestList, BulkResult result) {
+        List<DocWriteRequest<?>> requests = new ArrayList<>(requestList.size());
+        for (ReplicatedWriteRequest request : requestList) {
+            if (request instanceof DocWriteRequest) {
+                requests.add((DocWriteRequest<?>) request);
+                continue;
             }
-        };
-        BulkProcessor bulkProcessor = BulkProcessor.builder(
-                (request, bulkListener) ->
-                        esClient.bulkAsync(request, EsAutoConfigure.COMMON_OPTIONS, bulkListener),
-                listener, "bulk-processor-name").build();
-        boolean terminated = false;
+            log.error("批量操作不支持的请求类型：{}", request.getClass().getName());
+            result.setTotal(result.getTotal() + 1);
+            result.setFailureCount(result.getFailureCount() + 1);
+            result.getFailedItems().add(new BulkResult.FailedItem(request.index(), null, request.getClass().getSimpleName(),
+                    RestStatus.BAD_REQUEST.getStatus(), "不支持的请求类型：" + request.getClass().getName(), 0));
+        }
+        return requests;
+    }
+
+    @Override
+    public <D> BulkResult indexAll(String indexName, Collection<D> docs, Function<D, String> idFn) {
+        if (CollectionUtils.isEmpty(docs)) {
+            return new BulkResult();
+        }
+        return this.indexAll(indexName, docs.iterator(), idFn);
+    }
+
+    @Override
+    public <D> BulkResult indexAll(String indexName, Iterator<D> docs, Function<D, String> idFn) {
         try {
-            if (CollectionUtils.isEmpty(requestList)) {
-                return Boolean.FALSE;
-            }
-            for (ReplicatedWriteRequest request : requestList) {
-                if (request instanceof IndexRequest) {
-                    bulkProcessor.add((IndexRequest) request);
+            BulkResult result = new BulkResult();
+            // 每个分片一批文档,最多同时有2倍在途bulk数的分片未完成,既保持写入管道满载又不会撑满写入队列
+            Deque<Chunk> chunks = new ArrayDeque<>();
+            List<DocWriteRequest<?>> requests = new ArrayList<>();
+            while (docs.hasNext()) {
+                D doc = docs.next();
+                if (doc == null) {
+                    continue;
                 }
-                if (request instanceof DeleteRequest) {
-                    bulkProcessor.add((DeleteRequest) request);
+                String id = idFn == null ? null : idFn.apply(doc);
+                try {
+                    byte[] source = writerFor(doc.getClass()).writeValueAsBytes(doc);
+                    requests.add(new IndexRequest(indexName).id(id).source(source, XContentType.JSON));
+                } catch (JsonProcessingException e) {
+                    log.error("序列化文档失败：indexName:{},id:{}", indexName, id, e);
+                    result.setTotal(result.getTotal() + 1);
+                    result.setFailureCount(result.getFailureCount() + 1);
+                    result.getFailedItems().add(new BulkResult.FailedItem(indexName, id, DocWriteRequest.OpType.INDEX.getLowercase(),
+                            RestStatus.BAD_REQUEST.getStatus(), e.getOriginalMessage(), 0));
                 }
-                if (request instanceof DocWriteRequest) {
-                    bulkProcessor.add((DocWriteRequest<?>) request);
+                if (requests.size() >= esBulkIngester.getController().getBulkActions()) {
+                    chunks.addLast(new Chunk(requests.size(), esBulkIngester.submit(requests)));
+                    requests = new ArrayList<>();
+                    while (chunks.size() > esBulkIngester.getController().getConcurrentRequests() * 2) {
+                        result.add(chunks.pollFirst().await(bulkResultTimeout));
+                    }
                 }
             }
-            bulkProcessor.awaitClose(10, TimeUnit.MINUTES);
-            return terminated;
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-            log.error("批量操作延迟关闭异常!");
+            if (!requests.isEmpty()) {
+                chunks.addLast(new Chunk(requests.size(), esBulkIngester.submit(requests)));
+            }
+            while (!chunks.isEmpty()) {
+                result.add(chunks.pollFirst().await(bulkResultTimeout));
+            }
+            if (!result.isSuccess()) {
+                log.warn("批量索引部分失败：indexName:{},total:{},success:{},failure:{},pending:{}", indexName, result.getTotal(),
+                        result.getSuccessCount(), result.getFailureCount(), result.getPendingCount());
+            }
+            return result;
+        } finally {
+            invalidateCache(indexName);
+        }
+    }
+
+    /**
+     * 写入后使索引的查询结果缓存失效
+     *
+     * @param indexName
+     */
+    private void invalidateCache(String indexName) {
+        esClusterRouter.markWritten(indexName);
+        if (queryResultCache != null) {
+            queryResultCache.invalidate(indexName);
+        }
+        if (docNearCache != null) {
+            docNearCache.invalidate(indexName);
+        }
+    }
+
+    /**
+     * 写入一个文档后使索引的查询结果缓存和该文档的近端缓存失效
+     *
+     * @param indexName
+     * @param id
+     */
+    private void invalidateCache(String indexName, String id) {
+        esClusterRouter.markWritten(indexName);
+        if (queryResultCache != null) {
+            queryResultCache.invalidate(indexName);
+        }
+        if (docNearCache != null) {
+            docNearCache.invalidate(indexName, id);
+        }
+    }
+
+    private void invalidateCache(List<DocWriteRequest<?>> requests) {
+        for (DocWriteRequest<?> request : requests) {
+            esClusterRouter.markWritten(request.index());
+        }
+        if (queryResultCache != null) {
+            queryResultCache.invalidate(requests.stream().map(DocWriteRequest::index).filter(Objects::nonNull)
+                    .collect(Collectors.toSet()));
+        }
+        if (docNearCache != null) {
+            for (DocWriteRequest<?> request : requests) {
+                docNearCache.invalidate(request.index(), request.id());
+            }
+        }
+    }
+
+    /**
+     * 开启了查询结果缓存、索引在缓存范围内且读集群没有落后于写集群
+     */
+    private boolean queryCacheable(String indexName) {
+        return queryResultCache != null && queryResultCache.isCacheable(indexName) && !esClusterRouter.isLagging(indexName);
+    }
+
+    /**
+     * 开启了文档近端缓存、索引在缓存范围内且读集群没有落后于写集群
+     */
+    private boolean docCacheable(String indexName) {
+        return docNearCache != null && docNearCache.isCacheable(indexName) && !esClusterRouter.isLagging(indexName);
+    }
+
+    private ObjectWriter writerFor(Class<?> clazz) {
+        return writers.computeIfAbsent(clazz, objectMapper::writerFor);
+    }
+
+    private ObjectReader readerFor(Class<?> clazz) {
+        return readers.computeIfAbsent(clazz, objectMapper::readerFor);
+    }
+
+    /**
+     * indexAll中已提交给批量写入引擎的一批文档
+     */
+    private static final class Chunk {
+
+        private final int size;
+
+        private final CompletableFuture<BulkResult> future;
+
+        private Chunk(int size, CompletableFuture<BulkResult> future) {
+            this.size = size;
+            this.future = future;
+        }
+
+        /**
+         * 等待这批文档的结果,超时的文档计入pendingCount
+         */
+        private BulkResult await(long timeoutMillis) {
+            try {
+                return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("等待批量索引结果被中断!");
+            } catch (TimeoutException e) {
+                log.error("等待批量索引结果超时：{}ms", timeoutMillis);
+            } catch (ExecutionException e) {
+                log.error("等待批量索引结果出错!", e);
+            }
+            BulkResult pending = new BulkResult();
+            pending.setTotal(size);
+            pending.setPendingCount(size);
+            return pending;
         }
-        return Boolean.FALSE;
     }
 
     @Override
@@ -201,8 +561,16 @@ public class DocServiceImpl<T> implements DocService {
         CountRequest countRequest = new CountRequest(indexName);
         countRequest.source(searchSourceBuilder);
         try {
-            CountResponse countResponse = esClient.count(countRequest, EsAutoConfigure.COMMON_OPTIONS);
-            return countResponse.getCount();
+            Callable<Long> count = () -> guarded(EsCallGuard.SEARCH, () -> hedged(HedgedReader.COUNT) ? hedgedReader.count(countRequest)
+                    : esClusterRouter.read(client -> client.count(countRequest, esRequestOptions))).getCount();
+            if (singleFlight != null && singleFlight.isEnabled(SingleFlight.COUNT)) {
+                Callable<Long> call = count;
+                count = () -> singleFlight.execute(SingleFlight.COUNT, indexName, searchSourceBuilder, call);
+            }
+            if (queryCacheable(indexName)) {
+                return queryResultCache.get(QueryResultCache.COUNT, indexName, searchSourceBuilder, count);
+            }
+            return count.call();
         } catch (Exception e) {
             e.printStackTrace();
             log.error("获取索引文旦总数异常！");
@@ -216,8 +584,13 @@ public class DocServiceImpl<T> implements DocService {
         SearchRequest searchRequest = new SearchRequest(indexName);
         searchRequest.source(searchSourceBuilder);
         try {
-            SearchResponse searchResp = esClient.search(searchRequest, EsAutoConfigure.COMMON_OPTIONS);
-            return searchResp;
+            if (queryCacheable(indexName)) {
+                return queryResultCache.get(QueryResultCache.SEARCH, indexName, searchSourceBuilder, () -> search(indexName, searchRequest));
+            }
+            return search(indexName, searchRequest);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("查询List被中断！");
         } catch (Exception e) {
             e.printStackTrace();
             log.error("查询List出错！");
@@ -225,26 +598,163 @@ public class DocServiceImpl<T> implements DocService {
         return null;
     }
 
+    private SearchResponse search(String indexName, SearchRequest searchRequest) throws Exception {
+        if (singleFlight != null && singleFlight.isEnabled(SingleFlight.SEARCH)) {
+            return singleFlight.execute(SingleFlight.SEARCH, indexName, searchRequest.source(), () -> send(searchRequest));
+        }
+        return send(searchRequest);
+    }
+
+    /**
+     * 开启隔离时经过隔离舱和熔断器调用es,被拒绝时抛出EsRejectedException
+     */
+    private <R, E extends Exception> R guarded(String operation, EsCallGuard.GuardedCall<R, E> call) throws E, IOException {
+        return esCallGuard == null ? call.call() : esCallGuard.execute(operation, call);
+    }
+
+    /**
+     * 开启了该操作的对冲读
+     */
+    private boolean hedged(String operation) {
+        return hedgedReader != null && hedgedReader.isEnabled(operation);
+    }
+
+    /**
+     * msearch合并器绑定在读集群上,改发写集群时直接_search;开启search对冲时不经过msearch合并
+     */
+    private SearchResponse send(SearchRequest searchRequest) throws Exception {
+        if (hedged(HedgedReader.SEARCH)) {
+            return guarded(EsCallGuard.SEARCH, () -> hedgedReader.search(searchRequest));
+        }
+        return guarded(EsCallGuard.SEARCH, () -> esClusterRouter.read(client -> {
+            if (multiSearchBatcher != null && client == esClusterRouter.readClient()) {
+                return multiSearchBatcher.search(searchRequest).get(searchBatchResultTimeout, TimeUnit.MILLISECONDS);
+            }
+            return client.search(searchRequest, esRequestOptions);
+        }));
+    }
+
     @Override
     public EsPageResult<T> searchPageList(String indexName, SearchSourceBuilder searchSourceBuilder, Class<?> clazz, Boolean usFastJson) {
-        SearchResponse searchResponse = this.searchList(indexName, searchSourceBuilder);
+        SearchSourceBuilder source = SearchTotals.trackTotalHits(searchSourceBuilder, trackTotalHitsUpTo);
+        SearchResponse searchResponse = this.searchList(indexName, source);
+        if (searchResponse == null) {
+            return EsPageResult.empty();
+        }
         AnalysisSearchResponse<T> analysisSearchResponse = new AnalysisSearchResponse();
         List<T> sourceAsList = analysisSearchResponse.getSourceAsList(searchResponse, clazz, usFastJson);
-        Long total = 0L;
-        if (CollectionUtils.isEmpty(sourceAsList)) {
-            sourceAsList = new ArrayList<>();
+        return SearchTotals.toPageResult(searchResponse, sourceAsList, source);
+    }
+
+    @Override
+    public EsPageResult<T> searchPageList(String indexName, SearchSourceBuilder searchSourceBuilder, Class<?> clazz, Boolean usFastJson,
+                                          String continuationToken) {
+        SearchAfterCursor cursor = StringUtils.isEmpty(continuationToken) ? null : SearchAfterCursor.decode(continuationToken);
+        TimeValue keepAlive = TimeValue.parseTimeValue(pitKeepAlive, "elasticsearch.search.pit.keepAlive");
+        String pitId;
+        if (cursor != null) {
+            pitId = cursor.pitId;
+        } else {
+            try {
+                pitId = guarded(EsCallGuard.SEARCH, () -> esClusterRouter.readClient().openPointInTime(
+                        new OpenPointInTimeRequest(indexName).keepAlive(keepAlive), esRequestOptions)).getPointInTimeId();
+            } catch (Exception e) {
+                log.error("打开point in time出错：indexName:{}", indexName, e);
+                return EsPageResult.empty();
+            }
+        }
+        // 只有第一页统计总数,之后的页沿用游标中的总数
+        SearchSourceBuilder source = cursor == null ? SearchTotals.trackTotalHits(searchSourceBuilder, trackTotalHitsUpTo).shallowCopy()
+                : searchSourceBuilder.shallowCopy().trackTotalHits(false);
+        List<SortBuilder<?>> sorts = source.sorts() == null ? new ArrayList<>() : new ArrayList<>(source.sorts());
+        boolean hasTiebreaker = sorts.stream().anyMatch(sort -> sort instanceof FieldSortBuilder
+                && FieldSortBuilder.SHARD_DOC_FIELD_NAME.equals(((FieldSortBuilder) sort).getFieldName()));
+        if (!hasTiebreaker) {
+            sorts.add(SortBuilders.pitTiebreaker());
+        }
+        source.sort(sorts);
+        int size = SearchTotals.pageSize(source);
+        source.from(0).size(size);
+        source.pointInTimeBuilder(new PointInTimeBuilder(pitId).setKeepAlive(keepAlive));
+        if (cursor != null) {
+            source.searchAfter(cursor.searchAfter);
+        }
+        log.info("searchPageList(search_after)构造DSL：" + source);
+        SearchResponse searchResponse;
+        try {
+            searchResponse = guarded(EsCallGuard.SEARCH,
+                    () -> esClusterRouter.readClient().search(new SearchRequest().source(source), esRequestOptions));
+        } catch (Exception e) {
+            log.error("游标分页查询出错：indexName:{},page:{}", indexName, cursor == null ? 1 : cursor.page + 1, e);
+            if (cursor == null) {
+                closePointInTime(pitId);
+            }
+            return EsPageResult.empty();
+        }
+        if (searchResponse.pointInTimeId() != null) {
+            pitId = searchResponse.pointInTimeId();
+        }
+        SearchHit[] hits = searchResponse.getHits().getHits();
+        List<T> sourceAsList = new AnalysisSearchResponse<T>().getSourceAsList(searchResponse, clazz, usFastJson);
+        int page = cursor == null ? 1 : cursor.page + 1;
+        EsPageResult<T> pageResult = cursor == null ? SearchTotals.toPageResult(searchResponse, sourceAsList, page, size)
+                : EsPageResult.of(sourceAsList == null ? new ArrayList<>() : sourceAsList, cursor.total, cursor.totalExact, page, size);
+        if (hits.length < size) {
+            closePointInTime(pitId);
         } else {
-            total = this.count(indexName, searchSourceBuilder);
+            pageResult.setContinuationToken(new SearchAfterCursor(pitId, page, pageResult.getTotalCount(), pageResult.getTotalExact(),
+                    hits[hits.length - 1].getSortValues()).encode());
         }
-        EsPageResult<T> pageResult = new EsPageResult(sourceAsList, total.intValue());
         return pageResult;
     }
 
+    @Override
+    public Boolean closeContinuation(String continuationToken) {
+        if (StringUtils.isEmpty(continuationToken)) {
+            return Boolean.FALSE;
+        }
+        return closePointInTime(SearchAfterCursor.decode(continuationToken).pitId);
+    }
+
+    private Boolean closePointInTime(String pitId) {
+        try {
+            return esClusterRouter.readClient().closePointInTime(new ClosePointInTimeRequest(pitId), esRequestOptions).isSucceeded();
+        } catch (Exception e) {
+            log.error("释放point in time出错,将在keepAlive到期后自动释放", e);
+            return Boolean.FALSE;
+        }
+    }
+
 
     @Override
     public GetResponse getDoc(String indexName, String id) {
         GetRequest request = new GetRequest(indexName, id);
-        return getDocument(request);
+        if (docCacheable(indexName)) {
+            GetResponse cached = docNearCache.get(indexName, id);
+            if (cached != null) {
+                return cached;
+            }
+            long start = System.nanoTime();
+            GetResponse response = getDocument(indexName, id, request);
+            docNearCache.put(indexName, response, start);
+            return response;
+        }
+        return getDocument(indexName, id, request);
+    }
+
+    /**
+     * 开启get合并时相同文档的并发get共享一次请求
+     */
+    private GetResponse getDocument(String indexName, String id, GetRequest request) {
+        if (singleFlight == null || !singleFlight.isEnabled(SingleFlight.GET)) {
+            return getDocument(request);
+        }
+        try {
+            return singleFlight.execute(SingleFlight.GET, indexName, id, () -> getDocument(request));
+        } catch (Exception e) {
+            log.error("获取文档出错：indexName:{},id:{}", indexName, id, e);
+            return null;
+        }
     }
 
     @Override
@@ -271,7 +781,8 @@ public class DocServiceImpl<T> implements DocService {
     private GetResponse getDocument(GetRequest request) {
         GetResponse response = null;
         try {
-            response = esClient.get(request, EsAutoConfigure.COMMON_OPTIONS);
+            response = guarded(EsCallGuard.GET, () -> hedged(HedgedReader.GET) ? hedgedReader.get(request)
+                    : esClusterRouter.read(client -> client.get(request, esRequestOptions)));
             if (!response.isExists()) {
                 log.info("文档不存在！");
                 return null;
@@ -291,13 +802,16 @@ public class DocServiceImpl<T> implements DocService {
 
     @Override
     public MultiGetResponse getMultiDoc(String indexName, List<String> ids) {
+        if (docCacheable(indexName)) {
+            return getMultiDocCached(indexName, ids);
+        }
         MultiGetRequest request = new MultiGetRequest();
         for (String id : ids) {
             request.add(new MultiGetRequest.Item(indexName, id));
         }
         MultiGetResponse response = null;
         try {
-            response = esClient.mget(request, EsAutoConfigure.COMMON_OPTIONS);
+            response = mget(request);
         } catch (IOException e) {
             e.printStackTrace();
             log.error("获取多个文档出错！");
@@ -305,6 +819,170 @@ public class DocServiceImpl<T> implements DocService {
         return response;
     }
 
+    /**
+     * 先从近端缓存取,只对没有缓存的id发mget,结果按ids的顺序返回
+     *
+     * @param indexName
+     * @param ids
+     * @return
+     */
+    private MultiGetResponse getMultiDocCached(String indexName, List<String> ids) {
+        MultiGetItemResponse[] items = new MultiGetItemResponse[ids.size()];
+        MultiGetRequest request = new MultiGetRequest();
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            GetResponse cached = docNearCache.get(indexName, ids.get(i));
+            if (cached != null) {
+                items[i] = new MultiGetItemResponse(cached, null);
+            } else {
+                request.add(new MultiGetRequest.Item(indexName, ids.get(i)));
+                missing.add(i);
+            }
+        }
+        if (!missing.isEmpty()) {
+            long start = System.nanoTime();
+            try {
+                MultiGetItemResponse[] fetched = mget(request).getResponses();
+                for (int i = 0; i < fetched.length; i++) {
+                    items[missing.get(i)] = fetched[i];
+                    docNearCache.put(indexName, fetched[i].getResponse(), start);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                log.error("获取多个文档出错！");
+                return null;
+            }
+        }
+        return new MultiGetResponse(items);
+    }
+
+    private MultiGetResponse mget(MultiGetRequest request) throws IOException {
+        return guarded(EsCallGuard.GET, () -> hedged(HedgedReader.MGET) ? hedgedReader.mget(request)
+                : esClusterRouter.read(client -> client.mget(request, esRequestOptions)));
+    }
+
+    @Override
+    public <D> List<D> getMultiDoc(String indexName, List<String> ids, Class<D> clazz) {
+        List<D> result = new ArrayList<>(ids.size());
+        this.getMultiDoc(indexName, ids.iterator(), clazz, (id, doc) -> result.add(doc));
+        return result;
+    }
+
+    @Override
+    public <D> Map<String, D> getMultiDocMap(String indexName, List<String> ids, Class<D> clazz) {
+        Map<String, D> result = new LinkedHashMap<>();
+        this.getMultiDoc(indexName, ids.iterator(), clazz, result::put);
+        return result;
+    }
+
+    @Override
+    public <D> void getMultiDoc(String indexName, Iterator<String> ids, Class<D> clazz, BiConsumer<String, D> consumer) {
+        // 最多parallelism块在途,按顺序等待最早的一块,解析完再发下一块
+        Deque<CompletableFuture<MultiGetItemResponse[]>> inflight = new ArrayDeque<>();
+        List<String> chunk = new ArrayList<>();
+        while (ids.hasNext()) {
+            String id = ids.next();
+            if (id == null) {
+                continue;
+            }
+            chunk.add(id);
+            if (chunk.size() >= mgetChunkSize) {
+                inflight.addLast(multiGetAsync(indexName, chunk));
+                chunk = new ArrayList<>();
+                if (inflight.size() >= mgetParallelism) {
+                    decodeMultiGet(indexName, inflight.pollFirst(), clazz, consumer);
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            inflight.addLast(multiGetAsync(indexName, chunk));
+        }
+        while (!inflight.isEmpty()) {
+            decodeMultiGet(indexName, inflight.pollFirst(), clazz, consumer);
+        }
+    }
+
+    /**
+     * 获取一块文档:先从近端缓存取,没有缓存的id经过隔离舱/熔断器(和对冲读)发mget,结果按ids的顺序返回
+     */
+    private CompletableFuture<MultiGetItemResponse[]> multiGetAsync(String indexName, List<String> ids) {
+        boolean cacheable = docCacheable(indexName);
+        MultiGetItemResponse[] items = new MultiGetItemResponse[ids.size()];
+        MultiGetRequest request = new MultiGetRequest();
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            GetResponse cached = cacheable ? docNearCache.get(indexName, ids.get(i)) : null;
+            if (cached != null) {
+                items[i] = new MultiGetItemResponse(cached, null);
+            } else {
+                request.add(new MultiGetRequest.Item(indexName, ids.get(i)));
+                missing.add(i);
+            }
+        }
+        if (missing.isEmpty()) {
+            return CompletableFuture.completedFuture(items);
+        }
+        long start = System.nanoTime();
+        Supplier<CompletableFuture<MultiGetResponse>> call = () -> {
+            if (hedged(HedgedReader.MGET)) {
+                return hedgedReader.mgetAsync(request);
+            }
+            CompletableFuture<MultiGetResponse> future = new CompletableFuture<>();
+            esClusterRouter.readAsync((client, listener) -> client.mgetAsync(request, esRequestOptions, listener),
+                    ActionListener.wrap(future::complete, future::completeExceptionally));
+            return future;
+        };
+        CompletableFuture<MultiGetResponse> future = esCallGuard == null ? call.get() : esCallGuard.executeAsync(EsCallGuard.GET, call);
+        return future.thenApply(response -> {
+            MultiGetItemResponse[] fetched = response.getResponses();
+            for (int i = 0; i < fetched.length; i++) {
+                items[missing.get(i)] = fetched[i];
+                if (cacheable) {
+                    docNearCache.put(indexName, fetched[i].getResponse(), start);
+                }
+            }
+            return items;
+        });
+    }
+
+    /**
+     * 等待一块的结果并按顺序交给consumer,有文档获取失败时整块失败
+     */
+    private <D> void decodeMultiGet(String indexName, CompletableFuture<MultiGetItemResponse[]> future, Class<D> clazz,
+                                    BiConsumer<String, D> consumer) {
+        MultiGetItemResponse[] items;
+        try {
+            items = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ElasticsearchException("获取多个文档被中断：indexName:" + indexName);
+        } catch (ExecutionException e) {
+            throw new ElasticsearchException("获取多个文档出错：indexName:" + indexName, e.getCause());
+        }
+        List<String> failures = new ArrayList<>();
+        for (MultiGetItemResponse item : items) {
+            if (item.isFailed()) {
+                failures.add(item.getId() + ":" + item.getFailure().getMessage());
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new ElasticsearchException("获取多个文档出错：indexName:" + indexName + ",失败的文档:" + failures);
+        }
+        ObjectReader reader = readerFor(clazz);
+        for (MultiGetItemResponse item : items) {
+            GetResponse getResponse = item.getResponse();
+            if (!getResponse.isExists() || getResponse.getSourceInternal() == null) {
+                continue;
+            }
+            BytesRef bytes = getResponse.getSourceInternal().toBytesRef();
+            try {
+                consumer.accept(getResponse.getId(), reader.readValue(bytes.bytes, bytes.offset, bytes.length));
+            } catch (IOException e) {
+                throw new ElasticsearchException("文档反序列化失败：indexName:" + indexName + ",id:" + getResponse.getId(), e);
+            }
+        }
+    }
+
     @Override
     public MultiGetResponse getMultiDoc(String indexName, String[] fieldName, List<String> ids) {
         MultiGetRequest request = new MultiGetRequest();
@@ -313,7 +991,7 @@ public class DocServiceImpl<T> implements DocService {
         }
         MultiGetResponse response = null;
         try {
-            response = esClient.mget(request, EsAutoConfigure.COMMON_OPTIONS);
+            response = mget(request);
         } catch (IOException e) {
             e.printStackTrace();
             log.error("获取多个文档出错！");
@@ -331,7 +1009,7 @@ public class DocServiceImpl<T> implements DocService {
         }
         MultiGetResponse response = null;
         try {
-            response = esClient.mget(request, EsAutoConfigure.COMMON_OPTIONS);
+            response = mget(request);
         } catch (IOException e) {
             e.printStackTrace();
             log.error("获取多个文档出错！");
@@ -342,71 +1020,92 @@ public class DocServiceImpl<T> implements DocService {
     @Override
     public Boolean deleteByQueryDoc(String indexName, QueryBuilder query) {
         try {
-            DeleteByQueryRequest request = new DeleteByQueryRequest(indexName).setQuery(query);
-            BulkByScrollResponse bulkByScrollResponse = esClient.deleteByQuery(request, EsAutoConfigure.COMMON_OPTIONS);
-            log.info("========deleteByQueryDoc().bulkByScrollResponse:{}==========", JSON.toJSONString(bulkByScrollResponse));
-            return Boolean.TRUE;
-        } catch (Exception e) {
-            e.printStackTrace();
-            log.error("根据条件删除文档出错！");
+            try {
+                DeleteByQueryRequest request = new DeleteByQueryRequest(indexName).setQuery(query);
+                BulkByScrollResponse bulkByScrollResponse = guarded(EsCallGuard.WRITE,
+                        () -> esClusterRouter.writeClient().deleteByQuery(request, esRequestOptions));
+                log.info("========deleteByQueryDoc().bulkByScrollResponse:{}==========", JSON.toJSONString(bulkByScrollResponse));
+                return Boolean.TRUE;
+            } catch (Exception e) {
+                e.printStackTrace();
+                log.error("根据条件删除文档出错！");
+            }
+            return Boolean.FALSE;
+        } finally {
+            invalidateCache(indexName);
         }
-        return Boolean.FALSE;
     }
 
     @Override
     public SearchHit[] scrollQuery(String indexName, Integer size, SearchSourceBuilder searchSourceBuilder) {
-        SearchRequest searchRequest = new SearchRequest(indexName);
-        //初始化scroll
-        //值不需要足够长来处理所有数据—它只需要足够长来处理前一批结果。每个滚动请求(带有滚动参数)设置一个新的过期时间。
-        //设定滚动时间间隔
-        Scroll scroll = new Scroll(TimeValue.timeValueMinutes(1L));
-        searchRequest.scroll(scroll);
-        //设定每次返回多少条数据
-        searchSourceBuilder.size(size);
-        searchRequest.source(searchSourceBuilder);
-        SearchResponse searchResponse = null;
-        try {
-            searchResponse = esClient.search(searchRequest, EsAutoConfigure.COMMON_OPTIONS);
-        } catch (IOException e) {
-            e.printStackTrace();
-            log.error("=============scrollQuery查询失败==============");
-        }
-        String scrollId = searchResponse.getScrollId();
-        SearchHit[] searchHits = searchResponse.getHits().getHits();
-        //遍历搜索命中的数据，直到没有数据
-        while (searchHits != null && searchHits.length > 0) {
-            SearchScrollRequest scrollRequest = new SearchScrollRequest(scrollId);
-            scrollRequest.scroll(scroll);
-            log.info("string:" + scrollRequest.toString());
+        List<SearchHit> searchHits = new ArrayList<>();
+        try (CloseableIterator<SearchHit> iterator = scroll(indexName, size, searchSourceBuilder, Function.identity())) {
+            iterator.forEachRemaining(searchHits::add);
+        } catch (ElasticsearchException e) {
+            log.error("=============scrollQuery查询失败,已取到{}条==============", searchHits.size(), e);
+        }
+        return searchHits.toArray(new SearchHit[0]);
+    }
+
+    @Override
+    public Stream<SearchHit> scrollStream(String indexName, Integer size, SearchSourceBuilder searchSourceBuilder) {
+        return scroll(indexName, size, searchSourceBuilder, Function.identity()).stream();
+    }
+
+    @Override
+    public <D> CloseableIterator<D> scrollIterator(String indexName, Integer size, SearchSourceBuilder searchSourceBuilder, Class<D> clazz) {
+        return scroll(indexName, size, searchSourceBuilder, hit -> {
+            if (hit.getSourceRef() == null) {
+                return null;
+            }
             try {
-                searchResponse = esClient.scroll(scrollRequest, EsAutoConfigure.COMMON_OPTIONS);
+                return objectMapper.readValue(BytesReference.toBytes(hit.getSourceRef()), clazz);
             } catch (IOException e) {
-                e.printStackTrace();
-                log.error("=============scrollQuery滚动失败==============");
-            }
-            scrollId = searchResponse.getScrollId();
-            searchHits = searchResponse.getHits().getHits();
-            if (searchHits != null && searchHits.length > 0) {
-                for (SearchHit searchHit : searchHits) {
-                    log.info("==============滚动每页数据：{}================:{}", searchHit.getSourceAsString());
-                }
+                throw new UncheckedIOException("反序列化文档失败：indexName:" + hit.getIndex() + ",id:" + hit.getId(), e);
             }
+        });
+    }
+
+    @Override
+    public ScanResult parallelScan(String indexName, Integer size, SearchSourceBuilder searchSourceBuilder, Integer slices,
+                                   Consumer<SearchHit> consumer) {
+        return parallelScanner.scan(indexName, scanSource(searchSourceBuilder, size), slices == null ? 0 : slices, consumer);
+    }
+
+    @Override
+    public ScanResult retryFailedSlices(String indexName, Integer size, SearchSourceBuilder searchSourceBuilder, ScanResult previous,
+                                        Consumer<SearchHit> consumer) {
+        return parallelScanner.retryFailed(indexName, scanSource(searchSourceBuilder, size), previous, consumer);
+    }
 
+    @Override
+    public CloseableIterator<SearchHit> parallelScanIterator(String indexName, Integer size, SearchSourceBuilder searchSourceBuilder,
+                                                             Integer slices) {
+        SearchSourceBuilder source = scanSource(searchSourceBuilder, size);
+        int pageSize = source.size() > 0 ? source.size() : 10;
+        return parallelScanner.iterator(indexName, source, slices == null ? 0 : slices, pageSize * 4);
+    }
+
+    private static SearchSourceBuilder scanSource(SearchSourceBuilder searchSourceBuilder, Integer size) {
+        SearchSourceBuilder source = searchSourceBuilder.shallowCopy();
+        if (size != null && size > 0) {
+            source.size(size);
         }
-        //清除滚屏
-        ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
-        //也可以选择setScrollIds()将多个scrollId一起使用
-        clearScrollRequest.addScrollId(scrollId);
-        ClearScrollResponse clearScrollResponse = null;
-        try {
-            clearScrollResponse = esClient.clearScroll(clearScrollRequest, EsAutoConfigure.COMMON_OPTIONS);
-        } catch (IOException e) {
-            e.printStackTrace();
-            log.error("============scrollQuery清屏失败！================");
+        log.info("parallelScan构造DSL：" + source);
+        return source;
+    }
+
+    private <R> CloseableIterator<R> scroll(String indexName, Integer size, SearchSourceBuilder searchSourceBuilder,
+                                            Function<SearchHit, R> mapper) {
+        SearchSourceBuilder source = searchSourceBuilder.shallowCopy();
+        //设定每次返回多少条数据
+        if (size != null && size > 0) {
+            source.size(size);
         }
-        boolean succeeded = clearScrollResponse.isSucceeded();
-        log.info("===========scrollQuery.succeeded=============={}", succeeded);
-        return searchHits;
+        log.info("scroll构造DSL：" + source);
+        SearchRequest searchRequest = new SearchRequest(indexName).source(source);
+        return new ScrollIterator<>(esClusterRouter.readClient(), esRequestOptions, searchRequest,
+                TimeValue.parseTimeValue(scrollKeepAlive, "elasticsearch.search.scroll.keepAlive"), mapper);
     }
 
 }
\ No newline at end of file
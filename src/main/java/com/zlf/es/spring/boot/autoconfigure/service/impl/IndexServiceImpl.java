@@ -1,6 +1,8 @@
 package com.zlf.es.spring.boot.autoconfigure.service.impl;
 
 import com.alibaba.fastjson.JSON;
+import com.zlf.es.spring.boot.autoconfigure.client.EsCallGuard;
+import com.zlf.es.spring.boot.autoconfigure.client.EsClusterRouter;
 import com.zlf.es.spring.boot.autoconfigure.service.IndexService;
 import lombok.extern.slf4j.Slf4j;
 import org.elasticsearch.ElasticsearchException;
@@ -11,7 +13,6 @@ import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.support.master.AcknowledgedResponse;
 import org.elasticsearch.client.RequestOptions;
-import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.client.indices.GetIndexRequest;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.reindex.BulkByScrollResponse;
@@ -19,9 +20,9 @@ import org.elasticsearch.index.reindex.ReindexRequest;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.util.Objects;
 
 /**
@@ -34,9 +35,17 @@ import java.util.Objects;
 public class IndexServiceImpl implements IndexService {
 
 
-    @Qualifier("esClient")
+    /**
+     * 多集群读写路由,索引管理都走写集群
+     */
     @Autowired
-    private RestHighLevelClient esClient;
+    private EsClusterRouter esClusterRouter;
+
+    /**
+     * 隔离舱和熔断器,未开启时为null
+     */
+    @Autowired(required = false)
+    private EsCallGuard esCallGuard;
 
     private final RequestOptions options = RequestOptions.DEFAULT;
 
@@ -47,7 +56,7 @@ public class IndexServiceImpl implements IndexService {
             CreateIndexRequest createIndexRequest = new CreateIndexRequest(indexName);
             createIndexRequest.settings(settings, XContentType.JSON);
             createIndexRequest.mapping("_doc", mappings, XContentType.JSON);
-            CreateIndexResponse createIndexResponse = esClient.indices().create(createIndexRequest, options);
+            CreateIndexResponse createIndexResponse = guarded(() -> esClusterRouter.writeClient().indices().create(createIndexRequest, options));
             log.info("============createIndex().createIndexResponse:{}=============", JSON.toJSONString(createIndexResponse));
             return createIndexResponse.isAcknowledged();
         } catch (Exception e) {
@@ -61,7 +70,7 @@ public class IndexServiceImpl implements IndexService {
     public Boolean deleteIndex(String indexName) throws Exception {
         try {
             DeleteIndexRequest request = new DeleteIndexRequest(indexName);
-            AcknowledgedResponse acknowledgedResponse = esClient.indices().delete(request, options);
+            AcknowledgedResponse acknowledgedResponse = guarded(() -> esClusterRouter.writeClient().indices().delete(request, options));
             log.info("=========deleteIndex().acknowledgedResponse=======:{}", JSON.toJSONString(acknowledgedResponse));
             return acknowledgedResponse.isAcknowledged();
         } catch (ElasticsearchException exception) {
@@ -77,7 +86,7 @@ public class IndexServiceImpl implements IndexService {
     public Boolean existsIndex(String indexName) throws Exception {
         GetIndexRequest request = new GetIndexRequest(indexName);
         request.humanReadable(true);
-        return esClient.indices().exists(request, options);
+        return guarded(() -> esClusterRouter.writeClient().indices().exists(request, options));
     }
 
     @Override
@@ -113,7 +122,7 @@ public class IndexServiceImpl implements IndexService {
                 searchRequest.source(searchSourceBuilder);
             }
             // 异步reindex
-            esClient.reindexAsync(request, options, listener);
+            esClusterRouter.writeClient().reindexAsync(request, options, listener);
         } catch (Exception e) {
             e.printStackTrace();
             log.error("===============reindex异常！=================");
@@ -122,4 +131,11 @@ public class IndexServiceImpl implements IndexService {
         return Boolean.TRUE;
     }
 
+    /**
+     * 开启隔离时经过admin隔离舱和熔断器调用es
+     */
+    private <R, E extends Exception> R guarded(EsCallGuard.GuardedCall<R, E> call) throws E, IOException {
+        return esCallGuard == null ? call.call() : esCallGuard.execute(EsCallGuard.ADMIN, call);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,80 @@
+package com.zlf.es.spring.boot.autoconfigure.service.impl;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+
+import java.io.IOException;
+import java.util.Base64;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * search_after分页的游标:point in time的id、已返回的页码、第一页得到的总数和上一页最后一条的排序值
+ * 编码成url安全的base64字符串作为EsPageResult.continuationToken返回给调用方,排序值按es的二进制格式保存,类型不会丢失
+ */
+final class SearchAfterCursor {
+
+    private static final int VERSION = 1;
+
+    final String pitId;
+
+    final int page;
+
+    final long total;
+
+    final boolean totalExact;
+
+    final Object[] searchAfter;
+
+    SearchAfterCursor(String pitId, int page, long total, boolean totalExact, Object[] searchAfter) {
+        this.pitId = pitId;
+        this.page = page;
+        this.total = total;
+        this.totalExact = totalExact;
+        this.searchAfter = searchAfter;
+    }
+
+    String encode() {
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.writeVInt(VERSION);
+            out.writeString(pitId);
+            out.writeVInt(page);
+            out.writeVLong(total);
+            out.writeBoolean(totalExact);
+            out.writeGenericValue(searchAfter);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(BytesReference.toBytes(out.bytes()));
+        } catch (IOException e) {
+            throw new IllegalStateException("生成continuationToken失败", e);
+        }
+    }
+
+    /**
+     * @param token
+     * @return
+     * @throws IllegalArgumentException token不是本类生成的
+     */
+    static SearchAfterCursor decode(String token) {
+        try (StreamInput in = StreamInput.wrap(Base64.getUrlDecoder().decode(token))) {
+            if (in.readVInt() != VERSION) {
+                throw new IllegalArgumentException("不支持的continuationToken版本：" + token);
+            }
+            String pitId = in.readString();
+            int page = in.readVInt();
+            long total = in.readVLong();
+            boolean totalExact = in.readBoolean();
+            Object searchAfter = in.readGenericValue();
+            if (!(searchAfter instanceof Object[])) {
+                throw new IllegalArgumentException("无效的continuationToken：" + token);
+            }
+            return new SearchAfterCursor(pitId, page, total, totalExact, (Object[]) searchAfter);
+        } catch (IOException | RuntimeException e) {
+            if (e instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) e;
+            }
+            throw new IllegalArgumentException("无效的continuationToken：" + token, e);
+        }
+    }
+
+}
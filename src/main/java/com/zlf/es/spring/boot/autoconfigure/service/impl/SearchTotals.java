@@ -0,0 +1,82 @@
+package com.zlf.es.spring.boot.autoconfigure.service.impl;
+
+import com.zlf.es.spring.boot.autoconfigure.service.vo.EsPageResult;
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 分页查询的总数直接取查询响应中的hits.total(track_total_hits),不再单独发一次count
+ */
+final class SearchTotals {
+
+    /**
+     * 默认每页条数,与DocSearchVo一致
+     */
+    private static final int DEFAULT_PAGE_SIZE = 10;
+
+    private SearchTotals() {
+    }
+
+    /**
+     * 调用方没有设置track_total_hits时按配置的上限设置,返回浅拷贝,不修改调用方的searchSourceBuilder
+     *
+     * @param searchSourceBuilder
+     * @param trackTotalHitsUpTo  小于0表示精确统计
+     * @return
+     */
+    static SearchSourceBuilder trackTotalHits(SearchSourceBuilder searchSourceBuilder, int trackTotalHitsUpTo) {
+        if (searchSourceBuilder.trackTotalHitsUpTo() != null) {
+            return searchSourceBuilder;
+        }
+        SearchSourceBuilder source = searchSourceBuilder.shallowCopy();
+        return trackTotalHitsUpTo < 0 ? source.trackTotalHits(true) : source.trackTotalHitsUpTo(trackTotalHitsUpTo);
+    }
+
+    /**
+     * 每页条数:size未设置时为10
+     *
+     * @param source
+     * @return
+     */
+    static int pageSize(SearchSourceBuilder source) {
+        return source.size() > 0 ? source.size() : DEFAULT_PAGE_SIZE;
+    }
+
+    /**
+     * 按from/size和响应中的总数创建分页对象
+     *
+     * @param searchResponse
+     * @param data           当前页数据,可以为null
+     * @param source         发出的查询
+     * @return
+     */
+    static <T> EsPageResult<T> toPageResult(SearchResponse searchResponse, List<T> data, SearchSourceBuilder source) {
+        int pageSize = pageSize(source);
+        int currentPage = Math.max(source.from(), 0) / pageSize + 1;
+        return toPageResult(searchResponse, data, currentPage, pageSize);
+    }
+
+    /**
+     * 按响应中的总数创建分页对象,响应中没有总数(track_total_hits=false)时totalCount为0且不精确
+     *
+     * @param searchResponse
+     * @param data           当前页数据,可以为null
+     * @param currentPage
+     * @param pageSize
+     * @return
+     */
+    static <T> EsPageResult<T> toPageResult(SearchResponse searchResponse, List<T> data, int currentPage, int pageSize) {
+        TotalHits totalHits = searchResponse.getHits().getTotalHits();
+        long total = totalHits == null ? 0L : totalHits.value;
+        boolean exact = totalHits != null && totalHits.relation == TotalHits.Relation.EQUAL_TO;
+        return EsPageResult.of(data == null ? new ArrayList<>() : data, total, exact, currentPage, pageSize);
+    }
+
+}
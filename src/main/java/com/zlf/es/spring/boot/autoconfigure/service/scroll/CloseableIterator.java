@@ -0,0 +1,34 @@
+package com.zlf.es.spring.boot.autoconfigure.service.scroll;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 需要释放服务端资源(如scroll上下文)的迭代器,遍历完自动释放,提前结束遍历时必须调用close()
+ */
+public interface CloseableIterator<T> extends Iterator<T>, Closeable {
+
+    /**
+     * 释放服务端资源,可以重复调用
+     */
+    @Override
+    void close();
+
+    /**
+     * 转换成顺序Stream,关闭Stream时关闭本迭代器;提前结束(limit、findFirst等)时请用try-with-resources关闭Stream
+     *
+     * @return
+     */
+    default Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false)
+                .onClose(this::close);
+    }
+
+}
@@ -0,0 +1,369 @@
+package com.zlf.es.spring.boot.autoconfigure.service.scroll;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.zlf.es.spring.boot.autoconfigure.service.vo.ScanResult;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.core.TimeValue;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.slice.SliceBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 分片并行滚动查询(sliced scroll),用于全量读取大索引
+ * 1.把查询切成N个slice,N默认等于索引的分片数,每个slice一个scroll上下文(ScrollIterator,带预取)
+ * 2.slice在有界线程池中运行,同时运行的slice数不超过maxConcurrency
+ * 3.命中交给线程安全的consumer,或者放入有界队列合并成一个迭代器(消费慢时slice线程阻塞)
+ * 4.每个slice单独记录进度,失败时只重试该slice(从头读取,之前交出的命中会再交一次,即至少一次),其他slice不受影响;
+ * 重试用尽的slice记录在ScanResult中,可以之后只重跑这些slice
+ * 5.consumer抛出异常时该slice直接失败不重试(重试会把同样的命中再交给consumer),异常记录在该slice的进度中
+ */
+@Slf4j
+public class ParallelScanner {
+
+    /**
+     * 队列中表示一个slice结束的标记
+     */
+    private static final Object SLICE_DONE = new Object();
+
+    private final RestHighLevelClient esClient;
+
+    private final RequestOptions options;
+
+    private final TimeValue keepAlive;
+
+    private final int maxConcurrency;
+
+    private final int maxRetries;
+
+    private final long retryBackoffMillis;
+
+    /**
+     * @param esClient           es客户端
+     * @param options            请求的RequestOptions
+     * @param keepAlive          scroll上下文的保持时间
+     * @param maxConcurrency     同时运行的slice数上限
+     * @param maxRetries         每个slice失败后的最大重试次数
+     * @param retryBackoffMillis 重试前等待的时间,按尝试次数线性增加
+     */
+    public ParallelScanner(RestHighLevelClient esClient, RequestOptions options, TimeValue keepAlive,
+                           int maxConcurrency, int maxRetries, long retryBackoffMillis) {
+        this.esClient = Objects.requireNonNull(esClient, "esClient");
+        this.options = Objects.requireNonNull(options, "options");
+        this.keepAlive = Objects.requireNonNull(keepAlive, "keepAlive");
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.maxRetries = Math.max(0, maxRetries);
+        this.retryBackoffMillis = Math.max(0, retryBackoffMillis);
+    }
+
+    /**
+     * 并行读取所有slice,所有slice结束(完成、重试用尽或consumer出错)后返回
+     *
+     * @param indexName
+     * @param source    查询条件,每个scroll请求的条数取size
+     * @param slices    slice数,小于1时取索引的分片数
+     * @param consumer  线程安全的命中处理器
+     * @return 每个slice的进度
+     */
+    public ScanResult scan(String indexName, SearchSourceBuilder source, int slices, Consumer<SearchHit> consumer) {
+        int max = slices > 0 ? slices : shardCount(indexName);
+        List<Integer> sliceIds = new ArrayList<>(max);
+        for (int i = 0; i < max; i++) {
+            sliceIds.add(i);
+        }
+        return scan(indexName, source, max, sliceIds, consumer);
+    }
+
+    /**
+     * 只重跑上一次失败的slice,结果合并到上一次的ScanResult中
+     *
+     * @param indexName
+     * @param source
+     * @param previous  上一次的结果
+     * @param consumer
+     * @return
+     */
+    public ScanResult retryFailed(String indexName, SearchSourceBuilder source, ScanResult previous, Consumer<SearchHit> consumer) {
+        List<Integer> failed = previous.getFailedSlices();
+        if (failed.isEmpty()) {
+            return previous;
+        }
+        ScanResult retried = scan(indexName, source, previous.getSlices(), failed, consumer);
+        for (ScanResult.SliceProgress progress : retried.getSliceProgress()) {
+            ScanResult.SliceProgress old = previous.getSliceProgress().get(progress.getSlice());
+            progress.setHits(old.getHits() + progress.getHits());
+            progress.setAttempts(old.getAttempts() + progress.getAttempts());
+            previous.getSliceProgress().set(progress.getSlice(), progress);
+        }
+        return previous;
+    }
+
+    /**
+     * 并行读取所有slice并合并成一个迭代器,提前结束时必须调用close()停止所有slice
+     * 有slice重试用尽时,取完其他slice的数据后抛出ElasticsearchException
+     *
+     * @param indexName
+     * @param source
+     * @param slices        slice数,小于1时取索引的分片数
+     * @param queueCapacity 缓冲的命中数上限
+     * @return
+     */
+    public CloseableIterator<SearchHit> iterator(String indexName, SearchSourceBuilder source, int slices, int queueCapacity) {
+        int max = slices > 0 ? slices : shardCount(indexName);
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        ExecutorService pool = newPool(max);
+        ScanResult result = newResult(max);
+        for (int i = 0; i < max; i++) {
+            ScanResult.SliceProgress progress = result.getSliceProgress().get(i);
+            pool.execute(() -> {
+                try {
+                    runSlice(indexName, source, max, progress, hit -> {
+                        try {
+                            queue.put(hit);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new ElasticsearchException("分片滚动查询被取消");
+                        }
+                    });
+                    queue.put(progress.isDone() ? SLICE_DONE : progress);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        pool.shutdown();
+        return new MergedIterator(queue, pool, max);
+    }
+
+    /**
+     * 索引(或别名、通配符)的分片总数
+     *
+     * @param indexName
+     * @return
+     */
+    public int shardCount(String indexName) {
+        SearchRequest request = new SearchRequest(indexName).source(new SearchSourceBuilder().size(0).trackTotalHits(false));
+        try {
+            return Math.max(1, esClient.search(request, options).getTotalShards());
+        } catch (IOException e) {
+            throw new ElasticsearchException("获取索引分片数失败：" + indexName, e);
+        }
+    }
+
+    private ScanResult scan(String indexName, SearchSourceBuilder source, int max, Collection<Integer> sliceIds,
+                            Consumer<SearchHit> consumer) {
+        ScanResult result = newResult(max);
+        ExecutorService pool = newPool(sliceIds.size());
+        List<Future<?>> futures = new ArrayList<>(sliceIds.size());
+        for (Integer sliceId : sliceIds) {
+            ScanResult.SliceProgress progress = result.getSliceProgress().get(sliceId);
+            futures.add(pool.submit(() -> runSlice(indexName, source, max, progress, consumer)));
+        }
+        pool.shutdown();
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pool.shutdownNow();
+                log.error("分片滚动查询被中断：indexName:{}", indexName);
+                break;
+            } catch (ExecutionException e) {
+                log.error("分片滚动查询出错：indexName:{}", indexName, e.getCause());
+            }
+        }
+        // 只保留本次运行的slice
+        List<ScanResult.SliceProgress> ran = new ArrayList<>(sliceIds.size());
+        for (Integer sliceId : sliceIds) {
+            ran.add(result.getSliceProgress().get(sliceId));
+        }
+        result.setSliceProgress(ran);
+        log.info("分片滚动查询结束：indexName:{},slice数:{},命中数:{},失败的slice:{}", indexName, max, result.getTotalHits(),
+                result.getFailedSlices());
+        return result;
+    }
+
+    /**
+     * 读取一个slice,失败时从头重试,重试用尽时记录失败原因
+     */
+    private void runSlice(String indexName, SearchSourceBuilder source, int max, ScanResult.SliceProgress progress,
+                          Consumer<SearchHit> consumer) {
+        while (!Thread.currentThread().isInterrupted()) {
+            progress.setAttempts(progress.getAttempts() + 1);
+            long startHits = progress.getHits();
+            try (ScrollIterator<SearchHit> iterator = new ScrollIterator<>(esClient, options,
+                    new SearchRequest(indexName).source(sliceSource(source, progress.getSlice(), max)), keepAlive, hit -> hit)) {
+                while (iterator.hasNext()) {
+                    SearchHit hit = iterator.next();
+                    try {
+                        consumer.accept(hit);
+                    } catch (RuntimeException e) {
+                        throw new ConsumerException(e);
+                    }
+                    progress.setHits(progress.getHits() + 1);
+                }
+                progress.setDone(true);
+                progress.setError(null);
+                log.info("slice {}/{}读取完成：indexName:{},命中数:{},尝试次数:{}", progress.getSlice(), max, indexName,
+                        progress.getHits() - startHits, progress.getAttempts());
+                return;
+            } catch (ConsumerException e) {
+                progress.setError(e.getCause().toString());
+                log.error("slice {}/{}的命中处理失败,不重试：indexName:{},已交出{}条", progress.getSlice(), max, indexName,
+                        progress.getHits(), e.getCause());
+                return;
+            } catch (RuntimeException e) {
+                progress.setError(e.toString());
+                if (Thread.currentThread().isInterrupted() || progress.getAttempts() > maxRetries) {
+                    log.error("slice {}/{}读取失败：indexName:{},已交出{}条,尝试次数:{}", progress.getSlice(), max, indexName,
+                            progress.getHits(), progress.getAttempts(), e);
+                    return;
+                }
+                log.warn("slice {}/{}读取失败,第{}次重试：indexName:{},{}", progress.getSlice(), max, progress.getAttempts(),
+                        indexName, e.toString());
+                try {
+                    Thread.sleep(retryBackoffMillis * progress.getAttempts());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * 一个slice的查询条件:没有排序时按_doc排序(滚动读取最快的顺序)
+     */
+    private static SearchSourceBuilder sliceSource(SearchSourceBuilder source, int slice, int max) {
+        SearchSourceBuilder sliceSource = source.shallowCopy();
+        if (max > 1) {
+            sliceSource.slice(new SliceBuilder(slice, max));
+        }
+        if (sliceSource.sorts() == null || sliceSource.sorts().isEmpty()) {
+            sliceSource.sort(SortBuilders.fieldSort("_doc"));
+        }
+        return sliceSource;
+    }
+
+    private ExecutorService newPool(int slices) {
+        return Executors.newFixedThreadPool(Math.max(1, Math.min(slices, maxConcurrency)),
+                new ThreadFactoryBuilder().setNameFormat("es-scan-%d").setDaemon(true).build());
+    }
+
+    private static ScanResult newResult(int max) {
+        ScanResult result = new ScanResult();
+        result.setSlices(max);
+        for (int i = 0; i < max; i++) {
+            result.getSliceProgress().add(new ScanResult.SliceProgress(i));
+        }
+        return result;
+    }
+
+    /**
+     * consumer抛出的异常,与读取es的异常区分开,不重试
+     */
+    private static final class ConsumerException extends RuntimeException {
+
+        private ConsumerException(RuntimeException cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * 把各slice放入队列的命中合并成一个迭代器
+     */
+    private static final class MergedIterator implements CloseableIterator<SearchHit> {
+
+        private final BlockingQueue<Object> queue;
+
+        private final ExecutorService pool;
+
+        private int running;
+
+        private final List<ScanResult.SliceProgress> failed = new ArrayList<>();
+
+        private SearchHit next;
+
+        private boolean closed;
+
+        private MergedIterator(BlockingQueue<Object> queue, ExecutorService pool, int slices) {
+            this.queue = queue;
+            this.pool = pool;
+            this.running = slices;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !closed) {
+                if (running == 0) {
+                    close();
+                    if (!failed.isEmpty()) {
+                        throw new ElasticsearchException("分片滚动查询有slice失败：" + failed);
+                    }
+                    return false;
+                }
+                Object item;
+                try {
+                    item = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    close();
+                    throw new ElasticsearchException("分片滚动查询被中断");
+                }
+                if (item instanceof SearchHit) {
+                    next = (SearchHit) item;
+                } else {
+                    running--;
+                    if (item instanceof ScanResult.SliceProgress) {
+                        failed.add((ScanResult.SliceProgress) item);
+                    }
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public SearchHit next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            SearchHit hit = next;
+            next = null;
+            return hit;
+        }
+
+        /**
+         * 停止所有slice,阻塞在队列上的slice线程被中断后清除各自的scroll上下文
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pool.shutdownNow();
+            queue.clear();
+        }
+    }
+
+}
@@ -0,0 +1,206 @@
+package com.zlf.es.spring.boot.autoconfigure.service.scroll;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.ClearScrollResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.core.TimeValue;
+import org.elasticsearch.search.SearchHit;
+
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 懒加载的scroll迭代器
+ * 1.第一次调用hasNext()时才发出查询,每次取到一页后立即异步预取下一页,调用方处理当前页的同时下一页在网络上传输
+ * 2.遍历完(空页或已取完hits.total)时自动清除scroll上下文;提前结束时调用close()清除,在途的预取请求返回后也会清除
+ * 3.查询失败时抛出ElasticsearchException并清除scroll上下文
+ * 非线程安全,只能在一个线程中遍历
+ */
+@Slf4j
+public class ScrollIterator<T> implements CloseableIterator<T> {
+
+    private final RestHighLevelClient esClient;
+
+    private final RequestOptions options;
+
+    private final TimeValue keepAlive;
+
+    private final Function<SearchHit, T> mapper;
+
+    private SearchRequest firstRequest;
+
+    /**
+     * 已发出还没有被消费的一页
+     */
+    private CompletableFuture<SearchResponse> pending;
+
+    private String scrollId;
+
+    private SearchHit[] hits = new SearchHit[0];
+
+    private int index;
+
+    private long consumed;
+
+    private boolean finished;
+
+    private boolean closed;
+
+    /**
+     * @param esClient      es客户端
+     * @param options       请求的RequestOptions
+     * @param searchRequest 查询请求,每页条数取searchRequest.source().size()
+     * @param keepAlive     scroll上下文的保持时间,只需要覆盖处理一页的时间
+     * @param mapper        把命中转换成返回的元素
+     */
+    public ScrollIterator(RestHighLevelClient esClient, RequestOptions options, SearchRequest searchRequest,
+                          TimeValue keepAlive, Function<SearchHit, T> mapper) {
+        this.esClient = Objects.requireNonNull(esClient, "esClient");
+        this.options = Objects.requireNonNull(options, "options");
+        this.firstRequest = Objects.requireNonNull(searchRequest, "searchRequest");
+        this.keepAlive = Objects.requireNonNull(keepAlive, "keepAlive");
+        this.mapper = Objects.requireNonNull(mapper, "mapper");
+        searchRequest.scroll(keepAlive);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (index >= hits.length) {
+            if (finished || closed) {
+                return false;
+            }
+            nextPage();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        consumed++;
+        return mapper.apply(hits[index++]);
+    }
+
+    private void nextPage() {
+        if (pending == null) {
+            pending = search(firstRequest);
+            firstRequest = null;
+        }
+        SearchResponse response;
+        try {
+            response = pending.join();
+        } catch (CompletionException e) {
+            pending = null;
+            close();
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            throw cause instanceof ElasticsearchException ? (ElasticsearchException) cause
+                    : new ElasticsearchException("scroll查询失败", cause);
+        }
+        pending = null;
+        if (response.getScrollId() != null) {
+            scrollId = response.getScrollId();
+        }
+        hits = response.getHits().getHits();
+        index = 0;
+        TotalHits totalHits = response.getHits().getTotalHits();
+        boolean allFetched = totalHits != null && totalHits.relation == TotalHits.Relation.EQUAL_TO
+                && consumed + hits.length >= totalHits.value;
+        if (hits.length == 0 || allFetched) {
+            finished = true;
+            clearScroll(scrollId);
+            scrollId = null;
+        } else {
+            // 预取下一页,与调用方处理当前页并行
+            pending = scroll(scrollId);
+        }
+    }
+
+    /**
+     * 清除scroll上下文,在途的预取请求返回后清除它返回的scroll id
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        hits = new SearchHit[0];
+        if (pending != null) {
+            String current = scrollId;
+            pending.whenComplete((response, e) -> {
+                if (response != null && response.getScrollId() != null && !response.getScrollId().equals(current)) {
+                    clearScroll(response.getScrollId());
+                }
+            });
+            pending = null;
+        }
+        if (scrollId != null) {
+            clearScroll(scrollId);
+            scrollId = null;
+        }
+    }
+
+    private CompletableFuture<SearchResponse> search(SearchRequest searchRequest) {
+        CompletableFuture<SearchResponse> future = new CompletableFuture<>();
+        esClient.searchAsync(searchRequest, options, listener(future));
+        return future;
+    }
+
+    private CompletableFuture<SearchResponse> scroll(String id) {
+        CompletableFuture<SearchResponse> future = new CompletableFuture<>();
+        SearchScrollRequest scrollRequest = new SearchScrollRequest(id);
+        scrollRequest.scroll(keepAlive);
+        esClient.scrollAsync(scrollRequest, options, listener(future));
+        return future;
+    }
+
+    private static ActionListener<SearchResponse> listener(CompletableFuture<SearchResponse> future) {
+        return new ActionListener<SearchResponse>() {
+            @Override
+            public void onResponse(SearchResponse response) {
+                future.complete(response);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                future.completeExceptionally(e);
+            }
+        };
+    }
+
+    private void clearScroll(String id) {
+        if (id == null) {
+            return;
+        }
+        ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+        clearScrollRequest.addScrollId(id);
+        esClient.clearScrollAsync(clearScrollRequest, options, new ActionListener<ClearScrollResponse>() {
+            @Override
+            public void onResponse(ClearScrollResponse response) {
+                log.debug("清除scroll上下文：{}", response.isSucceeded());
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                log.warn("清除scroll上下文失败,将在keepAlive到期后自动释放：{}", e.toString());
+            }
+        });
+    }
+
+}
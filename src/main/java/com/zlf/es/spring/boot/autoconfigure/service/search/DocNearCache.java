@@ -0,0 +1,215 @@
+package com.zlf.es.spring.boot.autoconfigure.service.search;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.zlf.es.spring.boot.autoconfigure.metrics.EsMetrics;
+import org.elasticsearch.action.get.GetResponse;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * getDoc/getMultiDoc的热点文档近端缓存(只缓存不带字段过滤的整篇文档,不缓存不存在的文档)
+ * 1.每个缓存项带文档的_primary_term/_seq_no,乱序返回的旧版本不会覆盖新版本
+ * 2.写入后ttl过期,超过条数上限时淘汰最近最少使用的文档
+ * 3.本starter对文档的写操作完成后留下一个失效标记,在标记之前发出的get的结果不会再被缓存;
+ * 按查询或批量写入整个索引时使整个索引失效
+ * 4.其他应用的写入只能靠ttl过期;缓存的GetResponse被多个调用方共享,不要修改
+ */
+public class DocNearCache {
+
+    /**
+     * 指标中的缓存名
+     */
+    public static final String NAME = "doc";
+
+    private final Cache<Key, Entry> cache;
+
+    private final Set<String> indices;
+
+    private final EsMetrics metrics;
+
+    /**
+     * 整个索引的失效时间(System.nanoTime)
+     */
+    private final Map<String, Long> indexFences = new ConcurrentHashMap<>();
+
+    /**
+     * @param indices   开启缓存的索引名,包含"*"时所有索引都开启
+     * @param ttlMillis 写入后的过期时间
+     * @param maxSize   最多缓存的文档数
+     * @param metrics   命中率指标
+     */
+    public DocNearCache(Collection<String> indices, long ttlMillis, long maxSize, EsMetrics metrics) {
+        this.indices = new HashSet<>(indices);
+        this.metrics = Objects.requireNonNull(metrics, "metrics");
+        this.cache = CacheBuilder.newBuilder()
+                .expireAfterWrite(Math.max(1, ttlMillis), TimeUnit.MILLISECONDS)
+                .maximumSize(Math.max(1, maxSize))
+                .recordStats()
+                .build();
+        metrics.gauge("es.cache.doc.size", () -> cache.size());
+        metrics.gauge("es.cache.doc.evictions", () -> cache.stats().evictionCount());
+    }
+
+    /**
+     * 索引是否开启了缓存
+     *
+     * @param indexName
+     * @return
+     */
+    public boolean isCacheable(String indexName) {
+        return indexName != null && (indices.contains("*") || indices.contains(indexName));
+    }
+
+    /**
+     * 取缓存的文档
+     *
+     * @param indexName
+     * @param id
+     * @return 没有缓存时为null
+     */
+    public GetResponse get(String indexName, String id) {
+        Entry entry = cache.getIfPresent(new Key(indexName, id));
+        if (entry != null && entry.response != null) {
+            metrics.recordCacheHit(NAME, indexName);
+            return entry.response;
+        }
+        metrics.recordCacheMiss(NAME, indexName);
+        return null;
+    }
+
+    /**
+     * 缓存get的结果
+     *
+     * @param indexName  请求的索引名(可能是别名)
+     * @param response   get的结果,文档不存在时不缓存
+     * @param startNanos 发出get请求时的System.nanoTime(),在这之后有写入时不缓存
+     */
+    public void put(String indexName, GetResponse response, long startNanos) {
+        if (response == null || !response.isExists() || response.getSeqNo() < 0) {
+            return;
+        }
+        Long indexFence = indexFences.get(indexName);
+        if (indexFence != null && indexFence - startNanos >= 0) {
+            return;
+        }
+        cache.asMap().compute(new Key(indexName, response.getId()), (key, existing) -> {
+            if (existing == null) {
+                return new Entry(response, startNanos);
+            }
+            if (existing.response == null) {
+                // 失效标记:只接受标记之后发出的get
+                return startNanos - existing.nanos > 0 ? new Entry(response, startNanos) : existing;
+            }
+            return newer(response, existing.response) ? new Entry(response, startNanos) : existing;
+        });
+    }
+
+    /**
+     * 文档写入完成后调用
+     *
+     * @param indexName
+     * @param id
+     */
+    public void invalidate(String indexName, String id) {
+        if (indexName == null) {
+            return;
+        }
+        if (id == null) {
+            invalidate(indexName);
+            return;
+        }
+        cache.put(new Key(indexName, id), new Entry(null, System.nanoTime()));
+    }
+
+    /**
+     * 整个索引写入完成后调用
+     *
+     * @param indexName
+     */
+    public void invalidate(String indexName) {
+        if (indexName == null) {
+            return;
+        }
+        indexFences.put(indexName, System.nanoTime());
+        cache.asMap().keySet().removeIf(key -> key.index.equals(indexName));
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void invalidateAll() {
+        long now = System.nanoTime();
+        for (String index : new HashSet<>(indexFences.keySet())) {
+            indexFences.put(index, now);
+        }
+        for (Key key : cache.asMap().keySet()) {
+            indexFences.put(key.index, now);
+        }
+        cache.invalidateAll();
+    }
+
+    /**
+     * 按_primary_term、_seq_no比较文档版本
+     */
+    private static boolean newer(GetResponse candidate, GetResponse current) {
+        if (candidate.getPrimaryTerm() != current.getPrimaryTerm()) {
+            return candidate.getPrimaryTerm() > current.getPrimaryTerm();
+        }
+        return candidate.getSeqNo() >= current.getSeqNo();
+    }
+
+    /**
+     * 缓存的文档,response为null时是写入留下的失效标记
+     */
+    private static final class Entry {
+
+        private final GetResponse response;
+
+        private final long nanos;
+
+        private Entry(GetResponse response, long nanos) {
+            this.response = response;
+            this.nanos = nanos;
+        }
+    }
+
+    private static final class Key {
+
+        private final String index;
+
+        private final String id;
+
+        private Key(String index, String id) {
+            this.index = Objects.requireNonNull(index, "indexName");
+            this.id = Objects.requireNonNull(id, "id");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return index.equals(key.index) && id.equals(key.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(index, id);
+        }
+    }
+
+}
@@ -0,0 +1,441 @@
+package com.zlf.es.spring.boot.autoconfigure.service.search;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.zlf.es.spring.boot.autoconfigure.client.EsClusterRouter;
+import com.zlf.es.spring.boot.autoconfigure.metrics.EsMetrics;
+import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.core.CountRequest;
+import org.elasticsearch.client.core.CountResponse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 幂等读请求的对冲(hedged request),减少单个慢节点、慢分片副本造成的长尾耗时
+ * 1.请求发出后超过delay还没有返回时,再发一个相同的请求,先返回的结果生效,另一个取消
+ * 2.percentile大于0时delay取该操作最近请求耗时(从原请求发出到先返回的结果)的分位值(不小于minDelay),样本不足时用固定的delay
+ * 3.对冲请求带上不同的preference,落到不同的分片副本;RestClient在节点之间轮询,对冲请求通常发往另一个节点
+ * 4.对冲预算:每个请求积累budgetPercent%个对冲名额,最多积累10个(启动时为满),名额不足时不对冲,长期来看额外的负载不超过budgetPercent%
+ * 5.按操作开启:search(searchList/searchPageList)、count、get(getDoc)、mget(getMultiDoc)
+ * 原请求在对冲发出前失败时直接失败;两个请求都失败时抛出先失败的异常
+ */
+public class HedgedReader implements Closeable {
+
+    public static final String SEARCH = "search";
+
+    public static final String COUNT = "count";
+
+    public static final String GET = "get";
+
+    public static final String MGET = "mget";
+
+    /**
+     * 一次对冲消耗的预算,每个请求积累budgetPercent
+     */
+    private static final long HEDGE_COST = 100;
+
+    private static final long MAX_BUDGET = 10 * HEDGE_COST;
+
+    private final EsClusterRouter router;
+
+    private final RequestOptions options;
+
+    private final Set<String> operations;
+
+    private final long delayNanos;
+
+    private final double percentile;
+
+    private final long minDelayNanos;
+
+    private final int budgetPercent;
+
+    private final String preference;
+
+    private final EsMetrics metrics;
+
+    private final Map<String, LatencyWindow> latencies = new HashMap<>();
+
+    private final AtomicLong budget = new AtomicLong(MAX_BUDGET);
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("es-hedge-timer").setDaemon(true).build());
+
+    /**
+     * 一次可以对冲的异步读请求
+     */
+    @FunctionalInterface
+    public interface HedgedCall<T> {
+
+        /**
+         * @param client     发往的集群
+         * @param preference 原请求为null,对冲请求为不同的preference
+         * @param listener
+         * @return 用于取消较慢的请求
+         */
+        Cancellable call(RestHighLevelClient client, String preference, ActionListener<T> listener);
+    }
+
+    /**
+     * @param router         读请求走读集群,读集群不可用时改发写集群
+     * @param options        请求的RequestOptions
+     * @param operations     开启对冲的操作
+     * @param delayMillis    固定的对冲等待时间
+     * @param percentile     按最近耗时的该分位值对冲,如95、99;小于等于0时只用固定的delay
+     * @param minDelayMillis 按分位值对冲时的最小等待时间
+     * @param budgetPercent  对冲请求占全部请求的最大百分比
+     * @param preference     对冲请求的preference,为空时每次随机
+     * @param metrics        对冲次数指标
+     */
+    public HedgedReader(EsClusterRouter router, RequestOptions options, Collection<String> operations, long delayMillis,
+                        double percentile, long minDelayMillis, int budgetPercent, String preference,
+                        EsMetrics metrics) {
+        this.router = Objects.requireNonNull(router, "router");
+        this.options = Objects.requireNonNull(options, "options");
+        this.operations = new HashSet<>(operations);
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, delayMillis));
+        this.percentile = Math.min(100, percentile);
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, minDelayMillis));
+        this.budgetPercent = Math.max(0, Math.min(100, budgetPercent));
+        this.preference = preference;
+        this.metrics = Objects.requireNonNull(metrics, "metrics");
+        for (String operation : this.operations) {
+            latencies.put(operation, new LatencyWindow());
+            metrics.gauge("es.hedge." + operation + ".delay", () -> TimeUnit.NANOSECONDS.toMillis(delayNanos(operation)));
+        }
+        metrics.gauge("es.hedge.budget", () -> budget.get() / (double) HEDGE_COST);
+    }
+
+    /**
+     * 操作是否开启了对冲
+     *
+     * @param operation
+     * @return
+     */
+    public boolean isEnabled(String operation) {
+        return operations.contains(operation);
+    }
+
+    public SearchResponse search(SearchRequest request) throws IOException {
+        return read(SEARCH, (client, preference, listener) -> client.searchAsync(
+                preference == null ? request : new SearchRequest(request).preference(preference), options, listener));
+    }
+
+    public CountResponse count(CountRequest request) throws IOException {
+        return read(COUNT, (client, preference, listener) -> client.countAsync(preference == null ? request : copy(request, preference),
+                options, listener));
+    }
+
+    public GetResponse get(GetRequest request) throws IOException {
+        return read(GET, (client, preference, listener) -> client.getAsync(preference == null ? request : copy(request, preference),
+                options, listener));
+    }
+
+    public MultiGetResponse mget(MultiGetRequest request) throws IOException {
+        return read(MGET, mgetCall(request));
+    }
+
+    public CompletableFuture<MultiGetResponse> mgetAsync(MultiGetRequest request) {
+        return readAsync(MGET, mgetCall(request));
+    }
+
+    private HedgedCall<MultiGetResponse> mgetCall(MultiGetRequest request) {
+        return (client, preference, listener) -> client.mgetAsync(preference == null ? request : copy(request, preference),
+                options, listener);
+    }
+
+    /**
+     * 发出请求并等待先返回的结果
+     *
+     * @param operation 操作,决定对冲等待时间
+     * @param call
+     * @return
+     * @throws IOException 两个请求都失败时为es客户端的异常(ElasticsearchException原样抛出)
+     */
+    public <T> T read(String operation, HedgedCall<T> call) throws IOException {
+        Hedge<T> hedge = start(operation, call);
+        try {
+            return hedge.result.get();
+        } catch (InterruptedException e) {
+            hedge.cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待es " + operation + "请求被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("es " + operation + "请求失败", cause);
+        }
+    }
+
+    /**
+     * 发出请求,返回先返回的结果;两个请求都失败时异常完成
+     *
+     * @param operation 操作,决定对冲等待时间
+     * @param call
+     * @return
+     */
+    public <T> CompletableFuture<T> readAsync(String operation, HedgedCall<T> call) {
+        return start(operation, call).result;
+    }
+
+    private <T> Hedge<T> start(String operation, HedgedCall<T> call) {
+        budget.accumulateAndGet(budgetPercent, (current, add) -> Math.min(MAX_BUDGET, current + add));
+        Hedge<T> hedge = new Hedge<>(operation, call);
+        hedge.start(delayNanos(operation));
+        return hedge;
+    }
+
+    /**
+     * 当前的对冲等待时间
+     */
+    private long delayNanos(String operation) {
+        if (percentile <= 0) {
+            return delayNanos;
+        }
+        LatencyWindow window = latencies.get(operation);
+        long value = window == null ? -1 : window.percentile();
+        return value < 0 ? delayNanos : Math.max(minDelayNanos, value);
+    }
+
+    private boolean takeBudget() {
+        long current;
+        do {
+            current = budget.get();
+            if (current < HEDGE_COST) {
+                return false;
+            }
+        } while (!budget.compareAndSet(current, current - HEDGE_COST));
+        return true;
+    }
+
+    private String hedgePreference() {
+        return StringUtils.isNotEmpty(preference) ? preference : "hedge-" + ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
+    }
+
+    private static GetRequest copy(GetRequest request, String preference) {
+        GetRequest copy = new GetRequest(request.index(), request.id())
+                .routing(request.routing())
+                .preference(preference)
+                .realtime(request.realtime())
+                .refresh(request.refresh())
+                .fetchSourceContext(request.fetchSourceContext());
+        if (request.storedFields() != null) {
+            copy.storedFields(request.storedFields());
+        }
+        return copy;
+    }
+
+    private static CountRequest copy(CountRequest request, String preference) {
+        CountRequest copy = new CountRequest(request.indices())
+                .routing(request.routing())
+                .preference(preference)
+                .indicesOptions(request.indicesOptions())
+                .minScore(request.minScore())
+                .terminateAfter(request.terminateAfter());
+        if (request.query() != null) {
+            copy.query(request.query());
+        }
+        return copy;
+    }
+
+    private static MultiGetRequest copy(MultiGetRequest request, String preference) {
+        MultiGetRequest copy = new MultiGetRequest()
+                .preference(preference)
+                .realtime(request.realtime())
+                .refresh(request.refresh());
+        for (MultiGetRequest.Item item : request.getItems()) {
+            copy.add(item);
+        }
+        return copy;
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * 一次读请求,最多包含原请求和一个对冲请求
+     */
+    private final class Hedge<T> {
+
+        private final String operation;
+
+        private final HedgedCall<T> call;
+
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private final AtomicReference<Cancellable> primary = new AtomicReference<>();
+
+        private final AtomicReference<Cancellable> secondary = new AtomicReference<>();
+
+        private volatile ScheduledFuture<?> scheduled;
+
+        /**
+         * 原请求发出的时间,记录的耗时从这里算起
+         */
+        private final long startNanos = System.nanoTime();
+
+        private int pending;
+
+        private Exception failure;
+
+        private Hedge(String operation, HedgedCall<T> call) {
+            this.operation = operation;
+            this.call = call;
+        }
+
+        private void start(long delay) {
+            synchronized (this) {
+                pending = 1;
+            }
+            send(primary, null);
+            if (!result.isDone()) {
+                scheduled = timer.schedule(this::hedge, delay, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private void hedge() {
+            synchronized (this) {
+                if (result.isDone() || failure != null) {
+                    return;
+                }
+                if (!takeBudget()) {
+                    metrics.recordHedge(operation, "skipped");
+                    return;
+                }
+                pending++;
+            }
+            metrics.recordHedge(operation, "sent");
+            send(secondary, hedgePreference());
+        }
+
+        private void send(AtomicReference<Cancellable> cancellable, String preference) {
+            router.readAsync((client, listener) -> cancellable.set(call.call(client, preference, listener)), new ActionListener<T>() {
+                @Override
+                public void onResponse(T response) {
+                    if (!result.complete(response)) {
+                        return;
+                    }
+                    LatencyWindow window = latencies.get(operation);
+                    if (window != null) {
+                        window.record(System.nanoTime() - startNanos);
+                    }
+                    if (preference != null) {
+                        metrics.recordHedge(operation, "won");
+                    }
+                    cancel();
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    synchronized (Hedge.this) {
+                        if (failure == null) {
+                            failure = e;
+                        }
+                        if (--pending > 0) {
+                            return;
+                        }
+                    }
+                    if (result.completeExceptionally(failure)) {
+                        cancel();
+                    }
+                }
+            });
+        }
+
+        /**
+         * 取消对冲定时和还在途的请求,已完成的请求取消时什么都不做
+         */
+        private void cancel() {
+            ScheduledFuture<?> future = scheduled;
+            if (future != null) {
+                future.cancel(false);
+            }
+            cancel(primary.get());
+            cancel(secondary.get());
+        }
+
+        private void cancel(Cancellable cancellable) {
+            if (cancellable != null) {
+                cancellable.cancel();
+            }
+        }
+    }
+
+    /**
+     * 一个操作最近请求的耗时,每64个样本重新计算一次分位值
+     */
+    private final class LatencyWindow {
+
+        private static final int SIZE = 512;
+
+        private static final int RECOMPUTE = 64;
+
+        private final long[] samples = new long[SIZE];
+
+        private int next;
+
+        private int count;
+
+        private int sinceRecompute;
+
+        private volatile long value = -1;
+
+        private synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % SIZE;
+            count = Math.min(SIZE, count + 1);
+            if (++sinceRecompute >= RECOMPUTE) {
+                sinceRecompute = 0;
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                int rank = (int) Math.ceil(percentile / 100 * count) - 1;
+                value = sorted[Math.max(0, Math.min(count - 1, rank))];
+            }
+        }
+
+        /**
+         * @return 样本不足时为-1
+         */
+        private long percentile() {
+            return value;
+        }
+    }
+
+}
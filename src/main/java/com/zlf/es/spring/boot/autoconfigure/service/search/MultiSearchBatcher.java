@@ -0,0 +1,202 @@
+package com.zlf.es.spring.boot.autoconfigure.service.search;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 并发查询的_msearch合并器
+ * 1.一个时间窗口内到达的SearchRequest攒成一批,作为一个_msearch请求发送,每个调用方仍通过自己的future拿到自己的SearchResponse
+ * 2.窗口内的请求数达到上限时提前发送;一批只有一个请求时直接走_search
+ * 3.某个查询失败只影响它自己的future,整个_msearch请求失败时这一批的future都异常完成
+ * 4.scroll查询不能放进_msearch,直接发送
+ * future在http客户端的io线程上完成,不要在上面做耗时操作
+ */
+@Slf4j
+public class MultiSearchBatcher implements Closeable {
+
+    private final RestHighLevelClient esClient;
+
+    private final RequestOptions options;
+
+    private final int maxBatchSize;
+
+    private final int maxConcurrentSearches;
+
+    private final ScheduledExecutorService flusher;
+
+    private final Object lock = new Object();
+
+    /**
+     * 当前窗口内待发送的查询,按到达顺序发送
+     */
+    private List<Pending> pending = new ArrayList<>();
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param esClient              es客户端
+     * @param options               请求的RequestOptions
+     * @param windowMillis          合并窗口
+     * @param maxBatchSize          一个_msearch最多包含的查询数,达到后提前发送
+     * @param maxConcurrentSearches es端并发执行一个_msearch中查询的数量上限,小于1时使用es的默认值
+     */
+    public MultiSearchBatcher(RestHighLevelClient esClient, RequestOptions options, long windowMillis, int maxBatchSize,
+                              int maxConcurrentSearches) {
+        this.esClient = Objects.requireNonNull(esClient, "esClient");
+        this.options = Objects.requireNonNull(options, "options");
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxConcurrentSearches = maxConcurrentSearches;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("es-msearch-batcher").setDaemon(true).build());
+        long window = Math.max(1, windowMillis);
+        this.flusher.scheduleWithFixedDelay(this::flush, window, window, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 提交一个查询,在下一个窗口结束时随其他查询一起发送
+     *
+     * @param searchRequest
+     * @return 查询响应,查询失败时异常完成
+     */
+    public CompletableFuture<SearchResponse> search(SearchRequest searchRequest) {
+        CompletableFuture<SearchResponse> future = new CompletableFuture<>();
+        if (searchRequest.scroll() != null) {
+            esClient.searchAsync(searchRequest, options, listener(future));
+            return future;
+        }
+        boolean full;
+        synchronized (lock) {
+            if (closed) {
+                future.completeExceptionally(new IllegalStateException("msearch合并器已关闭"));
+                return future;
+            }
+            pending.add(new Pending(searchRequest, future));
+            full = pending.size() >= maxBatchSize;
+        }
+        if (full) {
+            try {
+                flusher.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                flush();
+            }
+        }
+        return future;
+    }
+
+    /**
+     * 立即发送当前窗口内的查询
+     */
+    public void flush() {
+        List<Pending> batch;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+        for (int from = 0; from < batch.size(); from += maxBatchSize) {
+            send(batch.subList(from, Math.min(batch.size(), from + maxBatchSize)));
+        }
+    }
+
+    private void send(List<Pending> batch) {
+        if (batch.size() == 1) {
+            Pending item = batch.get(0);
+            esClient.searchAsync(item.request, options, listener(item.future));
+            return;
+        }
+        MultiSearchRequest multiSearchRequest = new MultiSearchRequest();
+        if (maxConcurrentSearches > 0) {
+            multiSearchRequest.maxConcurrentSearchRequests(maxConcurrentSearches);
+        }
+        for (Pending item : batch) {
+            multiSearchRequest.add(item.request);
+        }
+        log.debug("msearch合并:{}个查询", batch.size());
+        esClient.msearchAsync(multiSearchRequest, options, new ActionListener<MultiSearchResponse>() {
+            @Override
+            public void onResponse(MultiSearchResponse response) {
+                MultiSearchResponse.Item[] responses = response.getResponses();
+                for (int i = 0; i < batch.size(); i++) {
+                    CompletableFuture<SearchResponse> future = batch.get(i).future;
+                    if (i >= responses.length) {
+                        future.completeExceptionally(new IllegalStateException("msearch响应缺少第" + i + "个查询的结果"));
+                    } else if (responses[i].isFailure()) {
+                        future.completeExceptionally(responses[i].getFailure());
+                    } else {
+                        future.complete(responses[i].getResponse());
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                log.error("msearch发送失败：{}个查询", batch.size(), e);
+                for (Pending item : batch) {
+                    item.future.completeExceptionally(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 停止合并,发送剩余的查询
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private static ActionListener<SearchResponse> listener(CompletableFuture<SearchResponse> future) {
+        return ActionListener.wrap(future::complete, future::completeExceptionally);
+    }
+
+    /**
+     * 一个待发送的查询及等待结果的调用方
+     */
+    private static final class Pending {
+
+        private final SearchRequest request;
+
+        private final CompletableFuture<SearchResponse> future;
+
+        private Pending(SearchRequest request, CompletableFuture<SearchResponse> future) {
+            this.request = request;
+            this.future = future;
+        }
+    }
+
+}
@@ -0,0 +1,288 @@
+package com.zlf.es.spring.boot.autoconfigure.service.search;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.zlf.es.spring.boot.autoconfigure.metrics.EsMetrics;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * searchList/count的查询结果缓存
+ * 1.key为操作+索引+规范化后DSL的hash:json对象的字段按名称排序,bool查询中filter/must_not的子句按内容排序(与顺序无关),
+ * 字段顺序或过滤条件顺序不同的相同查询命中同一个缓存
+ * 2.写入后ttl过期,按估算的内存占用(主要是_source的字节数)淘汰
+ * 3.只缓存配置了的索引;本starter对某个索引的写操作会使该索引的缓存失效,写操作之前发出、之后返回的查询结果不会被缓存
+ * 4.失效按调用时传入的索引名匹配,通过别名写入、通过索引名查询(或反过来)时不会失效;其他应用的写入和refresh之前的查询只能靠ttl过期
+ * 缓存的SearchResponse被多个调用方共享,不要修改
+ */
+public class QueryResultCache {
+
+    /**
+     * 指标中的缓存名
+     */
+    public static final String NAME = "query";
+
+    public static final String SEARCH = "search";
+
+    public static final String COUNT = "count";
+
+    /**
+     * 没有命中时一个SearchResponse的估算大小
+     */
+    private static final int RESPONSE_WEIGHT = 1024;
+
+    private static final int HIT_WEIGHT = 256;
+
+    private static final String ALL = "*";
+
+    /**
+     * 生成规范化DSL的mapper,Map按key排序输出
+     */
+    private static final ObjectMapper CANONICAL = new ObjectMapper().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    private final Cache<Key, Object> cache;
+
+    private final Set<String> indices;
+
+    private final EsMetrics metrics;
+
+    /**
+     * 每个索引的写入代数,写入一次加一
+     */
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    /**
+     * @param indices        开启缓存的索引名,包含"*"时所有索引都开启
+     * @param ttlMillis      写入后的过期时间
+     * @param maxWeightBytes 缓存的估算内存上限
+     * @param metrics        命中率指标
+     */
+    public QueryResultCache(Collection<String> indices, long ttlMillis, long maxWeightBytes, EsMetrics metrics) {
+        this.indices = new HashSet<>(indices);
+        this.metrics = Objects.requireNonNull(metrics, "metrics");
+        this.cache = CacheBuilder.newBuilder()
+                .expireAfterWrite(Math.max(1, ttlMillis), TimeUnit.MILLISECONDS)
+                .maximumWeight(Math.max(1, maxWeightBytes))
+                .weigher((Key key, Object value) -> weigh(value))
+                .recordStats()
+                .build();
+        metrics.gauge("es.cache.query.size", () -> cache.size());
+        metrics.gauge("es.cache.query.evictions", () -> cache.stats().evictionCount());
+    }
+
+    /**
+     * 索引是否开启了缓存,逗号分隔的多个索引必须都开启
+     *
+     * @param indexName
+     * @return
+     */
+    public boolean isCacheable(String indexName) {
+        if (indexName == null || indices.isEmpty()) {
+            return false;
+        }
+        if (indices.contains(ALL)) {
+            return true;
+        }
+        return indices.containsAll(names(indexName));
+    }
+
+    /**
+     * 从缓存取结果,没有时调用loader查询并缓存(loader返回null时不缓存)
+     *
+     * @param op        SEARCH/COUNT
+     * @param indexName
+     * @param source
+     * @param loader
+     * @return
+     * @throws Exception loader抛出的异常
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V get(String op, String indexName, SearchSourceBuilder source, Callable<V> loader) throws Exception {
+        Key key = new Key(op, indexName, hash(source));
+        Object cached = cache.getIfPresent(key);
+        if (cached != null) {
+            metrics.recordCacheHit(NAME, indexName);
+            return (V) cached;
+        }
+        metrics.recordCacheMiss(NAME, indexName);
+        long generation = generation(key.indices);
+        V value = loader.call();
+        if (value != null && generation == generation(key.indices)) {
+            cache.put(key, value);
+            // 放入的同时有写入使缓存失效时撤回
+            if (generation != generation(key.indices)) {
+                cache.invalidate(key);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 使索引的缓存失效,写入完成后调用
+     *
+     * @param indexName 索引名,可以逗号分隔
+     */
+    public void invalidate(String indexName) {
+        if (indexName == null) {
+            return;
+        }
+        List<String> names = names(indexName);
+        for (String name : names) {
+            generations.computeIfAbsent(name, k -> new AtomicLong()).incrementAndGet();
+        }
+        cache.asMap().keySet().removeIf(key -> !Collections.disjoint(key.indices, names));
+    }
+
+    /**
+     * 使多个索引的缓存失效
+     *
+     * @param indexNames
+     */
+    public void invalidate(Collection<String> indexNames) {
+        for (String indexName : new HashSet<>(indexNames)) {
+            invalidate(indexName);
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void invalidateAll() {
+        for (AtomicLong generation : generations.values()) {
+            generation.incrementAndGet();
+        }
+        cache.invalidateAll();
+    }
+
+    private long generation(List<String> names) {
+        long sum = 0;
+        for (String name : names) {
+            AtomicLong generation = generations.get(name);
+            sum += generation == null ? 0 : generation.get();
+        }
+        return sum;
+    }
+
+    private static List<String> names(String indexName) {
+        List<String> names = new ArrayList<>();
+        for (String name : indexName.split(",")) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.trim());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 规范化DSL的hash
+     */
+    static HashCode hash(SearchSourceBuilder source) throws IOException {
+        Object dsl = CANONICAL.readValue(source == null ? "{}" : source.toString(), Object.class);
+        return Hashing.murmur3_128().hashBytes(CANONICAL.writeValueAsBytes(normalize(null, dsl)));
+    }
+
+    /**
+     * bool查询中filter/must_not的子句与顺序无关,按子句的规范化json排序
+     */
+    @SuppressWarnings("unchecked")
+    private static Object normalize(String field, Object node) throws IOException {
+        if (node instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) node;
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                entry.setValue(normalize(entry.getKey(), entry.getValue()));
+            }
+            return map;
+        }
+        if (node instanceof List) {
+            List<Object> list = (List<Object>) node;
+            for (int i = 0; i < list.size(); i++) {
+                list.set(i, normalize(null, list.get(i)));
+            }
+            if ("filter".equals(field) || "must_not".equals(field)) {
+                String[] clauses = new String[list.size()];
+                for (int i = 0; i < clauses.length; i++) {
+                    clauses[i] = CANONICAL.writeValueAsString(list.get(i));
+                }
+                Arrays.sort(clauses);
+                return clauses;
+            }
+        }
+        return node;
+    }
+
+    private static int weigh(Object value) {
+        if (!(value instanceof SearchResponse)) {
+            return 64;
+        }
+        SearchResponse response = (SearchResponse) value;
+        long weight = RESPONSE_WEIGHT;
+        if (response.getHits() != null) {
+            for (SearchHit hit : response.getHits().getHits()) {
+                weight += HIT_WEIGHT + (hit.getSourceRef() == null ? 0 : hit.getSourceRef().length());
+            }
+        }
+        if (response.getAggregations() != null) {
+            weight += RESPONSE_WEIGHT * 4L * response.getAggregations().asList().size();
+        }
+        return (int) Math.min(Integer.MAX_VALUE, weight);
+    }
+
+    private static final class Key {
+
+        private final String op;
+
+        private final String indexName;
+
+        private final List<String> indices;
+
+        private final HashCode dsl;
+
+        private Key(String op, String indexName, HashCode dsl) {
+            this.op = op;
+            this.indexName = indexName;
+            this.indices = names(indexName);
+            this.dsl = dsl;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return op.equals(key.op) && indexName.equals(key.indexName) && dsl.equals(key.dsl);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(op, indexName, dsl);
+        }
+    }
+
+}
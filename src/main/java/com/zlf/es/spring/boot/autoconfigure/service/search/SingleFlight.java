@@ -0,0 +1,159 @@
+package com.zlf.es.spring.boot.autoconfigure.service.search;
+
+import com.zlf.es.spring.boot.autoconfigure.metrics.EsMetrics;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 相同请求的合并(single flight),防止缓存过期时大量线程同时发出相同的查询
+ * 1.同一时刻相同的请求(相同操作+索引+规范化DSL,或相同索引+文档id)只有第一个真正发给es,其余的等待并共享它的结果或异常
+ * 2.请求结束后立即移除,之后的请求重新发出,不做缓存
+ * 3.按操作开启:search(searchList/searchPageList)、count、get(getDoc(index,id))
+ * 共享的响应对象被多个调用方同时使用,不要修改
+ */
+public class SingleFlight {
+
+    public static final String SEARCH = "search";
+
+    public static final String COUNT = "count";
+
+    public static final String GET = "get";
+
+    private final Set<String> operations;
+
+    private final EsMetrics metrics;
+
+    /**
+     * 在途的请求
+     */
+    private final Map<Key, CompletableFuture<Object>> inflight = new ConcurrentHashMap<>();
+
+    /**
+     * @param operations 开启合并的操作
+     * @param metrics    被合并的请求数指标
+     */
+    public SingleFlight(Collection<String> operations, EsMetrics metrics) {
+        this.operations = new HashSet<>(operations);
+        this.metrics = Objects.requireNonNull(metrics, "metrics");
+    }
+
+    /**
+     * 操作是否开启了合并
+     *
+     * @param operation
+     * @return
+     */
+    public boolean isEnabled(String operation) {
+        return operations.contains(operation);
+    }
+
+    /**
+     * 合并相同的查询
+     *
+     * @param operation SEARCH/COUNT
+     * @param indexName
+     * @param source
+     * @param call      真正发给es的调用
+     * @return
+     * @throws Exception call抛出的异常
+     */
+    public <V> V execute(String operation, String indexName, SearchSourceBuilder source, Callable<V> call) throws Exception {
+        return run(new Key(operation, indexName, QueryResultCache.hash(source)), call);
+    }
+
+    /**
+     * 合并相同的get
+     *
+     * @param operation GET
+     * @param indexName
+     * @param id
+     * @param call      真正发给es的调用
+     * @return
+     * @throws Exception call抛出的异常
+     */
+    public <V> V execute(String operation, String indexName, String id, Callable<V> call) throws Exception {
+        return run(new Key(operation, indexName, id), call);
+    }
+
+    /**
+     * 当前在途的请求数
+     *
+     * @return
+     */
+    public int inflight() {
+        return inflight.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <V> V run(Key key, Callable<V> call) throws Exception {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> leader = inflight.putIfAbsent(key, mine);
+        if (leader != null) {
+            metrics.recordCollapsed(key.operation, key.indexName);
+            try {
+                return (V) leader.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw (Error) cause;
+            }
+        }
+        try {
+            V value = call.call();
+            mine.complete(value);
+            return value;
+        } catch (Exception | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key, mine);
+        }
+    }
+
+    private static final class Key {
+
+        private final String operation;
+
+        private final String indexName;
+
+        private final Object target;
+
+        private Key(String operation, String indexName, Object target) {
+            this.operation = Objects.requireNonNull(operation, "operation");
+            this.indexName = Objects.requireNonNull(indexName, "indexName");
+            this.target = Objects.requireNonNull(target, "target");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return operation.equals(key.operation) && indexName.equals(key.indexName) && target.equals(key.target);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(operation, indexName, target);
+        }
+    }
+
+}
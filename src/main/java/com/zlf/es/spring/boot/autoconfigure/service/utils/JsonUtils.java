@@ -5,10 +5,13 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author zlf
@@ -23,6 +26,21 @@ public class JsonUtils<T> {
 
     public final static ObjectMapper MAPPER = new ObjectMapper();
 
+    /**
+     * 按类型缓存的ObjectReader,避免每次反序列化都查找类型对应的反序列化器
+     */
+    private final static ConcurrentMap<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+
+    /**
+     * MAPPER对应类型的ObjectReader(线程安全,按类型缓存)
+     *
+     * @param beanClass
+     * @return
+     */
+    public static ObjectReader readerFor(Class<?> beanClass) {
+        return READERS.computeIfAbsent(beanClass, MAPPER::readerFor);
+    }
+
     public static String getJsonByObject(Object obj) {
         try {
             return MAPPER.writeValueAsString(obj);
@@ -39,6 +57,23 @@ public class JsonUtils<T> {
         }
     }
 
+    /**
+     * 直接从utf-8字节反序列化,不需要先转换成String
+     *
+     * @param bytes
+     * @param offset
+     * @param length
+     * @param beanClass
+     * @return
+     */
+    public static <T> T getObjectByJson(byte[] bytes, int offset, int length, Class<T> beanClass) {
+        try {
+            return readerFor(beanClass).readValue(bytes, offset, length);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * 需要序列化一个对象
      *
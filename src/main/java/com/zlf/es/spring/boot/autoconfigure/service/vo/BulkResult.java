@@ -0,0 +1,121 @@
+package com.zlf.es.spring.boot.autoconfigure.service.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 批量写入结果
+ */
+@Data
+public class BulkResult implements Serializable {
+
+    /**
+     * 提交的文档数
+     */
+    private int total;
+
+    /**
+     * 写入成功的文档数
+     */
+    private int successCount;
+
+    /**
+     * 写入失败的文档数(重试用尽或不可重试)
+     */
+    private int failureCount;
+
+    /**
+     * 集群不可用时写入本地spool、等待重放的文档数
+     */
+    private int spooledCount;
+
+    /**
+     * 等待超时时仍未得到结果的文档数
+     */
+    private int pendingCount;
+
+    /**
+     * 失败的文档及原因
+     */
+    private List<FailedItem> failedItems = new ArrayList<>();
+
+    /**
+     * 是否全部写入成功(写入本地spool的视为成功)
+     *
+     * @return
+     */
+    public boolean isSuccess() {
+        return total == successCount + spooledCount;
+    }
+
+    /**
+     * 把另一批的结果累加到当前结果
+     *
+     * @param other
+     */
+    public void add(BulkResult other) {
+        this.total += other.total;
+        this.successCount += other.successCount;
+        this.failureCount += other.failureCount;
+        this.spooledCount += other.spooledCount;
+        this.pendingCount += other.pendingCount;
+        this.failedItems.addAll(other.failedItems);
+    }
+
+    /**
+     * 写入失败的一个文档
+     */
+    @Data
+    public static class FailedItem implements Serializable {
+
+        /**
+         * 索引名
+         */
+        private String index;
+
+        /**
+         * 文档id
+         */
+        private String id;
+
+        /**
+         * 操作类型:index/create/update/delete
+         */
+        private String opType;
+
+        /**
+         * http状态码,202表示已写入本地spool
+         */
+        private int status;
+
+        /**
+         * 失败原因
+         */
+        private String reason;
+
+        /**
+         * 已尝试的次数
+         */
+        private int attempts;
+
+        public FailedItem() {
+
+        }
+
+        public FailedItem(String index, String id, String opType, int status, String reason, int attempts) {
+            this.index = index;
+            this.id = id;
+            this.opType = opType;
+            this.status = status;
+            this.reason = reason;
+            this.attempts = attempts;
+        }
+    }
+
+}
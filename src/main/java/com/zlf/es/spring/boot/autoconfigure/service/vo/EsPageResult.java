@@ -26,6 +26,14 @@ public class EsPageResult<T> extends DocSearchVo implements Serializable {
      * 总页数
      */
     private Integer totalPage;
+    /**
+     * 总数据量是否精确,为false时命中数超过了track_total_hits的上限,totalCount只是下限(如"10000+")
+     */
+    private Boolean totalExact = Boolean.TRUE;
+    /**
+     * 游标分页时取下一页的游标,为null表示没有下一页
+     */
+    private String continuationToken;
 
 
     public EsPageResult() {
@@ -44,4 +52,25 @@ public class EsPageResult<T> extends DocSearchVo implements Serializable {
         return new EsPageResult(new ArrayList(), 0);
     }
 
+    /**
+     * 按查询响应中的总数创建分页对象
+     *
+     * @param data        当前页数据
+     * @param totalCount  总数据量
+     * @param totalExact  总数据量是否精确
+     * @param currentPage 当前页
+     * @param pageSize    每页多少条
+     * @return
+     */
+    public static <T> EsPageResult<T> of(List<T> data, long totalCount, boolean totalExact, int currentPage, int pageSize) {
+        EsPageResult<T> pageResult = new EsPageResult<>();
+        pageResult.setData(data);
+        pageResult.setTotalCount((int) Math.min(totalCount, Integer.MAX_VALUE));
+        pageResult.setTotalExact(totalExact);
+        pageResult.setCurrentPage(currentPage);
+        pageResult.setPageSize(pageSize);
+        pageResult.setTotalPage((int) Math.min((totalCount + pageSize - 1) / pageSize, Integer.MAX_VALUE));
+        return pageResult;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,92 @@
+package com.zlf.es.spring.boot.autoconfigure.service.vo;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @author zlf
+ * @description:
+ * @time: 2026/10/18
+ * 分片并行滚动查询(parallelScan)的结果:每个分片读取的条数、尝试次数和失败原因
+ */
+@Data
+public class ScanResult implements Serializable {
+
+    /**
+     * 分片数
+     */
+    private int slices;
+
+    /**
+     * 每个分片的进度,按分片编号排列
+     */
+    private List<SliceProgress> sliceProgress = new ArrayList<>();
+
+    /**
+     * 所有分片交给consumer的命中数
+     */
+    public long getTotalHits() {
+        return sliceProgress.stream().mapToLong(SliceProgress::getHits).sum();
+    }
+
+    /**
+     * 是否所有分片都读取完成
+     *
+     * @return
+     */
+    public boolean isSuccess() {
+        return sliceProgress.stream().allMatch(SliceProgress::isDone);
+    }
+
+    /**
+     * 重试用尽仍失败的分片编号,可以用DocService.retryFailedSlices只重跑这些分片
+     *
+     * @return
+     */
+    public List<Integer> getFailedSlices() {
+        return sliceProgress.stream().filter(p -> !p.isDone()).map(SliceProgress::getSlice).collect(Collectors.toList());
+    }
+
+    /**
+     * 一个分片的进度
+     */
+    @Data
+    @NoArgsConstructor
+    public static class SliceProgress implements Serializable {
+
+        /**
+         * 分片编号,从0开始
+         */
+        private int slice;
+
+        /**
+         * 交给consumer的命中数(包括失败重试前已经交出的)
+         */
+        private long hits;
+
+        /**
+         * 尝试次数
+         */
+        private int attempts;
+
+        /**
+         * 是否读取完成
+         */
+        private boolean done;
+
+        /**
+         * 最后一次失败的原因
+         */
+        private String error;
+
+        public SliceProgress(int slice) {
+            this.slice = slice;
+        }
+    }
+
+}